@@ -62,6 +62,7 @@ class GroupFragment : DatabaseFragment(), SortDialogFragment.SortSelectionListen
     private val mGroupViewModel: GroupViewModel by activityViewModels()
 
     private var mCurrentGroup: Group? = null
+    private var mShowFromPosition: Int? = null
 
     var nodeActionSelectionMode = false
         private set
@@ -233,10 +234,13 @@ class GroupFragment : DatabaseFragment(), SortDialogFragment.SortSelectionListen
         mGroupViewModel.group.observe(viewLifecycleOwner) {
             mCurrentGroup = it.group
             isASearchResult = it.group.isVirtual
+            // Position shown once the rows are built
+            mShowFromPosition = it.showFromPosition
             rebuildList()
-            it.showFromPosition?.let { position ->
-                mNodesRecyclerView?.scrollToPosition(position)
-            }
+        }
+
+        mGroupViewModel.nodeRows.observe(viewLifecycleOwner) {
+            replaceRows(it)
         }
     }
 
@@ -260,16 +264,40 @@ class GroupFragment : DatabaseFragment(), SortDialogFragment.SortSelectionListen
     }
 
     private fun rebuildList() {
-        try {
-            // Add elements to the list
-            mCurrentGroup?.let { currentGroup ->
+        val adapter = mAdapter
+        val currentGroup = mCurrentGroup
+        val database = mDatabase
+        if (adapter != null && currentGroup != null && database != null) {
+            // Rows are built out of the UI thread then given to the adapter
+            mGroupViewModel.loadNodeRows(
+                database,
+                currentGroup,
+                adapter.prepareRebuild(currentGroup)
+            )
+        } else {
+            onListRebuilt()
+        }
+    }
+
+    private fun replaceRows(nodeRows: GroupViewModel.NodeRows) {
+        if (nodeRows.group == mCurrentGroup) {
+            try {
                 // Thrown an exception when sort cannot be performed
-                mAdapter?.rebuildList(currentGroup)
+                nodeRows.rows?.let { rows ->
+                    mAdapter?.replaceRows(rows)
+                } ?: Log.e(TAG, "Unable to build the rows of the list")
+            } catch (e: Exception) {
+                Log.e(TAG, "Unable to rebuild the list", e)
+            }
+            mShowFromPosition?.let { position ->
+                mNodesRecyclerView?.scrollToPosition(position)
+                mShowFromPosition = null
             }
-        } catch (e:Exception) {
-            Log.e(TAG, "Unable to rebuild the list", e)
         }
+        onListRebuilt()
+    }
 
+    private fun onListRebuilt() {
         if (isASearchResult && mAdapter != null && mAdapter!!.isEmpty) {
             // To show the " no search entry found "
             notFoundView?.visibility = View.VISIBLE
@@ -119,10 +119,7 @@ class BreadcrumbAdapter(val context: Context, val database: Database?)
 
                 holder.groupNumbersView?.apply {
                     if (mShowNumberEntries) {
-                        text = group.getNumberOfChildEntries(
-                            mNodeFilter.recursiveNumberOfEntries,
-                            mNodeFilter.filter
-                        ).toString()
+                        text = mNodeFilter.getNumberOfChildEntries(group).toString()
                         visibility = View.VISIBLE
                     } else {
                         visibility = View.GONE
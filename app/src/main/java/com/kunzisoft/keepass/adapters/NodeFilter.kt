@@ -27,4 +27,15 @@ class NodeFilter(
             else -> true
         } && (showExpired || !node.isCurrentlyExpires)
     }
+
+    /**
+     * Number of entries of [group] shown with this filter, the recursive number is not computed for each call
+     */
+    fun getNumberOfChildEntries(group: Group): Int {
+        return group.getNumberOfChildEntries(
+            recursiveNumberOfEntries,
+            showExpired,
+            if (showTemplate) null else database?.templatesGroup
+        )
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.adapters
+
+import com.kunzisoft.keepass.database.element.DateInstant
+import com.kunzisoft.keepass.database.element.Tags
+import com.kunzisoft.keepass.database.element.icon.IconImage
+import com.kunzisoft.keepass.database.element.node.Node
+import com.kunzisoft.keepass.otp.OtpElement
+
+/**
+ * Values shown by a row of the nodes list, computed out of the UI thread when the list is built,
+ * so a bind does not have to resolve the field references or parse the entry fields again.
+ * Two rows with the same values are drawn the same way.
+ */
+data class NodeRow(
+    val node: Node,
+    val title: String,
+    val icon: IconImage,
+    val tags: Tags,
+    val isCurrentlyExpires: Boolean,
+    val lastModificationTime: DateInstant,
+    val nodeIdText: String? = null,
+    val path: String? = null,
+    // Entry
+    val username: String = "",
+    val backgroundColor: Int? = null,
+    val foregroundColor: Int? = null,
+    val otpElement: OtpElement? = null,
+    val containsAttachment: Boolean = false,
+    val containsPasskey: Boolean = false,
+    // Group
+    val numberOfChildEntries: Int? = null,
+    val notes: String = ""
+)
@@ -51,6 +51,7 @@ import com.kunzisoft.keepass.otp.OtpElement
 import com.kunzisoft.keepass.otp.OtpType
 import com.kunzisoft.keepass.settings.PreferencesUtil
 import com.kunzisoft.keepass.timeout.ClipboardHelper
+import com.kunzisoft.keepass.utils.OtpTicker
 import com.kunzisoft.keepass.view.setTextSize
 import com.kunzisoft.keepass.view.strikeOut
 
@@ -89,6 +90,10 @@ class NodesAdapter (
     private var mOldVirtualGroup = false
     private var mVirtualGroup = false
 
+    // Rows of the nodes in the list, and of the nodes replacing them during a rebuild
+    private var mNodeRows = HashMap<Node, NodeRow>()
+    private var mNewNodeRows = HashMap<Node, NodeRow>()
+
     private var mActionNodesList = mutableListOf<Node>()
     private var mNodeClickCallback: NodeClickCallback? = null
     private var mClipboardHelper = ClipboardHelper(context)
@@ -172,13 +177,43 @@ class NodesAdapter (
     }
 
     /**
-     * Rebuild the list by clear and build children from the group
+     * Assign the preferences to rebuild the list of [group], must be called in the UI thread,
+     * the parameters returned are given to [buildRows]
      */
-    fun rebuildList(group: Group) {
+    fun prepareRebuild(group: Group): RowsParameters {
         mOldVirtualGroup = mVirtualGroup
         mVirtualGroup = group.isVirtual
         assignPreferences()
-        mNodeSortedList.replaceAll(group.getChildren(mNodeFilter.filter))
+        return getRowsParameters()
+    }
+
+    private fun getRowsParameters(): RowsParameters {
+        return RowsParameters(
+            nodeComparator = mNodeComparator,
+            nodeFilter = mNodeFilter,
+            showUUID = mShowUUID,
+            showOTP = mShowOTP,
+            showNumberEntries = mShowNumberEntries,
+            virtualGroup = mVirtualGroup
+        )
+    }
+
+    /**
+     * Rebuild the list with the [rows] built for each child, only the changed rows are drawn again
+     */
+    fun replaceRows(rows: List<NodeRow>) {
+        mNewNodeRows = HashMap<Node, NodeRow>(rows.size).apply {
+            rows.forEach { put(it.node, it) }
+        }
+        // Already sorted, the sorted list only has to check the order
+        mNodeSortedList.replaceAll(rows.map { it.node })
+        mNodeRows = mNewNodeRows
+        mNewNodeRows = HashMap()
+    }
+
+    private fun getRow(node: Node): NodeRow {
+        return mNodeRows[node]
+            ?: buildRow(database, node, getRowsParameters()).also { mNodeRows[node] = it }
     }
 
     private inner class NodeSortedListCallback: SortedListAdapterCallback<Node>(this) {
@@ -189,30 +224,13 @@ class NodesAdapter (
         override fun areContentsTheSame(oldItem: Node, newItem: Node): Boolean {
             if (mOldVirtualGroup != mVirtualGroup)
                 return false
-            var typeContentTheSame = true
-            if (oldItem is Entry && newItem is Entry) {
-                typeContentTheSame = oldItem.getVisualTitle() == newItem.getVisualTitle()
-                        && oldItem.username == newItem.username
-                        && oldItem.backgroundColor == newItem.backgroundColor
-                        && oldItem.foregroundColor == newItem.foregroundColor
-                        && oldItem.getOtpElement() == newItem.getOtpElement()
-                        && oldItem.containsAttachment() == newItem.containsAttachment()
-            } else if (oldItem is Group && newItem is Group) {
-                typeContentTheSame = oldItem.numberOfChildEntries == newItem.numberOfChildEntries
-                        && oldItem.recursiveNumberOfChildEntries == newItem.recursiveNumberOfChildEntries
-                        && oldItem.notes == newItem.notes
-            }
-            return typeContentTheSame
-                    && oldItem.nodeId == newItem.nodeId
-                    && oldItem.type == newItem.type
-                    && oldItem.title == newItem.title
-                    && oldItem.icon == newItem.icon
+            val oldRow = mNodeRows[oldItem] ?: return false
+            val newRow = mNewNodeRows[newItem] ?: return false
+            return oldRow == newRow
                     && oldItem.creationTime == newItem.creationTime
-                    && oldItem.lastModificationTime == newItem.lastModificationTime
                     && oldItem.lastAccessTime == newItem.lastAccessTime
                     && oldItem.expiryTime == newItem.expiryTime
                     && oldItem.expires == newItem.expires
-                    && oldItem.isCurrentlyExpires == newItem.isCurrentlyExpires
         }
 
         override fun areItemsTheSame(item1: Node, item2: Node): Boolean {
@@ -285,6 +303,7 @@ class NodesAdapter (
      * @param newNode Node after the update
      */
     fun updateNode(oldNode: Node, newNode: Node) {
+        mNodeRows.remove(oldNode)
         mNodeSortedList.beginBatchedUpdates()
         mNodeSortedList.remove(oldNode)
         mNodeSortedList.add(newNode)
@@ -299,6 +318,7 @@ class NodesAdapter (
     fun updateNodes(oldNodes: List<Node>, newNodes: List<Node>) {
         mNodeSortedList.beginBatchedUpdates()
         oldNodes.forEach { oldNode ->
+            mNodeRows.remove(oldNode)
             mNodeSortedList.remove(oldNode)
         }
         mNodeSortedList.addAll(newNodes)
@@ -355,11 +375,27 @@ class NodesAdapter (
         nodeViewHolder.numberChildren?.let {
             mNumberChildrenTextDefaultDimension = it.textSize
         }
+        // Tags adapter kept by the holder, only the tags are changed for each bind
+        nodeViewHolder.tags.apply {
+            layoutManager = LinearLayoutManager(
+                context,
+                LinearLayoutManager.HORIZONTAL,
+                false
+            )
+            adapter = nodeViewHolder.tagsAdapter
+        }
         return nodeViewHolder
     }
 
+    override fun onViewRecycled(holder: NodeViewHolder) {
+        super.onViewRecycled(holder)
+        holder.otpRegistration?.unregister()
+        holder.otpRegistration = null
+    }
+
     override fun onBindViewHolder(holder: NodeViewHolder, position: Int) {
         val subNode = mNodeSortedList.get(position)
+        val row = getRow(subNode)
 
         // Node selection
         holder.container.apply {
@@ -368,24 +404,17 @@ class NodesAdapter (
 
         // Assign text
         holder.text.apply {
-            text = subNode.title
+            text = row.title
             setTextSize(mTextSizeUnit, mTextDefaultDimension, mPrefSizeMultiplier)
-            strikeOut(subNode.isCurrentlyExpires)
+            strikeOut(row.isCurrentlyExpires)
         }
         // Tags
         holder.tags.apply {
-            val tags = subNode.tags
-            if (mShowTags) {
-                val tagsAdapter = TagsAdapter(this.context, TagsAdapter.TagViewType.SMALL)
-                layoutManager = LinearLayoutManager(
-                    context,
-                    LinearLayoutManager.HORIZONTAL,
-                    false
-                )
-                adapter = tagsAdapter
-                tagsAdapter.setTags(tags)
-                tagsAdapter.toggleSelection(holder.container.isSelected)
-                tagsAdapter.onItemClickListener = object : TagsAdapter.OnItemClickListener {
+            val tags = row.tags
+            if (mShowTags && tags.isNotEmpty()) {
+                holder.tagsAdapter.setTags(tags)
+                holder.tagsAdapter.toggleSelection(holder.container.isSelected)
+                holder.tagsAdapter.onItemClickListener = object : TagsAdapter.OnItemClickListener {
                     override fun onItemClick(item: Tag) {
                         mNodeClickCallback?.onNodeClick(database, subNode)
                     }
@@ -395,12 +424,14 @@ class NodesAdapter (
                         return true
                     }
                 }
+                visibility = View.VISIBLE
+            } else {
+                visibility = View.GONE
             }
-            visibility = if (tags.isNotEmpty()) View.VISIBLE else View.GONE
         }
         // Add meta text to show UUID
         holder.meta.apply {
-            val nodeId = subNode.nodeId?.toVisualString()
+            val nodeId = row.nodeIdText
             if (mShowUUID && nodeId != null) {
                 text = nodeId
                 setTextSize(mTextSizeUnit, mMetaTextDefaultDimension, mPrefSizeMultiplier)
@@ -410,9 +441,9 @@ class NodesAdapter (
             }
         }
         // Add path to virtual group
-        if (mVirtualGroup) {
+        if (mVirtualGroup && row.path != null) {
             holder.path?.apply {
-                text = subNode.getPathString()
+                text = row.path
                 visibility = View.VISIBLE
             }
         } else {
@@ -429,36 +460,32 @@ class NodesAdapter (
 
         // Specific elements for entry
         if (subNode.type == Type.ENTRY) {
-            val entry = subNode as Entry
-            database.startManageEntry(entry)
-
-            holder.text.text = entry.getVisualTitle()
             // Add subText with username
             holder.subText?.apply {
-                val username = entry.username
+                val username = row.username
                 if (mShowUserNames && username.isNotEmpty()) {
                     visibility = View.VISIBLE
                     text = username
                     setTextSize(mTextSizeUnit, mSubTextDefaultDimension, mPrefSizeMultiplier)
-                    strikeOut(subNode.isCurrentlyExpires)
+                    strikeOut(row.isCurrentlyExpires)
                 } else {
                     visibility = View.GONE
                 }
             }
 
             // OTP
-            val otpElement = entry.getOtpElement()
-            holder.otpContainer?.removeCallbacks(holder.otpRunnable)
+            val otpElement = row.otpElement
+            holder.otpRegistration?.unregister()
+            holder.otpRegistration = null
             if (otpElement != null
                 && mShowOTP
                 && otpElement.token.isNotEmpty()) {
 
-                // Execute runnable to show progress
-                holder.otpRunnable.action = {
-                    populateOtpView(holder, otpElement)
-                }
+                // Refresh the progress with the shared clock
                 if (otpElement.type == OtpType.TOTP) {
-                    holder.otpRunnable.postDelayed()
+                    holder.otpRegistration = OtpTicker.register(holder.itemView) {
+                        populateOtpView(holder, otpElement)
+                    }
                 }
                 populateOtpView(holder, otpElement)
 
@@ -467,16 +494,16 @@ class NodesAdapter (
                 holder.otpContainer?.visibility = View.GONE
             }
             holder.attachmentIcon?.visibility =
-                if (entry.containsAttachment()) View.VISIBLE else View.GONE
+                if (row.containsAttachment) View.VISIBLE else View.GONE
 
             // Passkey
             holder.passkeyIcon?.visibility =
-                if (entry.getPasskey() != null) View.VISIBLE else View.GONE
+                if (row.containsPasskey) View.VISIBLE else View.GONE
 
             // Assign colors
-            assignBackgroundColor(holder.container, entry)
-            assignBackgroundColor(holder.otpContainer, entry)
-            val foregroundColor = if (mShowEntryColors) entry.foregroundColor else null
+            assignBackgroundColor(holder.container, row)
+            assignBackgroundColor(holder.otpContainer, row)
+            val foregroundColor = if (mShowEntryColors) row.foregroundColor else null
             if (!holder.container.isSelected) {
                 if (foregroundColor != null) {
                     holder.text.setTextColor(foregroundColor)
@@ -505,20 +532,14 @@ class NodesAdapter (
                 holder.passkeyIcon?.setColorFilter(mColorOnSecondary)
                 holder.meta.setTextColor(mColorOnSecondary)
             }
-
-            database.stopManageEntry(entry)
         }
 
         // Add number of entries in groups
         if (subNode.type == Type.GROUP) {
-            if (mShowNumberEntries) {
+            val numberOfChildEntries = row.numberOfChildEntries
+            if (mShowNumberEntries && numberOfChildEntries != null) {
                 holder.numberChildren?.apply {
-                    text = (subNode as Group)
-                            .getNumberOfChildEntries(
-                                mNodeFilter.recursiveNumberOfEntries,
-                                mNodeFilter.filter
-                            )
-                            .toString()
+                    text = numberOfChildEntries.toString()
                     setTextSize(mTextSizeUnit, mNumberChildrenTextDefaultDimension, mPrefSizeMultiplier)
                     visibility = View.VISIBLE
                 }
@@ -530,7 +551,8 @@ class NodesAdapter (
         // Assign image
         holder.imageIdentifier?.setColorFilter(iconColor)
         holder.icon.apply {
-            database.iconDrawableFactory.assignDatabaseIcon(this, subNode.icon, iconColor)
+            database.iconDrawableFactory.assignDatabaseIcon(this, row.icon, iconColor)
+            prefetchIcons(position)
             // Relative size of the icon
             layoutParams?.apply {
                 height = (mIconDefaultDimension * mPrefSizeMultiplier).toInt()
@@ -586,13 +608,13 @@ class NodesAdapter (
         }
     }
 
-    private fun assignBackgroundColor(view: View?, entry: Entry) {
+    private fun assignBackgroundColor(view: View?, row: NodeRow) {
         view?.let {
             ViewCompat.setBackgroundTintList(
                 view,
                 ColorStateList.valueOf(
                     if (!view.isSelected) {
-                        (if (mShowEntryColors) entry.backgroundColor else null)
+                        (if (mShowEntryColors) row.backgroundColor else null)
                             ?: mColorSurfaceContainer
                     } else {
                         mColorSecondary
@@ -602,17 +624,16 @@ class NodesAdapter (
         }
     }
 
-    class OtpRunnable(val view: View?): Runnable {
-
-        var action: (() -> Unit)? = null
-
-        override fun run() {
-            action?.invoke()
-            postDelayed()
-        }
-
-        fun postDelayed() {
-            view?.postDelayed(this, 1000)
+    /**
+     * Decode in advance the custom icons of the rows around [position], about to appear with the scroll
+     */
+    private fun prefetchIcons(position: Int) {
+        val start = (position - ICON_PREFETCH_DISTANCE).coerceAtLeast(0)
+        val end = (position + ICON_PREFETCH_DISTANCE).coerceAtMost(mNodeSortedList.size() - 1)
+        for (i in start..end) {
+            if (i != position) {
+                database.iconDrawableFactory.prefetchDatabaseIcon(mNodeSortedList.get(i).icon)
+            }
         }
     }
 
@@ -635,6 +656,18 @@ class NodesAdapter (
         fun onNodeLongClick(database: ContextualDatabase, node: Node): Boolean
     }
 
+    /**
+     * Settings of the adapter read in the UI thread, to build the rows in another thread
+     */
+    class RowsParameters(
+        val nodeComparator: Comparator<NodeVersionedInterface<Group>>?,
+        val nodeFilter: NodeFilter,
+        val showUUID: Boolean,
+        val showOTP: Boolean,
+        val showNumberEntries: Boolean,
+        val virtualGroup: Boolean
+    )
+
     class NodeViewHolder(itemView: View) : RecyclerView.ViewHolder(itemView) {
         var container: View = itemView.findViewById(R.id.node_container)
         var imageIdentifier: ImageView? = itemView.findViewById(R.id.node_image_identifier)
@@ -642,12 +675,13 @@ class NodesAdapter (
         var text: TextView = itemView.findViewById(R.id.node_text)
         var subText: TextView? = itemView.findViewById(R.id.node_subtext)
         var tags: RecyclerView = itemView.findViewById(R.id.node_tags_list_view)
+        val tagsAdapter = TagsAdapter(itemView.context, TagsAdapter.TagViewType.SMALL)
         var meta: TextView = itemView.findViewById(R.id.node_meta)
         var path: TextView? = itemView.findViewById(R.id.node_path)
         var otpContainer: ViewGroup? = itemView.findViewById(R.id.node_otp_container)
         var otpProgress: CircularProgressIndicator? = itemView.findViewById(R.id.node_otp_progress)
         var otpToken: TextView? = itemView.findViewById(R.id.node_otp_token)
-        var otpRunnable: OtpRunnable = OtpRunnable(otpContainer)
+        var otpRegistration: OtpTicker.Registration? = null
         var numberChildren: TextView? = itemView.findViewById(R.id.node_child_numbers)
         var attachmentIcon: ImageView? = itemView.findViewById(R.id.node_attachment_icon)
         var passkeyIcon: ImageView? = itemView.findViewById(R.id.node_passkey_icon)
@@ -655,5 +689,69 @@ class NodesAdapter (
 
     companion object {
         private val TAG = NodesAdapter::class.java.name
+
+        private const val ICON_PREFETCH_DISTANCE = 10
+
+        /**
+         * Build the sorted rows of the children of [group] with the [parameters] of [prepareRebuild],
+         * called out of the UI thread
+         */
+        fun buildRows(database: ContextualDatabase,
+                      group: Group,
+                      parameters: RowsParameters): List<NodeRow> {
+            return database.readTree {
+                val nodeComparator = parameters.nodeComparator
+                val children = group.getChildren(parameters.nodeFilter.filter).let { children ->
+                    if (nodeComparator != null) children.sortedWith(nodeComparator) else children
+                }
+                children.map { buildRow(database, it, parameters) }
+            }
+        }
+
+        private fun buildRow(database: ContextualDatabase,
+                             node: Node,
+                             parameters: RowsParameters): NodeRow {
+            val nodeIdText = if (parameters.showUUID) node.nodeId?.toVisualString() else null
+            val path = if (parameters.virtualGroup) node.getPathString() else null
+            return if (node is Entry) {
+                database.startManageEntry(node)
+                try {
+                    NodeRow(
+                        node = node,
+                        title = node.getVisualTitle(),
+                        icon = node.icon,
+                        tags = node.tags,
+                        isCurrentlyExpires = node.isCurrentlyExpires,
+                        lastModificationTime = node.lastModificationTime,
+                        nodeIdText = nodeIdText,
+                        path = path,
+                        username = node.username,
+                        backgroundColor = node.backgroundColor,
+                        foregroundColor = node.foregroundColor,
+                        otpElement = if (parameters.showOTP) node.getOtpElement() else null,
+                        containsAttachment = node.containsAttachment(),
+                        containsPasskey = node.getPasskey() != null
+                    )
+                } finally {
+                    database.stopManageEntry(node)
+                }
+            } else {
+                val group = node as Group
+                NodeRow(
+                    node = node,
+                    title = group.title,
+                    icon = group.icon,
+                    tags = group.tags,
+                    isCurrentlyExpires = group.isCurrentlyExpires,
+                    lastModificationTime = group.lastModificationTime,
+                    nodeIdText = nodeIdText,
+                    path = path,
+                    numberOfChildEntries = if (parameters.showNumberEntries)
+                        parameters.nodeFilter.getNumberOfChildEntries(group)
+                    else null,
+                    notes = group.notes
+                )
+            }
+        }
     }
 }
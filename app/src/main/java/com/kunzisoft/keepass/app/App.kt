@@ -19,10 +19,12 @@
  */
 package com.kunzisoft.keepass.app
 
+import android.content.ComponentCallbacks2
 import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.LifecycleOwner
 import androidx.lifecycle.ProcessLifecycleOwner
 import androidx.multidex.MultiDexApplication
+import com.kunzisoft.encrypt.argon2.Argon2Transformer
 import com.kunzisoft.keepass.activities.stylish.Stylish
 import kotlinx.coroutines.DelicateCoroutinesApi
 import kotlinx.coroutines.GlobalScope
@@ -39,6 +41,14 @@ class App : MultiDexApplication() {
 
         Stylish.load(this)
     }
+
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // The key derivation memory is allocated again by the next transformation
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            Argon2Transformer.releaseMemory()
+        }
+    }
 }
 
 object AppLifecycleObserver : DefaultLifecycleObserver {
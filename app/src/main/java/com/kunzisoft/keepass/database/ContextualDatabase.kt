@@ -1,6 +1,7 @@
 package com.kunzisoft.keepass.database
 
 import android.net.Uri
+import android.util.Log
 import com.kunzisoft.keepass.database.element.Database
 import com.kunzisoft.keepass.database.element.icon.IconImageCustom
 import com.kunzisoft.keepass.icons.IconDrawableFactory
@@ -26,7 +27,37 @@ class ContextualDatabase: Database() {
         super.clearIndexesAndBinaries(filesDirectory)
     }
 
+    // Save postponed to commit several modifications at once by a save action
+    private var mPendingSave = false
+
+    /**
+     * Mark the modifications to save later, return false if a save is already pending
+     */
+    @Synchronized
+    fun postponeSave(): Boolean {
+        if (mPendingSave)
+            return false
+        mPendingSave = true
+        return true
+    }
+
+    val hasPendingSave: Boolean
+        @Synchronized get() = mPendingSave
+
+    /**
+     * Remove the pending save, return false if the modifications are already saved
+     */
+    @Synchronized
+    fun takePendingSave(): Boolean {
+        val pendingSave = mPendingSave
+        mPendingSave = false
+        return pendingSave
+    }
+
     override fun clearAndClose(filesDirectory: File?) {
+        // The pending save must be committed by a save action before
+        if (takePendingSave())
+            Log.w(TAG, "Database closed with modifications not saved")
         super.clearAndClose(filesDirectory)
         this.fileUri = null
     }
@@ -24,6 +24,7 @@ import android.net.Uri
 import com.kunzisoft.keepass.database.ContextualDatabase
 import com.kunzisoft.keepass.database.MainCredential
 import com.kunzisoft.keepass.hardware.HardwareKey
+import com.kunzisoft.keepass.settings.PreferencesUtil
 import com.kunzisoft.keepass.utils.getBinaryDir
 
 class CreateDatabaseRunnable(
@@ -47,6 +48,8 @@ class CreateDatabaseRunnable(
             // Create new database record
             mDatabase.apply {
                 this.fileUri = databaseUri
+                this.searchIndexEnabled = PreferencesUtil.searchIndexEnabled(context)
+                this.fastSaveEnabled = PreferencesUtil.isFastSaveDatabaseEnabled(context)
                 createData(databaseName, rootName, templateGroupName)
             }
         } catch (e: Exception) {
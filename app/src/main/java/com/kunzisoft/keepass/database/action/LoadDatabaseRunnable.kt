@@ -28,6 +28,7 @@ import com.kunzisoft.keepass.database.element.binary.BinaryData
 import com.kunzisoft.keepass.database.exception.DatabaseInputException
 import com.kunzisoft.keepass.database.exception.UnknownDatabaseLocationException
 import com.kunzisoft.keepass.hardware.HardwareKey
+import com.kunzisoft.keepass.settings.PreferencesUtil
 import com.kunzisoft.keepass.tasks.ActionRunnable
 import com.kunzisoft.keepass.tasks.ProgressTaskUpdater
 import com.kunzisoft.keepass.utils.getBinaryDir
@@ -60,6 +61,9 @@ class LoadDatabaseRunnable(
             val contentResolver = context.contentResolver
             // Save database URI
             mDatabase.fileUri = mDatabaseUri
+            mDatabase.searchIndexEnabled = PreferencesUtil.searchIndexEnabled(context)
+            mDatabase.fastSaveEnabled = PreferencesUtil.isFastSaveDatabaseEnabled(context)
+            mDatabase.loadAttachmentsInBackgroundEnabled = PreferencesUtil.loadAttachmentsInBackground(context)
             mMasterCredential = mMainCredential.toMasterCredential(contentResolver)
             mDatabase.loadData(
                 databaseStream = contentResolver.getUriInputStream(mDatabaseUri)
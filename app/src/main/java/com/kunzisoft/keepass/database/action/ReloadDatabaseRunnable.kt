@@ -41,7 +41,7 @@ class ReloadDatabaseRunnable(
 
     override fun onStartRun() {
         // Clear before we load
-        mDatabase.clearIndexesAndBinaries(binaryDir)
+        mDatabase.writeTree { mDatabase.clearIndexesAndBinaries(binaryDir) }
         mDatabase.wasReloaded = true
     }
 
@@ -59,7 +59,7 @@ class ReloadDatabaseRunnable(
         }
 
         if (!result.isSuccess) {
-            mDatabase.clearAndClose(binaryDir)
+            mDatabase.writeTree { mDatabase.clearAndClose(binaryDir) }
         }
     }
 
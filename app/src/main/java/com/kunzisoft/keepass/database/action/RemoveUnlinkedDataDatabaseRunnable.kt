@@ -38,7 +38,7 @@ class RemoveUnlinkedDataDatabaseRunnable (
 
     override fun onActionRun() {
         try {
-            database.removeUnlinkedAttachments()
+            database.writeTree { database.removeUnlinkedAttachments() }
         } catch (e: Exception) {
             setError(e)
         }
@@ -26,8 +26,11 @@ import com.kunzisoft.keepass.database.MainCredential
 import com.kunzisoft.keepass.database.element.MasterCredential
 import com.kunzisoft.keepass.database.exception.DatabaseException
 import com.kunzisoft.keepass.hardware.HardwareKey
+import com.kunzisoft.keepass.settings.PreferencesUtil
 import com.kunzisoft.keepass.tasks.ActionRunnable
+import com.kunzisoft.keepass.tasks.ProgressTaskUpdater
 import com.kunzisoft.keepass.utils.getUriOutputStream
+import com.kunzisoft.keepass.utils.withFileScheme
 import java.io.File
 
 open class SaveDatabaseRunnable(
@@ -36,7 +39,8 @@ open class SaveDatabaseRunnable(
     private var saveDatabase: Boolean,
     private var mainCredential: MainCredential?, // If null, uses composite Key
     private var challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray,
-    private var databaseCopyUri: Uri? = null
+    private var databaseCopyUri: Uri? = null,
+    private var progressTaskUpdater: ProgressTaskUpdater? = null
 ) : ActionRunnable() {
 
     private var mMasterCredential: MasterCredential? = null
@@ -45,26 +49,34 @@ open class SaveDatabaseRunnable(
     override fun onStartRun() {}
 
     override fun onActionRun() {
-        database.checkVersion()
         // Save database in all cases if it's a copy
         if ((databaseCopyUri != null || saveDatabase) && result.isSuccess) {
             try {
                 val contentResolver = context.contentResolver
                 mMasterCredential = mainCredential?.toMasterCredential(contentResolver)
+                // Setting can be changed while the database is open
+                database.fastSaveEnabled = PreferencesUtil.isFastSaveDatabaseEnabled(context)
+                val databaseUri = databaseCopyUri ?: database.fileUri
                 // Build temp database file to avoid file corruption if error
                 database.saveData(
                     cacheFile = File(context.cacheDir, databaseCopyUri.hashCode().toString()),
                     databaseOutputStream = {
-                        contentResolver
-                            .getUriOutputStream(databaseCopyUri ?: database.fileUri)
+                        contentResolver.getUriOutputStream(databaseUri)
                     },
+                    // A local file can be replaced directly without the cache copy
+                    databaseFile = databaseUri?.takeIf { it.withFileScheme() }
+                        ?.path?.let { File(it) },
                     isNewLocation = databaseCopyUri == null,
                     masterCredential = mMasterCredential,
-                    challengeResponseRetriever = challengeResponseRetriever
+                    challengeResponseRetriever = challengeResponseRetriever,
+                    progressTaskUpdater = progressTaskUpdater
                 )
             } catch (e: DatabaseException) {
                 setError(e)
             }
+        } else {
+            // The version is checked during the save
+            database.checkVersion()
         }
     }
 
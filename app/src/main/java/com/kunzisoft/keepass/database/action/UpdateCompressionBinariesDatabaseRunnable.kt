@@ -43,9 +43,9 @@ class UpdateCompressionBinariesDatabaseRunnable (
         // Set new compression
         if (database.allowDataCompression) {
             try {
-                database.apply {
-                    updateDataBinaryCompression(oldCompressionAlgorithm, newCompressionAlgorithm)
-                    compressionAlgorithm = newCompressionAlgorithm
+                database.writeTree {
+                    database.updateDataBinaryCompression(oldCompressionAlgorithm, newCompressionAlgorithm)
+                    database.compressionAlgorithm = newCompressionAlgorithm
                 }
             } catch (e: Exception) {
                 setError(e)
@@ -61,9 +61,9 @@ class UpdateCompressionBinariesDatabaseRunnable (
         if (database.allowDataCompression) {
             if (!result.isSuccess) {
                 try {
-                    database.apply {
-                        compressionAlgorithm = oldCompressionAlgorithm
-                        updateDataBinaryCompression(newCompressionAlgorithm, oldCompressionAlgorithm)
+                    database.writeTree {
+                        database.compressionAlgorithm = oldCompressionAlgorithm
+                        database.updateDataBinaryCompression(newCompressionAlgorithm, oldCompressionAlgorithm)
                     }
                 } catch (e: Exception) {
                     setError(e)
@@ -36,7 +36,9 @@ class DeleteEntryHistoryDatabaseRunnable (
 
     override fun onStartRun() {
         try {
-            database.removeEntryHistory(mainEntry, entryHistoryPosition)
+            database.writeTree {
+                database.removeEntryHistory(mainEntry, entryHistoryPosition)
+            }
         } catch (e: Exception) {
             setError(e)
         }
@@ -39,7 +39,8 @@ abstract class ActionNodeDatabaseRunnable(
 
     override fun onStartRun() {
         try {
-            nodeAction()
+            // Lookups wait for the end of the modification
+            database.writeTree { nodeAction() }
         } catch (e: Exception) {
             setError(e)
         }
@@ -54,7 +55,7 @@ abstract class ActionNodeDatabaseRunnable(
     override fun onFinishRun() {
         super.onFinishRun()
         afterActionNodesFinish?.apply {
-            onActionNodesFinish(result, nodeFinish())
+            onActionNodesFinish(result, database.writeTree { nodeFinish() })
         }
     }
 }
@@ -21,6 +21,7 @@ package com.kunzisoft.keepass.database.action.node
 
 import android.content.Context
 import com.kunzisoft.keepass.database.ContextualDatabase
+import com.kunzisoft.keepass.database.element.Attachment
 import com.kunzisoft.keepass.database.element.Entry
 import com.kunzisoft.keepass.database.element.Group
 import com.kunzisoft.keepass.database.element.node.Node
@@ -43,6 +44,7 @@ class DeleteNodesRunnable(
     private var mNodesToDeleteBackup = mutableListOf<Node>()
 
     override fun nodeAction() {
+        val attachmentsToRemove = mutableListOf<Attachment>()
 
         foreachNode@ for(nodeToDelete in mNodesToDelete) {
             mOldParent = nodeToDelete.parent
@@ -77,12 +79,13 @@ class DeleteNodesRunnable(
                         database.deleteEntry(entryToDelete)
                     }
                     // Remove the oldest attachments
-                    entryToDelete.getAttachments(database.attachmentPool).forEach {
-                        database.removeAttachmentIfNotUsed(it)
-                    }
+                    attachmentsToRemove.addAll(
+                        entryToDelete.getAttachments(database.attachmentPool)
+                    )
                 }
             }
         }
+        database.removeAttachmentsIfNotUsed(attachmentsToRemove)
     }
 
     override fun nodeFinish(): ActionNodesValues {
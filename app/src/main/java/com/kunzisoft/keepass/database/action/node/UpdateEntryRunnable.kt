@@ -71,9 +71,7 @@ class UpdateEntryRunnable(
             database.updateEntry(mNewEntry)
 
             // Remove oldest attachments
-            attachmentsToRemove.forEach {
-                database.removeAttachmentIfNotUsed(it)
-            }
+            database.removeAttachmentsIfNotUsed(attachmentsToRemove)
         }
     }
 
@@ -63,8 +63,7 @@ object SearchHelper {
                 concreteWebDomain.invoke(searchSubDomains, webDomain)
             } else {
                 CoroutineScope(Dispatchers.IO).launch {
-                    val publicSuffixList = PublicSuffixList(context)
-                    val publicSuffix = publicSuffixList
+                    val publicSuffix = PublicSuffixList.getInstance(context)
                         .getPublicSuffixPlusOne(webDomain).await()
                     withContext(Dispatchers.Main) {
                         concreteWebDomain.invoke(false, publicSuffix)
@@ -31,6 +31,7 @@ import android.graphics.PorterDuff
 import android.graphics.PorterDuffColorFilter
 import android.graphics.drawable.Drawable
 import android.util.Log
+import android.util.LruCache
 import android.widget.ImageView
 import android.widget.RemoteViews
 import androidx.core.content.res.ResourcesCompat
@@ -44,11 +45,16 @@ import com.kunzisoft.keepass.database.element.icon.IconImageCustom
 import com.kunzisoft.keepass.database.element.icon.IconImageDraw
 import com.kunzisoft.keepass.icon.IconPack
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
 import java.lang.ref.WeakReference
 import java.util.UUID
+import java.util.WeakHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Factory class who build database icons dynamically, can assign an icon of IconPack, or a custom icon to an ImageView with a tint
@@ -58,11 +64,38 @@ class IconDrawableFactory(
     private val retrieveCustomIconBinary: (iconId: UUID) -> BinaryData?,
 ) {
 
-    /** customIconMap
-     * Cache for icon drawable.
-     * Keys: UUID, Values: Drawables
+    /** customIconCache
+     * Cache for the decoded custom icons, bounded by the size of the bitmaps.
+     * Keys: UUID, Values: Bitmaps, or [failedDecode] if the icon cannot be decoded
+     */
+    private val customIconCache = object : LruCache<UUID, Bitmap>(CUSTOM_ICON_CACHE_SIZE) {
+        override fun sizeOf(key: UUID, value: Bitmap): Int {
+            return value.allocationByteCount
+        }
+    }
+
+    /**
+     * Cached for the custom icons which cannot be decoded, so they are not decoded at each bind
+     */
+    private val failedDecode: Bitmap by lazy {
+        Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8)
+    }
+
+    /**
+     * Changed when the cache is cleared, a decode started before is not added to the cache
      */
-    private val customIconMap = mutableMapOf<UUID, WeakReference<Drawable>>()
+    private val cacheGeneration = AtomicInteger(0)
+
+    /**
+     * Decodes in progress, to decode a custom icon only once for the views requesting it
+     */
+    private val customIconDecodes = mutableMapOf<UUID, Deferred<Bitmap?>>()
+    private val iconScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    /**
+     * Last icon requested for each view, a decode finished after a new request is not assigned
+     */
+    private val requestedIcons = WeakHashMap<ImageView, IconImageDraw>()
 
     /** standardIconMap
      * Cache for icon drawable.
@@ -113,32 +146,127 @@ class IconDrawableFactory(
         icon: IconImageCustom,
         iconCustomBinary: BinaryData?,
     ): Drawable? {
-        val patternIcon = PatternIcon(IconPackChooser.defaultIconSize)
-        retrieveBinaryCache()?.let { binaryCache ->
-            val draw: Drawable? = customIconMap[icon.uuid]?.get()
-            if (draw == null) {
-                iconCustomBinary?.let { binaryFile ->
-                    try {
-                        var bitmap: Bitmap? =
-                            BitmapFactory.decodeStream(binaryFile.getInputDataStream(binaryCache))
-                        bitmap?.let { bitmapIcon ->
-                            bitmap = resize(bitmapIcon, patternIcon)
-                            val createdDraw = bitmap.toDrawable(resources)
-                            customIconMap[icon.uuid] = WeakReference(createdDraw)
-                            return createdDraw
-                        }
-                    } catch (e: Exception) {
-                        customIconMap.remove(icon.uuid)
-                        Log.e(TAG, "Unable to create the bitmap icon", e)
+        return getCustomIconBitmap(icon.uuid, iconCustomBinary)?.toDrawable(resources)
+    }
+
+    /**
+     * Retrieve the custom icon [iconId] from the cache, or decode it in the calling thread
+     */
+    private fun getCustomIconBitmap(
+        iconId: UUID,
+        iconCustomBinary: BinaryData?,
+    ): Bitmap? {
+        customIconCache.get(iconId)?.let {
+            return it.takeIf { it !== failedDecode }
+        }
+        val generation = cacheGeneration.get()
+        val binaryCache = retrieveBinaryCache() ?: return null
+        return iconCustomBinary?.let { binaryFile ->
+            decodeCustomIcon(iconId, binaryFile, binaryCache, generation)
+        }
+    }
+
+    /**
+     * Retrieve the binary of the custom icon [iconId] and decode it in a background thread,
+     * the requests of the same icon share the decode in progress
+     */
+    private fun decodeCustomIconAsync(iconId: UUID): Deferred<Bitmap?> {
+        synchronized(customIconDecodes) {
+            customIconDecodes[iconId]?.let {
+                return it
+            }
+            val generation = cacheGeneration.get()
+            lateinit var decode: Deferred<Bitmap?>
+            decode = iconScope.async(start = CoroutineStart.LAZY) {
+                try {
+                    val cachedIcon = customIconCache.get(iconId)
+                    if (cachedIcon != null) {
+                        cachedIcon.takeIf { it !== failedDecode }
+                    } else {
+                        val binaryCache = retrieveBinaryCache()
+                        val customIconBinary = retrieveCustomIconBinary(iconId)
+                        if (binaryCache != null
+                            && customIconBinary != null
+                            && customIconBinary.dataExists()) {
+                            decodeCustomIcon(iconId, customIconBinary, binaryCache, generation)
+                        } else null
+                    }
+                } finally {
+                    synchronized(customIconDecodes) {
+                        // A new decode may have been started after a clear of the cache
+                        if (customIconDecodes[iconId] === decode)
+                            customIconDecodes.remove(iconId)
                     }
                 }
-            } else {
-                return draw
             }
+            customIconDecodes[iconId] = decode
+            decode.start()
+            return decode
         }
+    }
+
+    /**
+     * Decode the custom icon at the size of the built in icons and add it to the cache,
+     * if the cache was not cleared since the [generation] of the request
+     */
+    private fun decodeCustomIcon(
+        iconId: UUID,
+        iconCustomBinary: BinaryData,
+        binaryCache: BinaryCache,
+        generation: Int,
+    ): Bitmap? {
+        try {
+            // Read the stream only once, it is deciphered at each reading
+            val iconBytes = iconCustomBinary.getInputDataStream(binaryCache).use {
+                it.readBytes()
+            }
+            val patternIcon = PatternIcon(IconPackChooser.defaultIconSize)
+            val options = BitmapFactory.Options().apply {
+                inJustDecodeBounds = true
+            }
+            BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.size, options)
+            options.inSampleSize = calculateInSampleSize(options, patternIcon)
+            options.inJustDecodeBounds = false
+            BitmapFactory.decodeByteArray(iconBytes, 0, iconBytes.size, options)?.let { bitmapIcon ->
+                val bitmap = resize(bitmapIcon, patternIcon)
+                putInCache(iconId, bitmap, generation)
+                return bitmap
+            }
+            Log.e(TAG, "Unable to decode the bitmap icon")
+        } catch (e: Exception) {
+            Log.e(TAG, "Unable to create the bitmap icon", e)
+        }
+        putInCache(iconId, failedDecode, generation)
         return null
     }
 
+    private fun putInCache(iconId: UUID, bitmap: Bitmap, generation: Int) {
+        synchronized(cacheGeneration) {
+            // The icon may have been changed during the decode
+            if (cacheGeneration.get() == generation)
+                customIconCache.put(iconId, bitmap)
+        }
+    }
+
+    /**
+     * Largest power of 2 keeping the decoded icon at least as large as the built in icons
+     */
+    private fun calculateInSampleSize(
+        options: BitmapFactory.Options,
+        dimensionPattern: PatternIcon
+    ): Int {
+        var inSampleSize = 1
+        if (options.outWidth > dimensionPattern.width || options.outHeight > dimensionPattern.height) {
+            val halfWidth = options.outWidth / 2
+            val halfHeight = options.outHeight / 2
+            while (halfWidth / inSampleSize >= dimensionPattern.width
+                && halfHeight / inSampleSize >= dimensionPattern.height) {
+                inSampleSize *= 2
+            }
+        }
+        return inSampleSize
+    }
+
     /**
      * Get the standard [Drawable] icon from [iconId] (cache or build it and add it to the cache if not exists yet)
      * , then tint it with [tintColor] if needed
@@ -197,20 +325,16 @@ class IconDrawableFactory(
         tintColor: Int = Color.WHITE,
     ) {
         try {
-            val context = imageView.context
-            CoroutineScope(Dispatchers.IO).launch {
-                addToCustomCache(context.resources, icon)
-                withContext(Dispatchers.Main) {
-                    val superDrawable = getIconSuperDrawable(context,
-                        icon,
-                        imageView.width,
-                        tintColor)
-                    imageView.setImageDrawable(superDrawable.drawable)
-                    if (superDrawable.tintable) {
-                        ImageViewCompat.setImageTintList(imageView,
-                            ColorStateList.valueOf(tintColor))
-                    } else {
-                        ImageViewCompat.setImageTintList(imageView, null)
+            requestedIcons[imageView] = icon
+            val customIconDecode = decodeCustomIconIfNeeded(icon)
+            if (customIconDecode == null) {
+                assignIconDrawable(imageView, icon, tintColor)
+            } else {
+                CoroutineScope(Dispatchers.Main).launch {
+                    customIconDecode.await()
+                    // The view may have been recycled for another icon
+                    if (requestedIcons[imageView] === icon) {
+                        assignIconDrawable(imageView, icon, tintColor)
                     }
                 }
             }
@@ -219,6 +343,34 @@ class IconDrawableFactory(
         }
     }
 
+    private fun assignIconDrawable(
+        imageView: ImageView,
+        icon: IconImageDraw,
+        tintColor: Int,
+    ) {
+        val superDrawable = getIconSuperDrawable(imageView.context,
+            icon,
+            imageView.width,
+            tintColor)
+        imageView.setImageDrawable(superDrawable.drawable)
+        if (superDrawable.tintable) {
+            ImageViewCompat.setImageTintList(imageView,
+                ColorStateList.valueOf(tintColor))
+        } else {
+            ImageViewCompat.setImageTintList(imageView, null)
+        }
+    }
+
+    /**
+     * Retrieve and decode in a background thread the custom icon of a view about to be displayed
+     */
+    fun prefetchDatabaseIcon(iconDraw: IconImageDraw) {
+        val icon = iconDraw.getIconImageToDraw()
+        if (icon.custom.isUnknown || customIconCache.get(icon.custom.uuid) != null)
+            return
+        decodeCustomIconAsync(icon.custom.uuid)
+    }
+
     /**
      * Build a bitmap from a database [icon]
      */
@@ -247,31 +399,48 @@ class IconDrawableFactory(
     }
 
     /**
-     * Simple method to init the cache with the custom icon and be much faster next time
+     * Launch the decode of the custom icon if it is not in the cache yet,
+     * return null if there is nothing to wait for
      */
-    private fun addToCustomCache(resources: Resources, iconDraw: IconImageDraw) {
+    private fun decodeCustomIconIfNeeded(iconDraw: IconImageDraw): Deferred<Bitmap?>? {
         val icon = iconDraw.getIconImageToDraw()
-        val customIconBinary = retrieveCustomIconBinary(icon.custom.uuid)
-        if (customIconBinary != null
-            && customIconBinary.dataExists()
-            && !customIconMap.containsKey(icon.custom.uuid)
-        )
-            getIconDrawable(resources, icon.custom, customIconBinary)
+        val iconId = icon.custom.uuid
+        if (icon.custom.isUnknown || customIconCache.get(iconId) != null)
+            return null
+        val customIconBinary = retrieveCustomIconBinary(iconId)
+        val binaryCache = retrieveBinaryCache()
+        if (binaryCache == null
+            || customIconBinary == null
+            || !customIconBinary.dataExists())
+            return null
+        return decodeCustomIconAsync(iconId)
     }
 
     /**
-     * Clear a specific icon from the cache
+     * Clear a specific icon from the cache, the decodes in progress are not cached
      */
     fun clearFromCache(icon: IconImageCustom) {
-        customIconMap.remove(icon.uuid)
+        synchronized(cacheGeneration) {
+            cacheGeneration.incrementAndGet()
+            customIconCache.remove(icon.uuid)
+        }
+        synchronized(customIconDecodes) {
+            customIconDecodes.remove(icon.uuid)
+        }
     }
 
     /**
-     * Clear the cache of icons
+     * Clear the cache of icons, the decodes in progress are not cached
      */
     fun clearCache() {
         standardIconMap.clear()
-        customIconMap.clear()
+        synchronized(cacheGeneration) {
+            cacheGeneration.incrementAndGet()
+            customIconCache.evictAll()
+        }
+        synchronized(customIconDecodes) {
+            customIconDecodes.clear()
+        }
     }
 
     /**
@@ -333,6 +502,9 @@ class IconDrawableFactory(
     companion object {
 
         private val TAG = IconDrawableFactory::class.java.name
+
+        // Around a hundred icons of 32dp at a high density
+        private const val CUSTOM_ICON_CACHE_SIZE = 4 * 1024 * 1024
     }
 
 }
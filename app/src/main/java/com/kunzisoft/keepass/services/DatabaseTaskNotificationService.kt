@@ -28,6 +28,9 @@ import android.os.Bundle
 import android.os.IBinder
 import android.util.Log
 import androidx.annotation.StringRes
+import androidx.lifecycle.DefaultLifecycleObserver
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.ProcessLifecycleOwner
 import androidx.media.app.NotificationCompat
 import com.kunzisoft.keepass.R
 import com.kunzisoft.keepass.activities.FileDatabaseSelectActivity
@@ -82,10 +85,14 @@ import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.async
 import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import java.util.UUID
 
@@ -109,9 +116,23 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
     private var mResponseChallengeChannel: Channel<ByteArray?>? = null
 
     private var mActionRunning = 0
+    // Single writer of the database, the actions waiting are resumed in FIFO order
+    private val mActionQueue = Mutex()
     private var mTaskRemovedRequested = false
     private var mSaveState = false
 
+    // Saves of node actions postponed to be committed together
+    private var mPendingSaveJob: Job? = null
+    private var mPendingSaveModifications = 0
+    private var mSaveRequestedCount = 0L
+    private var mSaveExecutedCount = 0L
+    private val mProcessLifecycleObserver = object : DefaultLifecycleObserver {
+        override fun onStop(owner: LifecycleOwner) {
+            // Commit the pending modifications when the app goes to background
+            commitPendingSave()
+        }
+    }
+
     private var mProgressMessage: ProgressMessage = ProgressMessage(R.string.database_opened)
 
     override fun retrieveChannelId(): String {
@@ -305,6 +326,11 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         mResponseChallengeChannel = null
     }
 
+    override fun onCreate() {
+        super.onCreate()
+        ProcessLifecycleOwner.get().lifecycle.addObserver(mProcessLifecycleObserver)
+    }
+
     override fun onBind(intent: Intent): IBinder? {
         super.onBind(intent)
         return mActionTaskBinder
@@ -321,6 +347,17 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
             }
         }
 
+        // The modifications waiting to be saved are committed by a save queued before
+        if (intent?.action in COMMIT_PENDING_SAVE_ACTIONS && database.hasPendingSave) {
+            launchAction(buildPendingSaveIntent(), database)
+        }
+        return launchAction(intent, database)
+    }
+
+    /**
+     * Build the action of [intent] and queue it after the actions already received
+     */
+    private fun launchAction(intent: Intent?, database: ContextualDatabase): Int {
         // Get save state
         mSaveState = if (intent != null) {
             if (intent.hasExtra(SAVE_DATABASE_KEY)) {
@@ -333,11 +370,26 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
                     || intent.action == ACTION_DATABASE_SAVE)
         } else false
 
+        val intentAction = intent?.action
+
+        // Postpone the save of a node action to commit the next modifications with it
+        val postponeSave = mSaveState
+                && intentAction in POSTPONABLE_SAVE_ACTIONS
+                && !database.isHardwareKeyProtected
+                && PreferencesUtil.getSaveDelay(this) > 0
+        if (postponeSave) {
+            intent?.putExtra(SAVE_DATABASE_KEY, false)
+            mSaveState = false
+        } else if (mSaveState && database.takePendingSave()) {
+            // The pending modifications are committed with this save
+            mPendingSaveJob?.cancel()
+            mPendingSaveJob = null
+            logPendingSave()
+        }
+
         // Create the notification
         buildNotification(intent)
 
-        val intentAction = intent?.action
-
         if (intentAction == null && !database.loaded) {
             stopService()
         }
@@ -384,100 +436,107 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         // Build and launch the action
         if (actionRunnable != null) {
             mainScope.launch {
-                executeAction(
-                    this@DatabaseTaskNotificationService,
-                    {
-                        mActionRunning++
-                        if (isMainAction) {
-                            TimeoutHelper.temporarilyDisableTimeout()
-
-                            sendBroadcast(Intent(DATABASE_START_TASK_ACTION).apply {
-                                putExtra(DATABASE_TASK_TITLE_KEY, mProgressMessage.titleId)
-                                putExtra(DATABASE_TASK_MESSAGE_KEY, mProgressMessage.messageId)
-                                putExtra(DATABASE_TASK_WARNING_KEY, mProgressMessage.warningId)
-                            })
-
-                            mActionTaskListeners.forEach { actionTaskListener ->
-                                actionTaskListener.onActionStarted(
-                                    database,
-                                    mProgressMessage
-                                )
-                            }
-                        }
-                    },
-                    {
-                        actionRunnable
-                    },
-                    { result ->
-                        if (isMainAction) {
-                            try {
+                // Main actions are performed one by one in the order received,
+                // a sub action is performed during the main action waiting for it
+                withActionQueue(isMainAction) {
+                    executeAction(
+                        this@DatabaseTaskNotificationService,
+                        {
+                            mActionRunning++
+                            if (isMainAction) {
+                                TimeoutHelper.temporarilyDisableTimeout()
+
+                                sendBroadcast(Intent(DATABASE_START_TASK_ACTION).apply {
+                                    putExtra(DATABASE_TASK_TITLE_KEY, mProgressMessage.titleId)
+                                    putExtra(DATABASE_TASK_MESSAGE_KEY, mProgressMessage.messageId)
+                                    putExtra(DATABASE_TASK_WARNING_KEY, mProgressMessage.warningId)
+                                })
+
                                 mActionTaskListeners.forEach { actionTaskListener ->
-                                    mTaskRemovedRequested = false
-                                    actionTaskListener.onActionFinished(
+                                    actionTaskListener.onActionStarted(
                                         database,
-                                        intentAction!!,
-                                        result
+                                        mProgressMessage
                                     )
                                 }
-                            } finally {
-                                // Save the database info before performing action
-                                when (intentAction) {
-                                    ACTION_DATABASE_LOAD_TASK,
-                                    ACTION_DATABASE_MERGE_TASK,
-                                    ACTION_DATABASE_RELOAD_TASK -> {
-                                        saveDatabaseInfo()
+                            }
+                        },
+                        {
+                            actionRunnable
+                        },
+                        { result ->
+                            if (isMainAction) {
+                                try {
+                                    mActionTaskListeners.forEach { actionTaskListener ->
+                                        mTaskRemovedRequested = false
+                                        actionTaskListener.onActionFinished(
+                                            database,
+                                            intentAction!!,
+                                            result
+                                        )
                                     }
-                                }
-                                val save = !database.isReadOnly
-                                        && (intentAction == ACTION_DATABASE_SAVE
-                                        || intent?.getBooleanExtra(
-                                    SAVE_DATABASE_KEY,
-                                    false
-                                ) == true)
-                                // Save the database info after performing save action
-                                if (save) {
-                                    database.fileUri?.let {
-                                        val newSnapFileDatabaseInfo =
-                                            SnapFileDatabaseInfo.fromFileDatabaseInfo(
-                                                FileDatabaseInfo(applicationContext, it)
-                                            )
-                                        mLastLocalSaveTime = System.currentTimeMillis()
-                                        mSnapFileDatabaseInfo = newSnapFileDatabaseInfo
+                                } finally {
+                                    // Save the database info before performing action
+                                    when (intentAction) {
+                                        ACTION_DATABASE_LOAD_TASK,
+                                        ACTION_DATABASE_MERGE_TASK,
+                                        ACTION_DATABASE_RELOAD_TASK -> {
+                                            saveDatabaseInfo()
+                                        }
                                     }
-                                }
-                                removeIntentData(intent)
-                                TimeoutHelper.releaseTemporarilyDisableTimeout()
-                                // Stop service after save if user remove task
-                                if (save && mTaskRemovedRequested) {
-                                    stopService()
-                                } else if (TimeoutHelper.checkTimeAndLockIfTimeout(this@DatabaseTaskNotificationService)) {
-                                    if (!database.loaded) {
+                                    val save = !database.isReadOnly
+                                            && (intentAction == ACTION_DATABASE_SAVE
+                                            || intent?.getBooleanExtra(
+                                        SAVE_DATABASE_KEY,
+                                        false
+                                    ) == true)
+                                    // Save the database info after performing save action
+                                    if (save) {
+                                        database.fileUri?.let {
+                                            val newSnapFileDatabaseInfo =
+                                                SnapFileDatabaseInfo.fromFileDatabaseInfo(
+                                                    FileDatabaseInfo(applicationContext, it)
+                                                )
+                                            mLastLocalSaveTime = System.currentTimeMillis()
+                                            mSnapFileDatabaseInfo = newSnapFileDatabaseInfo
+                                        }
+                                    }
+                                    if (postponeSave && result.isSuccess) {
+                                        schedulePendingSave(database)
+                                    }
+                                    removeIntentData(intent)
+                                    TimeoutHelper.releaseTemporarilyDisableTimeout()
+                                    // Stop service after save if user remove task
+                                    if (save && mTaskRemovedRequested) {
                                         stopService()
-                                    } else {
-                                        // Restart the service to open lock notification
-                                        try {
-                                            startService(
-                                                Intent(
-                                                    applicationContext,
-                                                    DatabaseTaskNotificationService::class.java
+                                    } else if (TimeoutHelper.checkTimeAndLockIfTimeout(this@DatabaseTaskNotificationService)) {
+                                        if (!database.loaded) {
+                                            stopService()
+                                        } else {
+                                            // Restart the service to open lock notification
+                                            try {
+                                                startService(
+                                                    Intent(
+                                                        applicationContext,
+                                                        DatabaseTaskNotificationService::class.java
+                                                    )
                                                 )
-                                            )
-                                        } catch (e: IllegalStateException) {
-                                            Log.w(
-                                                TAG,
-                                                "Cannot restart the database task service",
-                                                e
-                                            )
+                                            } catch (e: IllegalStateException) {
+                                                Log.w(
+                                                    TAG,
+                                                    "Cannot restart the database task service",
+                                                    e
+                                                )
+                                            }
                                         }
                                     }
+                                    mTaskRemovedRequested = false
                                 }
-                                mTaskRemovedRequested = false
+                                sendBroadcast(Intent(DATABASE_STOP_TASK_ACTION))
                             }
-                            sendBroadcast(Intent(DATABASE_STOP_TASK_ACTION))
+                            mActionRunning--
                         }
-                        mActionRunning--
-                    }
-                )
+                    )
+                }
             }
         }
 
@@ -622,6 +681,14 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         intent?.removeExtra(NEW_ELEMENT_KEY)
     }
 
+    private suspend fun withActionQueue(isMainAction: Boolean, action: suspend () -> Unit) {
+        if (isMainAction) {
+            mActionQueue.withLock { action() }
+        } else {
+            action()
+        }
+    }
+
     /**
      * Execute action with a coroutine
      */
@@ -646,6 +713,49 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         }
     }
 
+    /**
+     * Commit the modifications of the finished node action with the next ones,
+     * at the latest after the save delay or before the database is closed
+     */
+    private fun schedulePendingSave(database: ContextualDatabase) {
+        mSaveRequestedCount++
+        mPendingSaveModifications++
+        if (database.postponeSave()) {
+            mPendingSaveJob?.cancel()
+            mPendingSaveJob = mainScope.launch {
+                delay(PreferencesUtil.getSaveDelay(this@DatabaseTaskNotificationService))
+                commitPendingSave()
+            }
+        }
+    }
+
+    /**
+     * Queue the save of the pending modifications after the running actions
+     */
+    private fun commitPendingSave() {
+        mPendingSaveJob?.cancel()
+        mPendingSaveJob = null
+        val database = mDatabase ?: return
+        // The pending save is taken by the save action
+        if (database.hasPendingSave) {
+            launchAction(buildPendingSaveIntent(), database)
+        }
+    }
+
+    private fun buildPendingSaveIntent(): Intent {
+        return Intent(applicationContext, DatabaseTaskNotificationService::class.java).apply {
+            action = ACTION_DATABASE_SAVE
+            putExtra(SAVE_DATABASE_KEY, true)
+        }
+    }
+
+    private fun logPendingSave() {
+        mSaveExecutedCount++
+        Log.i(TAG, "Save $mPendingSaveModifications modifications at once, " +
+                "$mSaveExecutedCount saves executed for $mSaveRequestedCount postponed")
+        mPendingSaveModifications = 0
+    }
+
     private fun notifyProgressMessage() {
         mDatabase?.let { database ->
             mActionTaskListeners.forEach { actionTaskListener ->
@@ -671,8 +781,27 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         updateMessage(R.string.decrypting_db)
     }
 
+    override fun encryptingDatabase() {
+        updateMessage(R.string.encrypting_db)
+    }
+
     override fun stopService() {
         if (!TimeoutHelper.temporarilyDisableLock) {
+            mPendingSaveJob?.cancel()
+            mPendingSaveJob = null
+            val database = mDatabase
+            if (database != null && database.hasPendingSave) {
+                // The lock is ignored until the modifications waiting are saved by a queued action,
+                // then requested again to close the database
+                TimeoutHelper.temporarilyDisableTimeout()
+                launchAction(buildPendingSaveIntent(), database)
+                mainScope.launch {
+                    mActionQueue.withLock { }
+                    if (mDatabase?.loaded == true)
+                        sendBroadcast(Intent(LOCK_ACTION))
+                }
+                return
+            }
             closeDatabase(mDatabase)
             // Remove the database during the lock
             // And notify each subscriber
@@ -687,6 +816,12 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         }
     }
 
+    override fun onDestroy() {
+        ProcessLifecycleOwner.get().lifecycle.removeObserver(mProcessLifecycleObserver)
+        mPendingSaveJob?.cancel()
+        super.onDestroy()
+    }
+
     override fun onTaskRemoved(rootIntent: Intent?) {
         if (TimeoutHelper.temporarilyDisableLock) {
             mTaskRemovedRequested = true
@@ -1295,7 +1430,8 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
                 { hardwareKey, seed ->
                     retrieveResponseFromChallenge(hardwareKey, seed)
                 },
-                databaseCopyUri)
+                databaseCopyUri,
+                this)
         } else {
             null
         }
@@ -1391,6 +1527,26 @@ open class DatabaseTaskNotificationService : LockNotificationService(), Progress
         const val NEW_ELEMENT_KEY = "NEW_ELEMENT_KEY" // Warning type of this thing change every time
         const val DATA_BYTES = "DATA_BYTES"
 
+        // Node actions whose save can be grouped with the next modifications
+        private val POSTPONABLE_SAVE_ACTIONS = listOf(
+            ACTION_DATABASE_CREATE_GROUP_TASK,
+            ACTION_DATABASE_UPDATE_GROUP_TASK,
+            ACTION_DATABASE_CREATE_ENTRY_TASK,
+            ACTION_DATABASE_UPDATE_ENTRY_TASK,
+            ACTION_DATABASE_COPY_NODES_TASK,
+            ACTION_DATABASE_MOVE_NODES_TASK,
+            ACTION_DATABASE_DELETE_NODES_TASK,
+            ACTION_DATABASE_RESTORE_ENTRY_HISTORY,
+            ACTION_DATABASE_DELETE_ENTRY_HISTORY
+        )
+
+        // Actions closing or replacing the database, the pending save is committed before
+        private val COMMIT_PENDING_SAVE_ACTIONS = listOf(
+            ACTION_DATABASE_CREATE_TASK,
+            ACTION_DATABASE_LOAD_TASK,
+            ACTION_DATABASE_RELOAD_TASK
+        )
+
         fun getListNodesFromBundle(database: ContextualDatabase, bundle: Bundle): List<Node> {
             val nodesAction = mutableListOf<Node>()
             bundle.getParcelableList<NodeId<*>>(GROUPS_ID_KEY)?.forEach {
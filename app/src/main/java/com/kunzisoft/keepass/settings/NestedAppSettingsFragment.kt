@@ -467,7 +467,8 @@ class NestedAppSettingsFragment : NestedSettingsFragment() {
         when (preference.key) {
             getString(R.string.app_timeout_key),
             getString(R.string.clipboard_timeout_key),
-            getString(R.string.temp_device_unlock_timeout_key) -> {
+            getString(R.string.temp_device_unlock_timeout_key),
+            getString(R.string.save_delay_key) -> {
                 dialogFragment = DurationDialogFragmentCompat.newInstance(preference.key)
             }
             else -> {}
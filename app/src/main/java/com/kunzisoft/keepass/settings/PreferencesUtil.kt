@@ -110,6 +110,12 @@ object PreferencesUtil {
             context.resources.getBoolean(R.bool.auto_focus_search_default))
     }
 
+    fun searchIndexEnabled(context: Context): Boolean {
+        val prefs = PreferenceManager.getDefaultSharedPreferences(context)
+        return prefs.getBoolean(context.getString(R.string.search_index_key),
+            context.resources.getBoolean(R.bool.search_index_default))
+    }
+
     fun searchSubDomains(context: Context): Boolean {
         val prefs = PreferenceManager.getDefaultSharedPreferences(context)
         return prefs.getBoolean(context.getString(R.string.subdomain_search_key),
@@ -501,6 +507,32 @@ object PreferencesUtil {
             context.resources.getBoolean(R.bool.enable_auto_save_database_default))
     }
 
+    fun isFastSaveDatabaseEnabled(context: Context): Boolean {
+        val prefs = PreferenceManager.getDefaultSharedPreferences(context)
+        return prefs.getBoolean(context.getString(R.string.enable_fast_save_database_key),
+            context.resources.getBoolean(R.bool.enable_fast_save_database_default))
+    }
+
+    /**
+     * Maximum delay in milliseconds to group the saves of node modifications, 0 to save each one
+     */
+    fun getSaveDelay(context: Context): Long {
+        val prefs = PreferenceManager.getDefaultSharedPreferences(context)
+        return try {
+            val delay = prefs.getString(context.getString(R.string.save_delay_key),
+                context.getString(R.string.save_delay_default))?.toLong() ?: 0L
+            if (delay < 0) 0L else delay
+        } catch (_: NumberFormatException) {
+            0L
+        }
+    }
+
+    fun loadAttachmentsInBackground(context: Context): Boolean {
+        val prefs = PreferenceManager.getDefaultSharedPreferences(context)
+        return prefs.getBoolean(context.getString(R.string.load_attachments_in_background_key),
+            context.resources.getBoolean(R.bool.load_attachments_in_background_default))
+    }
+
     fun isKeepScreenOnEnabled(context: Context): Boolean {
         val prefs = PreferenceManager.getDefaultSharedPreferences(context)
         return prefs.getBoolean(context.getString(R.string.enable_keep_screen_on_key),
@@ -887,8 +919,11 @@ object PreferencesUtil {
                 context.getString(R.string.user_verification_mode_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.user_verification_device_credential_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.enable_auto_save_database_key) -> editor.putBoolean(name, value.toBoolean())
+                context.getString(R.string.enable_fast_save_database_key) -> editor.putBoolean(name, value.toBoolean())
+                context.getString(R.string.load_attachments_in_background_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.enable_keep_screen_on_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.auto_focus_search_key) -> editor.putBoolean(name, value.toBoolean())
+                context.getString(R.string.search_index_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.subdomain_search_key) -> editor.putBoolean(name, value.toBoolean())
                 context.getString(R.string.app_timeout_key) -> editor.putString(name, value.toLong().toString())
                 context.getString(R.string.lock_database_screen_off_key) -> editor.putBoolean(name, value.toBoolean())
@@ -162,8 +162,9 @@ fun Context.closeDatabase(database: ContextualDatabase?) {
     (getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager?)?.apply {
         cancelAll()
     }
-    // Clear data
-    database?.clearAndClose(this.getBinaryDir())
+    // Clear data, a database with modifications waiting is closed by the service after the save
+    if (database?.hasPendingSave != true)
+        database?.clearAndClose(this.getBinaryDir())
 
     // Release not useful URI permission
     applicationContext.releaseAllUnnecessaryPermissionUris()
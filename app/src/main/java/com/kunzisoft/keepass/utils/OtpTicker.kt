@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.utils
+
+import android.os.Handler
+import android.os.Looper
+import android.view.View
+
+/**
+ * Single clock of the main thread to refresh the OTP views each second,
+ * instead of a runnable posted by each view.
+ *
+ * A listener is bound to a view and only called while the view is attached to a window,
+ * the clock is stopped when no view is attached. Must be used from the main thread.
+ */
+object OtpTicker {
+
+    private const val TICK_PERIOD = 1000L
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val attachedRegistrations = LinkedHashSet<Registration>()
+    private var ticking = false
+
+    private val tick = object : Runnable {
+        override fun run() {
+            attachedRegistrations.toTypedArray().forEach { registration ->
+                // A previous listener can unregister the next ones
+                if (attachedRegistrations.contains(registration))
+                    registration.listener.invoke()
+            }
+            if (attachedRegistrations.isEmpty()) {
+                ticking = false
+            } else {
+                scheduleNextTick()
+            }
+        }
+    }
+
+    /**
+     * Call [listener] each second while [view] is attached,
+     * the returned registration must be unregistered when the listener is no longer needed
+     */
+    fun register(view: View, listener: () -> Unit): Registration {
+        val registration = Registration(view, listener)
+        view.addOnAttachStateChangeListener(registration)
+        if (view.isAttachedToWindow) {
+            registration.onViewAttachedToWindow(view)
+        }
+        return registration
+    }
+
+    private fun scheduleNextTick() {
+        // Aligned on the second so all the views change at the same time
+        handler.postDelayed(tick, TICK_PERIOD - System.currentTimeMillis() % TICK_PERIOD)
+    }
+
+    class Registration internal constructor(private val view: View,
+                                            internal val listener: () -> Unit)
+        : View.OnAttachStateChangeListener {
+
+        fun unregister() {
+            view.removeOnAttachStateChangeListener(this)
+            onViewDetachedFromWindow(view)
+        }
+
+        override fun onViewAttachedToWindow(v: View) {
+            attachedRegistrations.add(this)
+            if (!ticking) {
+                ticking = true
+                scheduleNextTick()
+            }
+        }
+
+        override fun onViewDetachedFromWindow(v: View) {
+            attachedRegistrations.remove(this)
+            if (attachedRegistrations.isEmpty() && ticking) {
+                ticking = false
+                handler.removeCallbacks(tick)
+            }
+        }
+    }
+}
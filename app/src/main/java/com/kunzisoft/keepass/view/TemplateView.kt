@@ -18,6 +18,7 @@ import com.kunzisoft.keepass.model.Passkey
 import com.kunzisoft.keepass.model.PasskeyEntryFields.PASSKEY_FIELD
 import com.kunzisoft.keepass.otp.OtpElement
 import com.kunzisoft.keepass.otp.OtpEntryFields.OTP_TOKEN_FIELD
+import com.kunzisoft.keepass.utils.OtpTicker
 
 
 class TemplateView @JvmOverloads constructor(
@@ -189,8 +190,7 @@ class TemplateView @JvmOverloads constructor(
      * OTP Runnable
      */
 
-    private var mOtpRunnable: Runnable? = null
-    private var mLastOtpTokenView: View? = null
+    private var mOtpRegistration: OtpTicker.Registration? = null
 
     fun setOnOtpElementUpdated(listener: ((OtpElement?) -> Unit)?) {
         this.mOnOtpElementUpdated = listener
@@ -232,20 +232,13 @@ class TemplateView @JvmOverloads constructor(
                     )
                 }
                 textDirection = TEXT_DIRECTION_LTR
-                mLastOtpTokenView = this
-                mOtpRunnable = Runnable {
+                mOtpRegistration = OtpTicker.register(this) {
                     if (otpElement.shouldRefreshToken()) {
                         value = otpElement.tokenFormatted
                     }
-                    if (mLastOtpTokenView == null) {
-                        mOnOtpElementUpdated?.invoke(null)
-                    } else {
-                        mOnOtpElementUpdated?.invoke(otpElement)
-                        postDelayed(mOtpRunnable, 1000)
-                    }
+                    mOnOtpElementUpdated?.invoke(otpElement)
                 }
                 mOnOtpElementUpdated?.invoke(otpElement)
-                post(mOtpRunnable)
             }
         }
     }
@@ -267,7 +260,11 @@ class TemplateView @JvmOverloads constructor(
     }
 
     private fun removeOtpRunnable() {
-        mLastOtpTokenView?.removeCallbacks(mOtpRunnable)
-        mLastOtpTokenView = null
+        mOtpRegistration?.let { registration ->
+            registration.unregister()
+            mOtpRegistration = null
+            // No more token shown
+            mOnOtpElementUpdated?.invoke(null)
+        }
     }
 }
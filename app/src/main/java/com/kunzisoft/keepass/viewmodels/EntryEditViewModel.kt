@@ -252,34 +252,33 @@ class EntryEditViewModel: NodeEditViewModel() {
                     removeTempAttachmentsNotCompleted(entryInfo)
                     mDatabase?.let { database ->
                         mEntry?.let { oldEntry ->
-                            // Create a clone
-                            var newEntry = Entry(oldEntry)
-
-                            // Build info
-                            newEntry.setEntryInfo(database, entryInfo)
-
-                            // Encode entry properties for template
-                            _onTemplateChanged.value?.let { template ->
-                                newEntry = database.encodeEntryWithTemplateConfiguration(
-                                        newEntry,
-                                        template
-                                    )
-                            }
+                            // The attachment pool is modified, a save must not stream it meanwhile
+                            database.writeTree {
+                                // Create a clone
+                                var newEntry = Entry(oldEntry)
+
+                                // Build info
+                                newEntry.setEntryInfo(database, entryInfo)
+
+                                // Encode entry properties for template
+                                _onTemplateChanged.value?.let { template ->
+                                    newEntry = database.encodeEntryWithTemplateConfiguration(
+                                            newEntry,
+                                            template
+                                        )
+                                }
 
-                            // Delete temp attachment if not used
-                            mTempAttachments.forEach { tempAttachmentState ->
-                                val tempAttachment = tempAttachmentState.attachment
-                                database.attachmentPool.let { binaryPool ->
-                                    if (!newEntry.getAttachments(binaryPool)
-                                            .contains(tempAttachment)
-                                    ) {
-                                        database.removeAttachmentIfNotUsed(tempAttachment)
+                                // Delete temp attachment if not used
+                                val newAttachments = newEntry.getAttachments(database.attachmentPool)
+                                database.removeAttachmentsIfNotUsed(
+                                    mTempAttachments.map { it.attachment }.filter { tempAttachment ->
+                                        !newAttachments.contains(tempAttachment)
                                     }
-                                }
-                            }
+                                )
 
-                            // Return entry to save
-                            EntrySave(oldEntry, newEntry, mParent)
+                                // Return entry to save
+                                EntrySave(oldEntry, newEntry, mParent)
+                            }
                         }
                     }
                 },
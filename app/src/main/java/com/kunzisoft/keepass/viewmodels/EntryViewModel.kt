@@ -92,44 +92,46 @@ class EntryViewModel(application: Application): AndroidViewModel(application) {
         if (database != null && mainEntryId != null) {
             IOActionTask(
                 {
-                    val mainEntry = database.getEntryById(mainEntryId)
-                    // To sort by access
-                    /* TODO Sort by access #1911, revert because of #2527
-                    if (database.isReadOnly) {
-                        mainEntry?.let {
-                            it.touch(modified = false, touchParents = false)
-                            database.updateEntry(entry = it)
+                    database.readTree {
+                        val mainEntry = database.getEntryById(mainEntryId)
+                        // To sort by access
+                        /* TODO Sort by access #1911, revert because of #2527
+                        if (database.isReadOnly) {
+                            mainEntry?.let {
+                                it.touch(modified = false, touchParents = false)
+                                database.updateEntry(entry = it)
+                            }
+                        }*/
+                        val currentEntry = if (historyPosition > -1) {
+                            mainEntry?.getHistory()?.get(historyPosition)
+                        } else {
+                            mainEntry
                         }
-                    }*/
-                    val currentEntry = if (historyPosition > -1) {
-                        mainEntry?.getHistory()?.get(historyPosition)
-                    } else {
-                        mainEntry
-                    }
-
-                    val entryTemplate = currentEntry?.let {
-                        database.getTemplate(it)
-                    } ?: Template.STANDARD
 
-                    // To simplify template field visibility
-                    currentEntry?.let { entry ->
-                        // Add mainEntry to check the parent and define the template state
-                        database.decodeEntryWithTemplateConfiguration(entry, mainEntry).let {
-                            // To update current modification time
-                            it.touch(modified = false, touchParents = false)
-
-                            // Build history info
-                            val entryInfoHistory = it.getHistory().map { entryHistory ->
-                                entryHistory.getEntryInfo(database)
+                        val entryTemplate = currentEntry?.let {
+                            database.getTemplate(it)
+                        } ?: Template.STANDARD
+
+                        // To simplify template field visibility
+                        currentEntry?.let { entry ->
+                            // Add mainEntry to check the parent and define the template state
+                            database.decodeEntryWithTemplateConfiguration(entry, mainEntry).let {
+                                // To update current modification time
+                                it.touch(modified = false, touchParents = false)
+
+                                // Build history info
+                                val entryInfoHistory = it.getHistory().map { entryHistory ->
+                                    entryHistory.getEntryInfo(database)
+                                }
+
+                                EntryInfoHistory(
+                                    mainEntry!!.nodeId,
+                                    historyPosition,
+                                    entryTemplate,
+                                    it.getEntryInfo(database),
+                                    entryInfoHistory
+                                )
                             }
-
-                            EntryInfoHistory(
-                                mainEntry!!.nodeId,
-                                historyPosition,
-                                entryTemplate,
-                                it.getEntryInfo(database),
-                                entryInfoHistory
-                            )
                         }
                     }
                 },
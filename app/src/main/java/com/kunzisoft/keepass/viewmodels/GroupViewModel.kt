@@ -22,6 +22,8 @@ package com.kunzisoft.keepass.viewmodels
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
 import androidx.lifecycle.ViewModel
+import com.kunzisoft.keepass.adapters.NodeRow
+import com.kunzisoft.keepass.adapters.NodesAdapter
 import com.kunzisoft.keepass.database.ContextualDatabase
 import com.kunzisoft.keepass.utils.IOActionTask
 import com.kunzisoft.keepass.database.element.Group
@@ -41,15 +43,21 @@ class GroupViewModel: ViewModel() {
     val firstPositionVisible : LiveData<Int> get() = _firstPositionVisible
     private val _firstPositionVisible = MutableLiveData<Int>()
 
+    val nodeRows : LiveData<NodeRows> get() = _nodeRows
+    private val _nodeRows = MutableLiveData<NodeRows>()
+    private var mNodeRowsRequest = 0
+
     fun loadMainGroup(database: ContextualDatabase?,
                       groupId: NodeId<*>?,
                       showFromPosition: Int?) {
         IOActionTask(
             {
-                if (groupId != null) {
-                    database?.getGroupById(groupId)
-                } else {
-                    database?.rootGroup
+                database?.readTree {
+                    if (groupId != null) {
+                        database.getGroupById(groupId)
+                    } else {
+                        database.rootGroup
+                    }
                 }
             },
             { group ->
@@ -86,6 +94,26 @@ class GroupViewModel: ViewModel() {
         ).execute()
     }
 
+    /**
+     * Build the rows of the children of [group] out of the UI thread with the [rowsParameters],
+     * only the rows of the last request are given, null rows if they cannot be built
+     */
+    fun loadNodeRows(database: ContextualDatabase,
+                     group: Group,
+                     rowsParameters: NodesAdapter.RowsParameters) {
+        val request = ++mNodeRowsRequest
+        IOActionTask(
+            {
+                NodesAdapter.buildRows(database, group, rowsParameters)
+            },
+            { rows ->
+                if (request == mNodeRowsRequest) {
+                    _nodeRows.value = NodeRows(group, rows)
+                }
+            }
+        ).execute()
+    }
+
     fun assignPosition(position: Int) {
         _firstPositionVisible.value = position
     }
@@ -95,6 +123,9 @@ class GroupViewModel: ViewModel() {
                           var showFromPosition: Int?,
                           var searchParameters: SearchParameters = SearchParameters())
 
+    class NodeRows(val group: Group,
+                   val rows: List<NodeRow>?)
+
     companion object {
         private val TAG = GroupViewModel::class.java.name
     }
@@ -0,0 +1,73 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package mozilla.components.lib.publicsuffixlist
+
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.charset.CharsetEncoder
+import java.nio.charset.CodingErrorAction
+
+/**
+ * UTF-8 labels of a domain, encoded in a single buffer reused for each lookup of a thread.
+ * The label at [wildcardIndex] is read as the wildcard label.
+ */
+internal class DomainLabels {
+
+    private val encoder: CharsetEncoder = Charsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+    private var buffer: ByteBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE)
+    private var starts = IntArray(INITIAL_LABELS)
+    private var ends = IntArray(INITIAL_LABELS)
+
+    var size = 0
+        private set
+    var wildcardIndex = -1
+
+    fun assign(labels: List<String>) {
+        size = 0
+        wildcardIndex = -1
+        buffer.clear()
+        if (starts.size < labels.size) {
+            starts = IntArray(labels.size)
+            ends = IntArray(labels.size)
+        }
+        labels.forEach { label ->
+            starts[size] = buffer.position()
+            encode(label)
+            ends[size] = buffer.position()
+            size++
+        }
+    }
+
+    private fun encode(label: String) {
+        val chars = CharBuffer.wrap(label)
+        encoder.reset()
+        while (encoder.encode(chars, buffer, true).isOverflow) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip() as ByteBuffer)
+        }
+        // Nothing is kept by the UTF-8 encoder
+        encoder.flush(buffer)
+    }
+
+    fun labelSize(labelIndex: Int): Int {
+        return if (labelIndex == wildcardIndex)
+            PublicSuffixListData.WILDCARD_LABEL.size
+        else
+            ends[labelIndex] - starts[labelIndex]
+    }
+
+    fun byteAt(labelIndex: Int, byteIndex: Int): Byte {
+        return if (labelIndex == wildcardIndex)
+            PublicSuffixListData.WILDCARD_LABEL[byteIndex]
+        else
+            buffer.get(starts[labelIndex] + byteIndex)
+    }
+
+    companion object {
+        private const val INITIAL_BUFFER_SIZE = 256
+        private const val INITIAL_LABELS = 8
+    }
+}
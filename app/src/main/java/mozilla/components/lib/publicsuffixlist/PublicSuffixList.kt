@@ -5,10 +5,13 @@
 package mozilla.components.lib.publicsuffixlist
 
 import android.content.Context
+import com.kunzisoft.keepass.utils.SingletonHolderParameter
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.async
 
 /**
@@ -22,14 +25,26 @@ import kotlinx.coroutines.async
  *
  * https://publicsuffix.org/
  * https://github.com/publicsuffix/list
+ *
+ * Use [getInstance] to share the list loaded in memory in the whole process.
  */
 class PublicSuffixList(
     context: Context,
     dispatcher: CoroutineDispatcher = Dispatchers.IO,
-    private val scope: CoroutineScope = CoroutineScope(dispatcher)
+    // Supervisor job to not cancel the next lookups of a shared instance after a failure
+    private val scope: CoroutineScope = CoroutineScope(SupervisorJob() + dispatcher)
 ) {
     private val data: PublicSuffixListData by lazy { PublicSuffixListLoader.load(context) }
 
+    // Last registrable domains computed, repeated lookups of the same host are not searched again
+    private val publicSuffixPlusOneCache = object : LinkedHashMap<String, String>(
+        CACHE_SIZE, 0.75f, true
+    ) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>?): Boolean {
+            return size > CACHE_SIZE
+        }
+    }
+
     /**
      * Prefetch the public suffix list from disk so that it is available in memory.
      */
@@ -75,13 +90,25 @@ class PublicSuffixList(
      * @param [domain] _must_ be a valid domain. [PublicSuffixList] performs no validation, and if any unexpected values
      * are passed (e.g., a full URL, a domain with a trailing '/', etc) this may return an incorrect result.
      */
-    fun getPublicSuffixPlusOne(domain: String): Deferred<String?> = scope.async {
-        when (val offset = data.getPublicSuffixOffset(domain)) {
-            is PublicSuffixOffset.Offset -> domain
-                .split('.')
-                .drop(offset.value)
-                .joinToString(separator = ".")
-            else -> null
+    fun getPublicSuffixPlusOne(domain: String): Deferred<String?> {
+        synchronized(publicSuffixPlusOneCache) {
+            publicSuffixPlusOneCache[domain]
+        }?.let { cached ->
+            return CompletableDeferred(cached.ifEmpty { null })
+        }
+        return scope.async {
+            val publicSuffixPlusOne = when (val offset = data.getPublicSuffixOffset(domain)) {
+                is PublicSuffixOffset.Offset -> domain
+                    .split('.')
+                    .drop(offset.value)
+                    .joinToString(separator = ".")
+                else -> null
+            }
+            synchronized(publicSuffixPlusOneCache) {
+                // Empty string to also remember the public suffixes
+                publicSuffixPlusOneCache[domain] = publicSuffixPlusOne ?: ""
+            }
+            publicSuffixPlusOne
         }
     }
 
@@ -132,4 +159,10 @@ class PublicSuffixList(
             else -> domain
         }
     }
+
+    companion object : SingletonHolderParameter<PublicSuffixList, Context>({ context ->
+        PublicSuffixList(context.applicationContext)
+    }) {
+        private const val CACHE_SIZE = 64
+    }
 }
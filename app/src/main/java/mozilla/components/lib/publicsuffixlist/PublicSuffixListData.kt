@@ -14,11 +14,16 @@ internal class PublicSuffixListData(
     private val rules: ByteArray,
     private val exceptions: ByteArray
 ) {
-    private fun binarySearchRules(labels: List<ByteArray>, labelIndex: Int): String? {
+    // Labels of the domain searched, a buffer for each thread of the lookups
+    private val domainLabels = object : ThreadLocal<DomainLabels>() {
+        override fun initialValue(): DomainLabels = DomainLabels()
+    }
+
+    private fun binarySearchRules(labels: DomainLabels, labelIndex: Int): String? {
         return rules.binarySearch(labels, labelIndex)
     }
 
-    private fun binarySearchExceptions(labels: List<ByteArray>, labelIndex: Int): String? {
+    private fun binarySearchExceptions(labels: DomainLabels, labelIndex: Int): String? {
         return exceptions.binarySearch(labels, labelIndex)
     }
 
@@ -62,7 +67,7 @@ internal class PublicSuffixListData(
      */
     private fun findMatchingRule(domainLabels: List<String>): List<String> {
         // Break apart the domain into UTF-8 labels, i.e. foo.bar.com turns into [foo, bar, com].
-        val domainLabelsBytes = domainLabels.map { it.toByteArray(Charsets.UTF_8) }
+        val domainLabelsBytes = this.domainLabels.get()!!.apply { assign(domainLabels) }
 
         val exactMatch = findExactMatch(domainLabelsBytes)
         val wildcardMatch = findWildcardMatch(domainLabelsBytes)
@@ -89,7 +94,7 @@ internal class PublicSuffixListData(
     /**
      * Returns an exact match or null.
      */
-    private fun findExactMatch(labels: List<ByteArray>): String? {
+    private fun findExactMatch(labels: DomainLabels): String? {
         // Start by looking for exact matches. We start at the leftmost label. For example, foo.bar.com
         // will look like: [foo, bar, com], [bar, com], [com]. The longest matching rule wins.
 
@@ -107,27 +112,31 @@ internal class PublicSuffixListData(
     /**
      * Returns a wildcard match or null.
      */
-    private fun findWildcardMatch(labels: List<ByteArray>): String? {
+    private fun findWildcardMatch(labels: DomainLabels): String? {
         // In theory, wildcard rules are not restricted to having the wildcard in the leftmost position.
         // In practice, wildcards are always in the leftmost position. For now, this implementation
         // cheats and does not attempt every possible permutation. Instead, it only considers wildcards
         // in the leftmost position. We assert this fact when we generate the public suffix file. If
         // this assertion ever fails we'll need to refactor this implementation.
         if (labels.size > 1) {
-            val labelsWithWildcard = labels.toMutableList()
-            for (labelIndex in 0 until labelsWithWildcard.size) {
-                labelsWithWildcard[labelIndex] = PublicSuffixListData.WILDCARD_LABEL
-                val rule = binarySearchRules(labelsWithWildcard, labelIndex)
-                if (rule != null) {
-                    return rule
+            try {
+                for (labelIndex in 0 until labels.size) {
+                    // Only the first label searched is read, it's the wildcard
+                    labels.wildcardIndex = labelIndex
+                    val rule = binarySearchRules(labels, labelIndex)
+                    if (rule != null) {
+                        return rule
+                    }
                 }
+            } finally {
+                labels.wildcardIndex = -1
             }
         }
 
         return null
     }
 
-    private fun findExceptionMatch(labels: List<ByteArray>, wildcardMatch: String?): String? {
+    private fun findExceptionMatch(labels: DomainLabels, wildcardMatch: String?): String? {
         // Exception rules only apply to wildcard rules, so only try it if we matched a wildcard.
         if (wildcardMatch == null) {
             return null
@@ -4,6 +4,7 @@
 
 package mozilla.components.lib.publicsuffixlist.ext
 
+import mozilla.components.lib.publicsuffixlist.DomainLabels
 import kotlin.experimental.and
 
 private const val BITMASK = 0xff.toByte()
@@ -15,7 +16,7 @@ private const val BITMASK = 0xff.toByte()
  * https://github.com/square/okhttp/blob/master/okhttp/src/main/java/okhttp3/internal/publicsuffix/PublicSuffixDatabase.java
  */
 @Suppress("ComplexMethod", "NestedBlockDepth")
-internal fun ByteArray.binarySearch(labels: List<ByteArray>, labelIndex: Int): String? {
+internal fun ByteArray.binarySearch(labels: DomainLabels, labelIndex: Int): String? {
     var low = 0
     var high = size
     var match: String? = null
@@ -38,7 +39,7 @@ internal fun ByteArray.binarySearch(labels: List<ByteArray>, labelIndex: Int): S
                 expectDot = false
                 '.'.code.toByte()
             } else {
-                labels[currentLabelIndex][currentLabelByteIndex] and BITMASK
+                labels.byteAt(currentLabelIndex, currentLabelByteIndex) and BITMASK
             }
 
             val byte1 = this[start + publicSuffixByteIndex] and BITMASK
@@ -58,7 +59,7 @@ internal fun ByteArray.binarySearch(labels: List<ByteArray>, labelIndex: Int): S
                 break
             }
 
-            if (labels[currentLabelIndex].size == currentLabelByteIndex) {
+            if (labels.labelSize(currentLabelIndex) == currentLabelByteIndex) {
                 // We've exhausted our current label. Either there are more labels to compare, in which
                 // case we expect a dot as the next character. Otherwise, we've checked all our labels.
                 if (currentLabelIndex == labels.size - 1) {
@@ -78,9 +79,9 @@ internal fun ByteArray.binarySearch(labels: List<ByteArray>, labelIndex: Int): S
         } else {
             // We found a match, but are the lengths equal?
             val publicSuffixBytesLeft = publicSuffixLength - publicSuffixByteIndex
-            var labelBytesLeft = labels[currentLabelIndex].size - currentLabelByteIndex
+            var labelBytesLeft = labels.labelSize(currentLabelIndex) - currentLabelByteIndex
             for (i in currentLabelIndex + 1 until labels.size) {
-                labelBytesLeft += labels[i].size
+                labelBytesLeft += labels.labelSize(i)
             }
 
             if (labelBytesLeft < publicSuffixBytesLeft) {
@@ -2,6 +2,9 @@ package com.kunzisoft.encrypt
 
 import android.util.Log
 import com.kunzisoft.encrypt.aes.AESProvider
+import org.bouncycastle.crypto.engines.ChaCha7539Engine
+import org.bouncycastle.crypto.params.KeyParameter
+import org.bouncycastle.crypto.params.ParametersWithIV
 import org.bouncycastle.jce.provider.BouncyCastleProvider
 import java.security.InvalidAlgorithmParameterException
 import java.security.InvalidKeyException
@@ -54,4 +57,15 @@ object CipherFactory {
         cipher.init(opmode, SecretKeySpec(key, "ChaCha7539"), IvParameterSpec(iv))
         return cipher
     }
+
+    /**
+     * ChaCha20 stream cipher with a 32 bytes [key] and a 12 bytes [iv],
+     * the same cipher is used to encrypt and decrypt, and can seek in the key stream
+     */
+    @Throws(IllegalArgumentException::class)
+    fun getChacha20Stream(key: ByteArray, iv: ByteArray): StreamCipher {
+        val cipher = ChaCha7539Engine()
+        cipher.init(true, ParametersWithIV(KeyParameter(key), iv))
+        return StreamCipher(cipher)
+    }
 }
\ No newline at end of file
@@ -41,4 +41,11 @@ object NativeLib {
         }
         return loadSuccess
     }
+
+    /**
+     * Number of native threads to use for a task split in [maxThreads], limited to the available cores
+     */
+    fun availableThreads(maxThreads: Int): Int {
+        return maxThreads.coerceAtMost(Runtime.getRuntime().availableProcessors()).coerceAtLeast(1)
+    }
 }
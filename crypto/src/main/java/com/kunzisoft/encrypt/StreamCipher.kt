@@ -2,6 +2,7 @@ package com.kunzisoft.encrypt
 
 import org.bouncycastle.crypto.CipherParameters
 import org.bouncycastle.crypto.DataLengthException
+import org.bouncycastle.crypto.SkippingStreamCipher
 
 /**
  * Stream cipher to process data
@@ -35,4 +36,28 @@ class StreamCipher(private val streamCipher: org.bouncycastle.crypto.StreamCiphe
         streamCipher.processBytes(data, 0, size, out, 0)
         return out
     }
+
+    /**
+     * process [length] bytes of [input] from [inputOffset] putting the result into [output]
+     * at [outputOffset], input and output can be the same array.
+     *
+     * @exception DataLengthException if the output buffer is too small.
+     */
+    @Throws(DataLengthException::class)
+    fun processBytes(input: ByteArray, inputOffset: Int, length: Int,
+                     output: ByteArray, outputOffset: Int) {
+        streamCipher.processBytes(input, inputOffset, length, output, outputOffset)
+    }
+
+    /**
+     * Move the cipher to the byte [position] of the key stream, to read data from any position.
+     *
+     * @exception UnsupportedOperationException if the cipher cannot skip in the key stream.
+     */
+    @Throws(UnsupportedOperationException::class)
+    fun seekTo(position: Long) {
+        val skippingStreamCipher = streamCipher as? SkippingStreamCipher
+            ?: throw UnsupportedOperationException("Stream cipher cannot skip in the key stream")
+        skippingStreamCipher.seekTo(position)
+    }
 }
\ No newline at end of file
@@ -35,7 +35,8 @@ object AESTransformer {
         // Prefer the native final key implementation
         return try {
             NativeLib.init()
-            NativeAESKeyTransformer.nTransformKey(seed, key, rounds!!)
+            NativeAESKeyTransformer.nTransformKey(seed, key, rounds!!,
+                NativeLib.availableThreads(AES_THREADS))
         } catch (exception: Exception) {
             Log.e(AESTransformer::class.java.simpleName, "Unable to perform native AES key transformation", exception)
             // Fall back on the android crypto implementation
@@ -80,4 +81,7 @@ object AESTransformer {
         // Hash the key
         return HashManager.hashSha256(newKey)
     }
+
+    // The native transformation is split in two halves of the key
+    private const val AES_THREADS = 2
 }
\ No newline at end of file
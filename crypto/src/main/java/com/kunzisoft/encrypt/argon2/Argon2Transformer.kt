@@ -1,9 +1,20 @@
 package com.kunzisoft.encrypt.argon2
 
 import com.kunzisoft.encrypt.NativeLib
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 
+/**
+ * Argon2 engine shared by the unlock, the save and the benchmark of the key derivation.
+ * The native memory of a transformation is kept for the next one and released with [releaseMemory].
+ */
 object Argon2Transformer {
 
+    private val transformLock = ReentrantLock()
+    // Release asked during a transformation, done at its end
+    @Volatile
+    private var releaseRequested = false
+
     fun transformKey(type: Argon2Type,
                      password: ByteArray,
                      salt: ByteArray,
@@ -11,6 +22,23 @@ object Argon2Transformer {
                      memory: Long,
                      iterations: Long,
                      version: Int): ByteArray {
+        transformLock.withLock {
+            try {
+                return transform(type, password, salt, parallelism, memory, iterations, version)
+            } finally {
+                if (releaseRequested)
+                    release()
+            }
+        }
+    }
+
+    private fun transform(type: Argon2Type,
+                          password: ByteArray,
+                          salt: ByteArray,
+                          parallelism: Long,
+                          memory: Long,
+                          iterations: Long,
+                          version: Int): ByteArray {
 
         NativeLib.init()
         val argon2Type = when(type) {
@@ -24,10 +52,37 @@ object Argon2Transformer {
                 password,
                 salt,
                 parallelism.toInt(),
+                // Lanes are given by the parallelism, threads are limited to the available cores
+                NativeLib.availableThreads(parallelism.toInt()),
                 memory.toInt(),
                 iterations.toInt(),
                 ByteArray(0),
                 ByteArray(0),
-                version)
+                version,
+                true)
+    }
+
+    /**
+     * Wipe and free the native memory kept between the transformations,
+     * without waiting for a transformation in progress, the memory is then released at its end
+     */
+    fun releaseMemory() {
+        releaseRequested = true
+        // The transformation may have ended before the request
+        if (transformLock.tryLock()) {
+            try {
+                if (releaseRequested)
+                    release()
+            } finally {
+                transformLock.unlock()
+            }
+        }
+    }
+
+    private fun release() {
+        releaseRequested = false
+        if (NativeLib.init()) {
+            NativeArgon2KeyTransformer.nReleaseMemory()
+        }
     }
 }
\ No newline at end of file
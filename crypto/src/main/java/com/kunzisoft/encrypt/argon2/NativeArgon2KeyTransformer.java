@@ -36,6 +36,9 @@ public class NativeArgon2KeyTransformer {
     }
 
     public static native byte[] nTransformKey(int type, byte[] password, byte[] salt, int parallelism,
-                                              int memory, int iterations, byte[] secretKey,
-                                              byte[] associatedData, int version) throws IOException;
+                                              int threads, int memory, int iterations, byte[] secretKey,
+                                              byte[] associatedData, int version,
+                                              boolean reuseMemory) throws IOException;
+
+    public static native void nReleaseMemory();
 }
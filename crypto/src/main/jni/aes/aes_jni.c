@@ -455,7 +455,7 @@ uint32_t generate_key_material(void *arg) {
   return flip;
 }
 
-JNIEXPORT jbyteArray JNICALL Java_com_kunzisoft_encrypt_aes_NativeAESKeyTransformer_nTransformKey(JNIEnv *env, jobject this, jbyteArray seed, jbyteArray key, jlong rounds) {
+JNIEXPORT jbyteArray JNICALL Java_com_kunzisoft_encrypt_aes_NativeAESKeyTransformer_nTransformKey(JNIEnv *env, jobject this, jbyteArray seed, jbyteArray key, jlong rounds, jint threads) {
   master_key mk;
   uint32_t flip;
   pthread_t t1, t2;
@@ -491,25 +491,31 @@ JNIEXPORT jbyteArray JNICALL Java_com_kunzisoft_encrypt_aes_NativeAESKeyTransfor
   (*env)->GetByteArrayRegion(env, key, 0, MASTER_KEY_SIZE, (jbyte *)mk.key1);
 
   // step 2: encrypt the hash "rounds"
-  iret = pthread_create( &t1, NULL, (void*)(uintptr_t)generate_key_material, (void*)&mk );
-  if( iret != 0 ) {
-    (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to launch thread 1"); // FIXME: get a better exception class for this...
-    return NULL;
-  }
-  iret = pthread_create( &t2, NULL, (void*)(uintptr_t)generate_key_material, (void*)&mk );
-  if( iret != 0 ) {
-    (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to launch thread 2"); // FIXME: get a better exception class for this...
-    return NULL;
-  }
-  iret = pthread_join( t1, &vret1 );
-  if( iret != 0 ) {
-    (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to join thread 1"); // FIXME: get a better exception class for this...
-    return NULL;
-  }
-  iret = pthread_join( t2, &vret2 );
-  if( iret != 0 ) {
-    (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to join thread 2"); // FIXME: get a better exception class for this...
-    return NULL;
+  if( threads < 2 ) {
+    // a single core, both halves are encrypted in the calling thread without thread creation
+    vret1 = (void *)(uintptr_t)generate_key_material( (void*)&mk );
+    vret2 = (void *)(uintptr_t)generate_key_material( (void*)&mk );
+  } else {
+    iret = pthread_create( &t1, NULL, (void*)(uintptr_t)generate_key_material, (void*)&mk );
+    if( iret != 0 ) {
+      (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to launch thread 1"); // FIXME: get a better exception class for this...
+      return NULL;
+    }
+    iret = pthread_create( &t2, NULL, (void*)(uintptr_t)generate_key_material, (void*)&mk );
+    if( iret != 0 ) {
+      (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to launch thread 2"); // FIXME: get a better exception class for this...
+      return NULL;
+    }
+    iret = pthread_join( t1, &vret1 );
+    if( iret != 0 ) {
+      (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to join thread 1"); // FIXME: get a better exception class for this...
+      return NULL;
+    }
+    iret = pthread_join( t2, &vret2 );
+    if( iret != 0 ) {
+      (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: failed to join thread 2"); // FIXME: get a better exception class for this...
+      return NULL;
+    }
   }
   if( vret1 == (void *)(-1) || vret2 == (void *)(-1) || vret1 != vret2 ) {
     (*env)->ThrowNew(env, bad_arg, "TransformMasterKey: invalid flip value(s) from completed thread(s)"); // FIXME: get a better exception class for this...
@@ -21,6 +21,8 @@
 #include <stdio.h>
 #include <stdlib.h>
 #include <stdarg.h>
+#include <pthread.h>
+#include <sys/mman.h>
 #include <jni.h>
 
 #include "argon2.h"
@@ -99,10 +101,49 @@ void throwExceptionF(JNIEnv *env, jclass exception, const char *format, ...) {
 
 #define ARGON2_HASHLEN 32
 
+// Memory arena reused between the key derivations, released with nReleaseMemory
+static pthread_mutex_t arena_lock = PTHREAD_MUTEX_INITIALIZER;
+static uint8_t *arena = NULL;
+static size_t arena_size = 0;
+static int arena_locked = 0;
+
+static void release_arena() {
+    if (arena != NULL) {
+        secure_wipe_memory(arena, arena_size);
+        if (arena_locked)
+            munlock(arena, arena_size);
+        free(arena);
+    }
+    arena = NULL;
+    arena_size = 0;
+    arena_locked = 0;
+}
+
+static int allocate_in_arena(uint8_t **memory, size_t bytes_to_allocate) {
+    if (arena == NULL || arena_size < bytes_to_allocate) {
+        release_arena();
+        arena = (uint8_t *) malloc(bytes_to_allocate);
+        if (arena == NULL) {
+            *memory = NULL;
+            return ARGON2_MEMORY_ALLOCATION_ERROR;
+        }
+        arena_size = bytes_to_allocate;
+        // Keep the memory out of the swap when the memlock limit allows it
+        arena_locked = mlock(arena, arena_size) == 0;
+    }
+    *memory = arena;
+    return ARGON2_OK;
+}
+
+static void free_in_arena(uint8_t *memory, size_t bytes_to_allocate) {
+    // Already cleared by Argon2, the arena is kept for the next derivation
+}
+
 JNIEXPORT jbyteArray
 JNICALL Java_com_kunzisoft_encrypt_argon2_NativeArgon2KeyTransformer_nTransformKey(JNIEnv *env,
-   jobject this, jint type, jbyteArray password, jbyteArray salt, jint parallelism, jint memory,
-   jint iterations, jbyteArray secretKey, jbyteArray associatedData, jint version) {
+   jobject this, jint type, jbyteArray password, jbyteArray salt, jint parallelism, jint threads,
+   jint memory, jint iterations, jbyteArray secretKey, jbyteArray associatedData, jint version,
+   jboolean reuseMemory) {
 
     argon2_context context;
     uint8_t *out;
@@ -134,14 +175,19 @@ JNICALL Java_com_kunzisoft_encrypt_argon2_NativeArgon2KeyTransformer_nTransformK
     context.adlen = adLen;
     context.t_cost = (uint32_t) iterations;
     context.m_cost = (uint32_t) memory;
+    // Lanes change the hash, threads only change the number of lanes computed at the same time
     context.lanes = (uint32_t) parallelism;
-    context.threads = (uint32_t) parallelism;
-    context.allocate_cbk = NULL;
-    context.free_cbk = NULL;
+    context.threads = (uint32_t) (threads > 0 && threads < parallelism ? threads : parallelism);
+    context.allocate_cbk = reuseMemory ? allocate_in_arena : NULL;
+    context.free_cbk = reuseMemory ? free_in_arena : NULL;
     context.flags = ARGON2_DEFAULT_FLAGS;
     context.version = (uint32_t) version;
 
+    if (reuseMemory)
+        pthread_mutex_lock(&arena_lock);
     int argonResult = argon2_ctx(&context, (argon2_type) type);
+    if (reuseMemory)
+        pthread_mutex_unlock(&arena_lock);
 
     jbyteArray result;
     if (argonResult != ARGON2_OK) {
@@ -173,3 +219,11 @@ JNICALL Java_com_kunzisoft_encrypt_argon2_NativeArgon2KeyTransformer_nTransformK
 
     return result;
 }
+
+JNIEXPORT void
+JNICALL Java_com_kunzisoft_encrypt_argon2_NativeArgon2KeyTransformer_nReleaseMemory(JNIEnv *env,
+   jobject this) {
+    pthread_mutex_lock(&arena_lock);
+    release_arena();
+    pthread_mutex_unlock(&arena_lock);
+}
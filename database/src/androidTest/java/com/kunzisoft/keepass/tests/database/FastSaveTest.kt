@@ -0,0 +1,97 @@
+package com.kunzisoft.keepass.tests.database
+
+import android.content.Context
+import androidx.test.platform.app.InstrumentationRegistry
+import com.kunzisoft.keepass.database.crypto.kdf.KdfFactory
+import com.kunzisoft.keepass.database.crypto.kdf.KdfParameters
+import com.kunzisoft.keepass.database.element.MasterCredential
+import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
+import com.kunzisoft.keepass.database.file.input.DatabaseInputKDBX
+import com.kunzisoft.keepass.database.file.output.DatabaseOutputKDBX
+import com.kunzisoft.keepass.hardware.HardwareKey
+import junit.framework.TestCase.assertEquals
+import junit.framework.TestCase.assertFalse
+import junit.framework.TestCase.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+class FastSaveTest {
+
+    private val context: Context by lazy {
+        InstrumentationRegistry.getInstrumentation().context
+    }
+
+    private val challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray = { _, _ ->
+        throw IllegalStateException("No hardware key")
+    }
+
+    private fun buildDatabase(): DatabaseKDBX {
+        return DatabaseKDBX(DATABASE_NAME, ROOT_NAME).apply {
+            fastSave = true
+            kdfEngine = KdfFactory.aesKdf
+            numberKeyEncryptionRounds = KEY_ROUNDS
+            val entry = createEntry().apply {
+                title = ENTRY_TITLE
+            }
+            addEntryTo(entry, rootGroup)
+        }
+    }
+
+    private fun save(database: DatabaseKDBX, assignMasterKey: () -> Unit): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        DatabaseOutputKDBX(database).writeDatabase(outputStream, assignMasterKey)
+        return outputStream.toByteArray()
+    }
+
+    private fun load(databaseBytes: ByteArray): DatabaseKDBX {
+        val database = DatabaseKDBX().apply {
+            binaryCache.cacheDirectory = context.cacheDir
+        }
+        DatabaseInputKDBX(database).openDatabase(ByteArrayInputStream(databaseBytes), null) {
+            database.deriveMasterKey(
+                MasterCredential(PASSWORD.toCharArray()),
+                challengeResponseRetriever
+            )
+        }
+        return database
+    }
+
+    @Test
+    fun testFastSavedFilesOpen() {
+        val database = buildDatabase()
+        assertFalse("Transformed key before the first save", database.canReuseTransformedKey())
+        val firstSave = save(database) {
+            database.deriveMasterKey(
+                MasterCredential(PASSWORD.toCharArray()),
+                challengeResponseRetriever
+            )
+        }
+        assertTrue("Transformed key not kept", database.canReuseTransformedKey())
+        // Same credentials, the transformed key of the first save is reused
+        val secondSave = save(database) {
+            database.deriveCompositeKey(challengeResponseRetriever)
+        }
+        assertFalse("Same file saved twice", firstSave.contentEquals(secondSave))
+
+        val firstDatabase = load(firstSave)
+        val secondDatabase = load(secondSave)
+        listOf(firstDatabase, secondDatabase).forEach { reloadedDatabase ->
+            assertEquals(DATABASE_NAME, reloadedDatabase.name)
+            assertEquals(listOf(ENTRY_TITLE),
+                reloadedDatabase.getEntryIndexes().map { it.title })
+        }
+        // Only the master seed and the IVs are regenerated
+        assertTrue("KDF seed changed",
+            KdfParameters.serialize(firstDatabase.kdfParameters!!)
+                .contentEquals(KdfParameters.serialize(secondDatabase.kdfParameters!!)))
+    }
+
+    companion object {
+        private const val DATABASE_NAME = "Fast save"
+        private const val ROOT_NAME = "Root"
+        private const val ENTRY_TITLE = "Entry"
+        private const val PASSWORD = "password"
+        private const val KEY_ROUNDS = 1000L
+    }
+}
@@ -141,6 +141,24 @@ class BinaryDataTest {
                 binaryA.getInputDataStream(binaryCache)))
     }
 
+    @Test
+    fun testReadFromPosition() {
+        val byteArray = ByteArray(100000)
+        Random.nextBytes(byteArray)
+        val binaryA = BinaryFile(fileA)
+        binaryA.getOutputDataStream(binaryCache).use { outputStream ->
+            outputStream.write(byteArray)
+        }
+        val position = 70001
+        assert(streamAreEquals(
+                byteArray.inputStream(position, byteArray.size - position),
+                binaryA.getInputDataStream(binaryCache, position.toLong())))
+        val inputStream = binaryA.getInputDataStream(binaryCache)
+        assertEquals("Skip in binary failed.", 5000L, inputStream.skip(5000))
+        assertEquals("Read after skip failed.", byteArray[5000].toInt() and 0xFF, inputStream.read())
+        inputStream.close()
+    }
+
     private fun streamAreEquals(inputStreamA: InputStream,
                                 inputStreamB: InputStream): Boolean {
         val bufferA = ByteArray(DEFAULT_BUFFER_SIZE)
@@ -53,4 +53,55 @@ object HmacBlock {
         hash.update(key)
         return hash.digest()
     }
+
+    /**
+     * HMAC of the successive blocks of a stream with the same [key],
+     * the digest, the Mac and the buffers are reused for each block.
+     * Not thread safe, a calculator must be used by a single stream.
+     */
+    class BlockCalculator(private val key: ByteArray) {
+
+        private val hash: MessageDigest = try {
+            MessageDigest.getInstance("SHA-512")
+        } catch (e: NoSuchAlgorithmException) {
+            throw RuntimeException(e)
+        }
+        private val hmac: Mac = try {
+            Mac.getInstance("HmacSHA256")
+        } catch (e: NoSuchAlgorithmException) {
+            throw IOException("No HmacAlogirthm")
+        }
+        private val blockIndexBytes = ByteArray(8)
+        private val blockKey = ByteArray(64)
+        private val blockHmac = ByteArray(32)
+
+        /**
+         * Compute the HMAC of a block, the returned array is overwritten by the next call
+         */
+        @Throws(IOException::class)
+        fun compute(blockIndex: Long,
+                    blockSize: ByteArray,
+                    data: ByteArray, offset: Int, length: Int): ByteArray {
+            for (i in 0 until 8) {
+                blockIndexBytes[i] = (blockIndex ushr (8 * i)).toByte()
+            }
+            hash.update(blockIndexBytes)
+            hash.update(key)
+            hash.digest(blockKey, 0, blockKey.size)
+            try {
+                hmac.init(SecretKeySpec(blockKey, "HmacSHA256"))
+            } catch (e: InvalidKeyException) {
+                throw IOException("Invalid Hmac Key")
+            } finally {
+                blockKey.fill(0)
+            }
+            hmac.update(blockIndexBytes)
+            hmac.update(blockSize)
+            if (length > 0) {
+                hmac.update(data, offset, length)
+            }
+            hmac.doFinal(blockHmac, 0)
+            return blockHmac
+        }
+    }
 }
@@ -19,7 +19,10 @@
  */
 package com.kunzisoft.keepass.database.element
 
+import android.os.Build
+import android.system.Os
 import android.util.Log
+import com.kunzisoft.encrypt.argon2.Argon2Transformer
 import com.kunzisoft.keepass.database.crypto.EncryptionAlgorithm
 import com.kunzisoft.keepass.database.crypto.kdf.KdfEngine
 import com.kunzisoft.keepass.database.crypto.kdf.KdfParameters
@@ -33,6 +36,7 @@ import com.kunzisoft.keepass.database.element.icon.IconImageCustom
 import com.kunzisoft.keepass.database.element.icon.IconImageStandard
 import com.kunzisoft.keepass.database.element.icon.IconImageStandard.Companion.NUMBER_STANDARD_ICONS
 import com.kunzisoft.keepass.database.element.icon.IconsManager
+import com.kunzisoft.keepass.database.element.node.Node
 import com.kunzisoft.keepass.database.element.node.NodeHandler
 import com.kunzisoft.keepass.database.element.node.NodeId
 import com.kunzisoft.keepass.database.element.node.NodeIdInt
@@ -55,21 +59,30 @@ import com.kunzisoft.keepass.database.file.output.DatabaseOutputKDBX
 import com.kunzisoft.keepass.database.merge.DatabaseKDBXMerger
 import com.kunzisoft.keepass.database.search.SearchHelper
 import com.kunzisoft.keepass.database.search.SearchParameters
+import com.kunzisoft.keepass.database.search.SearchQuery
 import com.kunzisoft.keepass.hardware.HardwareKey
+import com.kunzisoft.keepass.otp.OtpTokenCache
 import com.kunzisoft.keepass.tasks.ProgressTaskUpdater
 import com.kunzisoft.keepass.utils.SingletonHolder
 import com.kunzisoft.keepass.utils.StringUtil.toFormattedColorInt
 import com.kunzisoft.keepass.utils.StringUtil.toFormattedColorString
-import com.kunzisoft.keepass.utils.readAllBytes
+import com.kunzisoft.keepass.utils.transferTo
 import com.kunzisoft.keepass.utils.readBytes4ToUInt
+import com.kunzisoft.keepass.utils.logDuration
 import java.io.BufferedInputStream
 import java.io.File
 import java.io.FileNotFoundException
+import java.io.FileOutputStream
 import java.io.InputStream
 import java.io.OutputStream
 import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
 import java.util.UUID
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 
 open class Database {
@@ -78,7 +91,27 @@ open class Database {
     private var mDatabaseKDB: DatabaseKDB? = null
     private var mDatabaseKDBX: DatabaseKDBX? = null
 
-    private var mSearchHelper: SearchHelper = SearchHelper()
+    // Single writer for the tree modifications, lookups and saves can read concurrently
+    private val mTreeLock = ReentrantReadWriteLock()
+
+    /**
+     * Build an inverted index of the entries after the loading, to search in a faster way
+     */
+    var searchIndexEnabled = false
+
+    /**
+     * Keep the transformed key between saves to not run the key derivation function each time
+     */
+    var fastSaveEnabled = false
+        set(value) {
+            field = value
+            mDatabaseKDBX?.fastSave = value
+        }
+
+    /**
+     * Open the database before the end of the attachment writes in the cache
+     */
+    var loadAttachmentsInBackgroundEnabled = false
 
     var isReadOnly = false
 
@@ -561,6 +594,7 @@ open class Database {
     private fun setDatabaseKDBX(databaseKDBX: DatabaseKDBX) {
         this.mDatabaseKDB = null
         this.mDatabaseKDBX = databaseKDBX
+        databaseKDBX.fastSave = fastSaveEnabled
     }
 
     fun createData(
@@ -569,6 +603,7 @@ open class Database {
         templateGroupName: String?
     ) {
         setDatabaseKDBX(DatabaseKDBX(databaseName, rootName, templateGroupName))
+        buildSearchIndex()
         // Set Database state
         this.dataModifiedSinceLastLoading = false
     }
@@ -611,6 +646,8 @@ open class Database {
                         val databaseKDBX = DatabaseKDBX().apply {
                             binaryCache.cacheDirectory = cacheDirectory
                             changeDuplicateId = fixDuplicateUUID
+                            fastSave = fastSaveEnabled
+                            loadAttachmentsInBackground = loadAttachmentsInBackgroundEnabled
                         }
                         DatabaseInputKDBX(databaseKDBX).apply {
                             setMethodToCheckIfRAMIsSufficient(isRAMSufficient)
@@ -626,6 +663,7 @@ open class Database {
                     }
             )
             loaded = true
+            buildSearchIndex()
         } catch (e: Exception) {
             Log.e(TAG, "Unable to load the database")
             if (e is DatabaseInputException)
@@ -702,19 +740,26 @@ open class Database {
             )
             loaded = true
 
-            mDatabaseKDBX?.let { currentDatabaseKDBX ->
-                val databaseMerger = DatabaseKDBXMerger(currentDatabaseKDBX).apply {
-                    this.isRAMSufficient = isRAMSufficient
-                }
-                databaseToMerge.mDatabaseKDB?.let { databaseKDBToMerge ->
-                    databaseMerger.merge(databaseKDBToMerge)
-                    this.dataModifiedSinceLastLoading = true
-                }
-                databaseToMerge.mDatabaseKDBX?.let { databaseKDBXToMerge ->
-                    databaseMerger.merge(databaseKDBXToMerge)
-                    this.dataModifiedSinceLastLoading = true
+            // The database to merge is read before blocking the lookups of the tree
+            writeTree {
+                mDatabaseKDBX?.let { currentDatabaseKDBX ->
+                    val databaseMerger = DatabaseKDBXMerger(currentDatabaseKDBX).apply {
+                        this.isRAMSufficient = isRAMSufficient
+                    }
+                    databaseToMerge.mDatabaseKDB?.let { databaseKDBToMerge ->
+                        databaseMerger.merge(databaseKDBToMerge)
+                        this.dataModifiedSinceLastLoading = true
+                    }
+                    databaseToMerge.mDatabaseKDBX?.let { databaseKDBXToMerge ->
+                        databaseMerger.merge(databaseKDBXToMerge)
+                        this.dataModifiedSinceLastLoading = true
+                    }
+                    currentDatabaseKDBX.clearFieldReferences()
+                    currentDatabaseKDBX.clearEntriesCounts()
                 }
             }
+            // Nodes are updated in place by the merge
+            buildSearchIndex()
         } catch (e: Exception) {
             Log.e(TAG, "Unable to merge the database")
             if (e is DatabaseException)
@@ -745,10 +790,13 @@ open class Database {
                                 databaseKDB.copyMasterKeyFrom(thisDatabaseKDB)
                             }
                         }
-                    setDatabaseKDB(databaseKDB)
+                    writeTree { setDatabaseKDB(databaseKDB) }
                 },
                 { databaseInputStream ->
-                    val databaseKDBX = DatabaseKDBX()
+                    val databaseKDBX = DatabaseKDBX().apply {
+                        fastSave = fastSaveEnabled
+                        loadAttachmentsInBackground = loadAttachmentsInBackgroundEnabled
+                    }
                     mDatabaseKDBX?.let {
                         databaseKDBX.binaryCache = it.binaryCache
                     }
@@ -760,10 +808,11 @@ open class Database {
                             }
                         }
                     }
-                    setDatabaseKDBX(databaseKDBX)
+                    writeTree { setDatabaseKDBX(databaseKDBX) }
                 }
             )
             loaded = true
+            buildSearchIndex()
         } catch (e: Exception) {
             Log.e(TAG, "Unable to reload the database")
             if (e is DatabaseException)
@@ -774,6 +823,29 @@ open class Database {
         }
     }
 
+    /**
+     * Fill a new domain index, and a new search index if enabled, in a background thread,
+     * the search checks each entry until the index is ready
+     */
+    private fun buildSearchIndex() {
+        // The tree is not modified while a chunk of entries is indexed,
+        // but the modifications are not blocked during the whole fill
+        val runChunk: (() -> Unit) -> Unit = { chunk -> readTree(chunk) }
+        // Small index always built for the autofill lookups
+        val domainIndexTask = mDatabaseKDB?.createDomainIndex(runChunk)
+            ?: mDatabaseKDBX?.createDomainIndex(runChunk)
+            ?: return
+        val searchIndexTask = if (searchIndexEnabled) {
+            mDatabaseKDB?.createSearchIndex(runChunk)
+                ?: mDatabaseKDBX?.createSearchIndex(runChunk)
+        } else null
+        val indexTask = Runnable {
+            domainIndexTask.run()
+            searchIndexTask?.run()
+        }
+        searchIndexExecutor.execute(indexTask)
+    }
+
     @Throws(Exception::class)
     private fun readDatabaseStream(
         databaseStream: InputStream,
@@ -812,56 +884,24 @@ open class Database {
         }
     }
 
+    val isHardwareKeyProtected: Boolean
+        get() = mDatabaseKDBX?.isHardwareKeyProtected == true
+
     @Throws(DatabaseOutputException::class)
     fun saveData(
         cacheFile: File,
         databaseOutputStream: () -> OutputStream?,
+        databaseFile: File? = null,
         isNewLocation: Boolean,
         masterCredential: MasterCredential?,
-        challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray
+        challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray,
+        progressTaskUpdater: ProgressTaskUpdater? = null
     ) {
         try {
-            // Save in a temp memory to avoid exception
-            cacheFile.outputStream().use { outputStream ->
-                mDatabaseKDB?.let { databaseKDB ->
-                    DatabaseOutputKDB(databaseKDB).apply {
-                        writeDatabase(outputStream) {
-                            if (masterCredential != null) {
-                                databaseKDB.deriveMasterKey(
-                                    masterCredential
-                                )
-                            } else {
-                                // No master key change
-                            }
-                        }
-                    }
-                }
-                ?: mDatabaseKDBX?.let { databaseKDBX ->
-                    DatabaseOutputKDBX(databaseKDBX).apply {
-                        writeDatabase(outputStream) {
-                            if (masterCredential != null) {
-                                // Build new master key from MainCredential
-                                databaseKDBX.deriveMasterKey(
-                                    masterCredential,
-                                    challengeResponseRetriever
-                                )
-                            } else {
-                                // Reuse composite key parts
-                                databaseKDBX.deriveCompositeKey(
-                                    challengeResponseRetriever
-                                )
-                            }
-                        }
-                    }
-                }
-            }
-            // Copy from the cache to the final stream
-            databaseOutputStream.invoke()?.use { outputStream ->
-                cacheFile.inputStream().use { inputStream ->
-                    inputStream.readAllBytes { buffer ->
-                        outputStream.write(buffer)
-                    }
-                }
+            logDuration(TAG, "Database saved") {
+                progressTaskUpdater?.encryptingDatabase()
+                writeFile(cacheFile, databaseOutputStream, databaseFile,
+                    masterCredential, challengeResponseRetriever)
             }
         } catch (e: Exception) {
             Log.e(TAG, "Unable to save database", e)
@@ -881,6 +921,149 @@ open class Database {
         }
     }
 
+    private fun writeFile(
+        cacheFile: File,
+        databaseOutputStream: () -> OutputStream?,
+        databaseFile: File?,
+        masterCredential: MasterCredential?,
+        challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray
+    ) {
+        // Write next to a local database file and replace it atomically
+        val siblingFile = databaseFile?.let { createSiblingFile(it) }
+        if (siblingFile != null) {
+            try {
+                logDuration(TAG, "Database written") {
+                    siblingFile.outputStream().use { outputStream ->
+                        writeData(outputStream, masterCredential, challengeResponseRetriever)
+                    }
+                }
+                // The stream is closed by the writer, the data must be on disk before the rename
+                FileOutputStream(siblingFile, true).use { it.fd.sync() }
+                if (!siblingFile.renameTo(databaseFile)) {
+                    Log.w(TAG, "Unable to rename $siblingFile, copy it in the database stream")
+                    copyData(siblingFile, databaseOutputStream)
+                }
+            } finally {
+                if (siblingFile.exists())
+                    siblingFile.delete()
+            }
+        } else {
+            // Save in a temp memory to avoid exception
+            logDuration(TAG, "Database written in cache") {
+                cacheFile.outputStream().use { outputStream ->
+                    writeData(outputStream, masterCredential, challengeResponseRetriever)
+                }
+            }
+            copyData(cacheFile, databaseOutputStream)
+        }
+    }
+
+    private fun writeData(
+        outputStream: OutputStream,
+        masterCredential: MasterCredential?,
+        challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray
+    ) {
+        writeThenReadTree({
+            // Single walk of the tree for the checks before the save
+            mDatabaseKDBX?.let { databaseKDBX ->
+                logDuration(TAG, "Database checked") {
+                    databaseKDBX.kdbxVersion = databaseKDBX.getMinKdbxVersion()
+                }
+            }
+        }, {
+            // Lookups still allowed, the hardware key may be waiting for the user interface
+            writeDatabase(outputStream, masterCredential, challengeResponseRetriever)
+        })
+    }
+
+    private fun writeDatabase(
+        outputStream: OutputStream,
+        masterCredential: MasterCredential?,
+        challengeResponseRetriever: (HardwareKey, ByteArray?) -> ByteArray
+    ) {
+        mDatabaseKDB?.let { databaseKDB ->
+            DatabaseOutputKDB(databaseKDB).apply {
+                writeDatabase(outputStream) {
+                    if (masterCredential != null) {
+                        databaseKDB.deriveMasterKey(
+                            masterCredential
+                        )
+                    } else {
+                        // No master key change
+                    }
+                }
+            }
+        }
+        ?: mDatabaseKDBX?.let { databaseKDBX ->
+            // New credentials need a new KDF seed
+            if (masterCredential != null) {
+                databaseKDBX.clearTransformedKey()
+            }
+            DatabaseOutputKDBX(databaseKDBX).apply {
+                writeDatabase(outputStream) {
+                    if (masterCredential != null) {
+                        // Build new master key from MainCredential
+                        databaseKDBX.deriveMasterKey(
+                            masterCredential,
+                            challengeResponseRetriever
+                        )
+                    } else {
+                        // Reuse composite key parts
+                        databaseKDBX.deriveCompositeKey(
+                            challengeResponseRetriever
+                        )
+                    }
+                }
+            }
+        }
+    }
+
+    private fun copyData(file: File, databaseOutputStream: () -> OutputStream?) {
+        logDuration(TAG, "Database copied") {
+            databaseOutputStream.invoke()?.use { outputStream ->
+                file.transferTo(outputStream)
+            }
+        }
+    }
+
+    /**
+     * Temp file in the directory of [databaseFile] to be renamed over it, with the same permissions,
+     * or null if the database must be written in place
+     */
+    private fun createSiblingFile(databaseFile: File): File? {
+        return try {
+            val directory = databaseFile.absoluteFile.parentFile ?: return null
+            if (!databaseFile.isFile || !directory.canWrite())
+                return null
+            // The rename would replace the link itself
+            if (isSymbolicLink(databaseFile))
+                return null
+            // The permissions and the owner of the file cannot be kept
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP)
+                return null
+            val databaseFileStat = Os.stat(databaseFile.absolutePath)
+            if (databaseFileStat.st_uid != Os.getuid())
+                return null
+            File.createTempFile(".${databaseFile.name}", ".tmp", directory).also { siblingFile ->
+                try {
+                    Os.chmod(siblingFile.absolutePath, databaseFileStat.st_mode and PERMISSION_BITS)
+                } catch (e: Exception) {
+                    siblingFile.delete()
+                    throw e
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Unable to create a temp file next to $databaseFile", e)
+            null
+        }
+    }
+
+    private fun isSymbolicLink(file: File): Boolean {
+        val directory = file.absoluteFile.parentFile ?: return false
+        val fileInCanonicalDirectory = File(directory.canonicalFile, file.name)
+        return fileInCanonicalDirectory.canonicalFile != fileInCanonicalDirectory.absoluteFile
+    }
+
     fun groupIsInRecycleBin(group: Group): Boolean {
         val groupKDB = group.groupKDB
         val groupKDBX = group.groupKDBX
@@ -905,20 +1088,80 @@ open class Database {
         fromGroup: NodeId<*>? = null,
         max: Int = Integer.MAX_VALUE
     ): Group? {
-        return mSearchHelper.createVirtualGroupWithSearchResult(this,
-            searchParameters, fromGroup, max)
+        return readTree {
+            SearchHelper().createVirtualGroupWithSearchResult(this,
+                searchParameters, fromGroup, max)
+        }
+    }
+
+    /**
+     * Retrieve the entries which may match [searchQuery] with the domain or search index,
+     * or null if no index is available for this query
+     */
+    fun getSearchCandidates(searchQuery: SearchQuery): List<Entry>? {
+        mDatabaseKDB?.let { databaseKDB ->
+            return databaseKDB.getSearchCandidates(searchQuery)?.mapNotNull { entryId ->
+                databaseKDB.getEntryById(entryId)?.let { Entry(it) }
+            }
+        }
+        mDatabaseKDBX?.let { databaseKDBX ->
+            return databaseKDBX.getSearchCandidates(searchQuery)?.mapNotNull { entryId ->
+                databaseKDBX.getEntryById(entryId)?.let { Entry(it) }
+            }
+        }
+        return null
     }
 
     fun createVirtualGroupFromSearchInfo(
         searchParameters: SearchParameters,
         max: Int = Integer.MAX_VALUE
     ): Group? {
-        return mSearchHelper.createVirtualGroupWithSearchResult(
-            database = this,
-            searchParameters = searchParameters,
-            fromGroup = null,
-            max = max
-        )
+        return readTree {
+            SearchHelper().createVirtualGroupWithSearchResult(
+                database = this,
+                searchParameters = searchParameters,
+                fromGroup = null,
+                max = max
+            )
+        }
+    }
+
+    /**
+     * Run [action] while no modification of the tree can be done,
+     * several readers can run at the same time
+     */
+    fun <T> readTree(action: () -> T): T {
+        return mTreeLock.read(action)
+    }
+
+    /**
+     * Run the modification [action] of the tree once the current readers are done,
+     * lookups are blocked until the end of the modification
+     */
+    fun <T> writeTree(action: () -> T): T {
+        return mTreeLock.write(action)
+    }
+
+    /**
+     * Run the [modification] of the tree then [action] without releasing the lock between them,
+     * the lookups are only blocked during the modification
+     */
+    private fun <T> writeThenReadTree(modification: () -> Unit, action: () -> T): T {
+        val readLock = mTreeLock.readLock()
+        val writeLock = mTreeLock.writeLock()
+        writeLock.lock()
+        try {
+            modification()
+            // Downgrade of the lock
+            readLock.lock()
+        } finally {
+            writeLock.unlock()
+        }
+        try {
+            return action()
+        } finally {
+            readLock.unlock()
+        }
     }
 
     val tagPool: Tags
@@ -947,9 +1190,16 @@ open class Database {
     }
 
     fun removeAttachmentIfNotUsed(attachment: Attachment) {
+        removeAttachmentsIfNotUsed(listOf(attachment))
+    }
+
+    /**
+     * Remove the [attachments] not used by an entry, checked in a single walk of the tree
+     */
+    fun removeAttachmentsIfNotUsed(attachments: Collection<Attachment>) {
         // No need in KDB database because unique attachment by entry
         // Don't clear to fix upload multiple times
-        mDatabaseKDBX?.removeUnlinkedAttachment(attachment.binaryData, false)
+        mDatabaseKDBX?.removeUnlinkedAttachments(attachments.map { it.binaryData }, false)
     }
 
     fun removeUnlinkedAttachments() {
@@ -985,6 +1235,10 @@ open class Database {
         clearIndexesAndBinaries(filesDirectory)
         this.mDatabaseKDB?.clearSensitiveData()
         this.mDatabaseKDBX?.clearSensitiveData()
+        // The key derivation memory is not kept once the database is locked
+        Argon2Transformer.releaseMemory()
+        // Nor the OTP tokens and their secrets
+        OtpTokenCache.clear()
         this.mDatabaseKDB = null
         this.mDatabaseKDBX = null
         this.loaded = false
@@ -1176,24 +1430,34 @@ open class Database {
 
     fun deleteGroup(group: Group) {
         dataModifiedSinceLastLoading = true
+        // Nodes are removed after the traversal, to not change the children of a group being walked
+        val nodesToDelete = mutableListOf<Node>()
         group.doForEachChildAndForIt(
                 object : NodeHandler<Entry>() {
                     override fun operate(node: Entry): Boolean {
-                        deleteEntry(node)
+                        nodesToDelete.add(node)
                         return true
                     }
                 },
                 object : NodeHandler<Group>() {
                     override fun operate(node: Group): Boolean {
-                        node.groupKDBX?.id?.let { groupId ->
-                            mDatabaseKDBX?.addDeletedObject(groupId)
-                        }
-                        node.parent?.let {
-                            removeGroupFrom(node, it)
-                        }
+                        nodesToDelete.add(node)
                         return true
                     }
                 })
+        nodesToDelete.forEach { node ->
+            when (node) {
+                is Entry -> deleteEntry(node)
+                is Group -> {
+                    node.groupKDBX?.id?.let { groupId ->
+                        mDatabaseKDBX?.addDeletedObject(groupId)
+                    }
+                    node.parent?.let {
+                        removeGroupFrom(node, it)
+                    }
+                }
+            }
+        }
     }
 
     fun ensureRecycleBinExists(recyclerBinTitle: String) {
@@ -1296,69 +1560,63 @@ open class Database {
      * Remove oldest history for each entry if more than max items or max memory
      */
     fun removeOldestHistoryForEachEntry() {
-        rootGroup?.doForEachChildAndForIt(
+        val attachmentsToRemove = mutableListOf<Attachment>()
+        rootGroup?.doForEachChildWithReusedWrappers(
                 object : NodeHandler<Entry>() {
                     override fun operate(node: Entry): Boolean {
-                        removeOldestEntryHistory(node, attachmentPool)
+                        attachmentsToRemove.addAll(removeOldestHistory(node, attachmentPool))
                         return true
                     }
                 },
-                object : NodeHandler<Group>() {
-                    override fun operate(node: Group): Boolean {
-                        return true
-                    }
-                }
+                null
         )
+        removeAttachmentsIfNotUsed(attachmentsToRemove)
     }
 
     /**
      * Remove oldest history if more than max items or max memory
      */
     fun removeOldestEntryHistory(entry: Entry, attachmentPool: AttachmentPool) {
-        mDatabaseKDBX?.let {
-            val maxItems = historyMaxItems
-            if (maxItems >= 0) {
-                while (entry.getHistory().size > maxItems) {
-                    removeOldestEntryHistory(entry)
-                }
-            }
-
-            val maxSize = historyMaxSize
-            if (maxSize >= 0) {
-                while (true) {
-                    var historySize: Long = 0
-                    for (entryHistory in entry.getHistory()) {
-                        historySize += entryHistory.getSize(attachmentPool)
-                    }
-                    if (historySize > maxSize) {
-                        removeOldestEntryHistory(entry)
-                    } else {
-                        break
-                    }
-                }
-            }
-        }
+        removeAttachmentsIfNotUsed(removeOldestHistory(entry, attachmentPool))
     }
 
-    private fun removeOldestEntryHistory(entry: Entry) {
-        entry.removeOldestEntryFromHistory()?.let {
-            it.getAttachments(attachmentPool, false).forEach { attachmentToRemove ->
-                removeAttachmentIfNotUsed(attachmentToRemove)
+    /**
+     * Remove oldest history of [entry] and return the attachments of the removed entries
+     */
+    private fun removeOldestHistory(entry: Entry, attachmentPool: AttachmentPool): List<Attachment> {
+        val attachments = mutableListOf<Attachment>()
+        mDatabaseKDBX?.let {
+            entry.removeOldestEntriesFromHistory(
+                historyMaxItems,
+                historyMaxSize,
+                attachmentPool
+            ).forEach { entryHistory ->
+                attachments.addAll(entryHistory.getAttachments(attachmentPool, false))
             }
         }
+        return attachments
     }
 
     fun removeEntryHistory(entry: Entry, entryHistoryPosition: Int) {
         entry.removeEntryFromHistory(entryHistoryPosition)?.let {
-            it.getAttachments(attachmentPool, false).forEach { attachmentToRemove ->
-                removeAttachmentIfNotUsed(attachmentToRemove)
-            }
+            removeAttachmentsIfNotUsed(it.getAttachments(attachmentPool, false))
         }
     }
 
     companion object : SingletonHolder<Database>(::Database) {
         private val TAG = Database::class.java.name
 
+        // rwxrwxrwx, kept for the file replacing the database
+        private const val PERMISSION_BITS = 511
+
         val DEFAULT_PASSWORD_ENCODING: Charset = StandardCharsets.UTF_8
+
+        // Single background thread for the index fills, a fill replaced by a new one stops early
+        private val searchIndexExecutor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "SearchIndex").apply {
+                priority = Thread.MIN_PRIORITY
+                isDaemon = true
+            }
+        }
     }
 }
@@ -90,6 +90,19 @@ class Entry : Node, EntryVersionedInterface<Group> {
         entryKDBX = parcel.readParcelableCompat()
     }
 
+    /**
+     * Point this wrapper to another database entry, to reuse it during a traversal
+     */
+    internal fun rebind(entry: EntryKDB) {
+        this.entryKDBX = null
+        this.entryKDB = entry
+    }
+
+    internal fun rebind(entry: EntryKDBX) {
+        this.entryKDB = null
+        this.entryKDBX = entry
+    }
+
     override fun describeContents(): Int {
         return 0
     }
@@ -453,6 +466,13 @@ class Entry : Node, EntryVersionedInterface<Group> {
         return null
     }
 
+    fun removeOldestEntriesFromHistory(maxItems: Int,
+                                       maxSize: Long,
+                                       attachmentPool: AttachmentPool): List<Entry> {
+        return entryKDBX?.removeOldestEntriesFromHistory(maxItems, maxSize, attachmentPool)
+            ?.map { Entry(it) } ?: listOf()
+    }
+
     fun clearHistory() {
         entryKDBX?.clearHistory()
     }
@@ -22,11 +22,14 @@ package com.kunzisoft.keepass.database.element
 import android.os.Parcel
 import android.os.Parcelable
 import com.kunzisoft.keepass.database.element.database.DatabaseVersioned
+import com.kunzisoft.keepass.database.element.entry.EntryKDB
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
 import com.kunzisoft.keepass.database.element.group.GroupKDB
 import com.kunzisoft.keepass.database.element.group.GroupKDBX
 import com.kunzisoft.keepass.database.element.group.GroupVersionedInterface
 import com.kunzisoft.keepass.database.element.icon.IconImage
 import com.kunzisoft.keepass.database.element.node.Node
+import com.kunzisoft.keepass.database.element.node.NodeHandler
 import com.kunzisoft.keepass.database.element.node.NodeId
 import com.kunzisoft.keepass.database.element.node.NodeIdInt
 import com.kunzisoft.keepass.database.element.node.NodeIdUUID
@@ -90,6 +93,21 @@ class Group : Node, GroupVersionedInterface<Group, Entry> {
         isVirtual = parcel.readBooleanCompat()
     }
 
+    /**
+     * Point this wrapper to another database group, to reuse it during a traversal
+     */
+    private fun rebind(group: GroupKDB) {
+        this.groupKDBX = null
+        this.groupKDB = group
+        this.isVirtual = false
+    }
+
+    private fun rebind(group: GroupKDBX) {
+        this.groupKDB = null
+        this.groupKDBX = group
+        this.isVirtual = false
+    }
+
     companion object CREATOR : Parcelable.Creator<Group> {
         override fun createFromParcel(parcel: Parcel): Group {
             return Group(parcel)
@@ -282,6 +300,77 @@ class Group : Node, GroupVersionedInterface<Group, Entry> {
         listOf()
     }
 
+    /**
+     * Walk the database nodes directly, a wrapper is only created for a node given to a handler.
+     * The children of a group must not be added or removed during the traversal.
+     */
+    override fun doForEachChild(entryHandler: NodeHandler<Entry>?,
+                                groupHandler: NodeHandler<Group>?,
+                                stopIterationWhenGroupHandlerOperateFalse: Boolean): Boolean {
+        return doForEachChildNode(entryHandler, groupHandler,
+            stopIterationWhenGroupHandlerOperateFalse, false)
+    }
+
+    /**
+     * Same traversal as [doForEachChild] but the handlers always receive the same [Entry] and [Group]
+     * wrappers pointing to the current node, a handler must not keep the wrapper after its call.
+     */
+    fun doForEachChildWithReusedWrappers(entryHandler: NodeHandler<Entry>?,
+                                         groupHandler: NodeHandler<Group>?,
+                                         stopIterationWhenGroupHandlerOperateFalse: Boolean = true): Boolean {
+        return doForEachChildNode(entryHandler, groupHandler,
+            stopIterationWhenGroupHandlerOperateFalse, true)
+    }
+
+    private fun doForEachChildNode(entryHandler: NodeHandler<Entry>?,
+                                   groupHandler: NodeHandler<Group>?,
+                                   stopIterationWhenGroupHandlerOperateFalse: Boolean,
+                                   reuseWrappers: Boolean): Boolean {
+        groupKDB?.let { group ->
+            return group.doForEachChild(
+                entryHandler?.let {
+                    WrapperHandler<EntryKDB, Entry>(it, reuseWrappers,
+                        { node -> Entry(node) }, { wrapper, node -> wrapper.rebind(node) })
+                },
+                groupHandler?.let {
+                    WrapperHandler<GroupKDB, Group>(it, reuseWrappers,
+                        { node -> Group(node) }, { wrapper, node -> wrapper.rebind(node) })
+                },
+                stopIterationWhenGroupHandlerOperateFalse
+            )
+        }
+        groupKDBX?.let { group ->
+            return group.doForEachChild(
+                entryHandler?.let {
+                    WrapperHandler<EntryKDBX, Entry>(it, reuseWrappers,
+                        { node -> Entry(node) }, { wrapper, node -> wrapper.rebind(node) })
+                },
+                groupHandler?.let {
+                    WrapperHandler<GroupKDBX, Group>(it, reuseWrappers,
+                        { node -> Group(node) }, { wrapper, node -> wrapper.rebind(node) })
+                },
+                stopIterationWhenGroupHandlerOperateFalse
+            )
+        }
+        return true
+    }
+
+    /**
+     * Give the wrapper of a database node to [handler], the same wrapper is rebound if [reuseWrapper]
+     */
+    private class WrapperHandler<N, W>(private val handler: NodeHandler<W>,
+                                       private val reuseWrapper: Boolean,
+                                       private val create: (N) -> W,
+                                       private val rebind: (W, N) -> Unit) : NodeHandler<N>() {
+        private var wrapper: W? = null
+
+        override fun operate(node: N): Boolean {
+            val nodeWrapper = wrapper?.also { rebind(it, node) }
+                ?: create(node).also { if (reuseWrapper) wrapper = it }
+            return handler.operate(nodeWrapper)
+        }
+    }
+
     fun getChildEntriesInfo(database: Database): List<EntryInfo> {
         val entriesInfo = mutableListOf<EntryInfo>()
         getChildEntries().forEach { entry ->
@@ -306,7 +395,30 @@ class Group : Node, GroupVersionedInterface<Group, Entry> {
         filter: (Node) -> Boolean = { true }
     ): Int {
         numberOfChildEntries = getChildEntries().filter(filter).size
-        recursiveNumberOfChildEntries = getNumberOfChildEntriesInGroups(filter)
+        if (recursive)
+            recursiveNumberOfChildEntries = getNumberOfChildEntriesInGroups(filter)
+        return if (recursive) recursiveNumberOfChildEntries else numberOfChildEntries
+    }
+
+    /**
+     * Number of entries without the hidden entries, the expired nodes if not [showExpired]
+     * and the [excludedGroup] tree. The recursive number is kept by the database groups
+     * and only computed again for the groups changed since the last call.
+     */
+    fun getNumberOfChildEntries(
+        recursive: Boolean,
+        showExpired: Boolean,
+        excludedGroup: Group? = null
+    ): Int {
+        numberOfChildEntries = groupKDB?.getNumberOfEntries(showExpired)
+            ?: groupKDBX?.getNumberOfEntries(showExpired)
+            ?: 0
+        if (recursive) {
+            recursiveNumberOfChildEntries =
+                groupKDB?.getRecursiveNumberOfEntries(showExpired, excludedGroup?.groupKDB)
+                    ?: groupKDBX?.getRecursiveNumberOfEntries(showExpired, excludedGroup?.groupKDBX)
+                    ?: 0
+        }
         return if (recursive) recursiveNumberOfChildEntries else numberOfChildEntries
     }
 
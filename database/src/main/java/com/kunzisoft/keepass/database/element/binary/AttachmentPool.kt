@@ -35,10 +35,19 @@ class AttachmentPool : BinaryPool<Int>() {
      * To register a binary with a ref corresponding to an ordered index
      */
     fun getBinaryIndexFromKey(key: Int): Int? {
-        val index = orderedBinariesWithoutDuplication().indexOfFirst { it.keys.contains(key) }
-        return if (index < 0)
-            null
-        else
-            index
+        return getBinaryIndexesByKey()[key]
+    }
+
+    /**
+     * Ordered index of each key, to retrieve the index of many binaries with a single deduplication
+     */
+    fun getBinaryIndexesByKey(): Map<Int, Int> {
+        val indexes = HashMap<Int, Int>()
+        orderedBinariesWithoutDuplication().forEachIndexed { index, keyBinary ->
+            keyBinary.keys.forEach { key ->
+                indexes[key] = index
+            }
+        }
+        return indexes
     }
 }
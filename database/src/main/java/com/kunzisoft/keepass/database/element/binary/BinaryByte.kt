@@ -21,13 +21,14 @@ package com.kunzisoft.keepass.database.element.binary
 
 import android.os.Parcel
 import android.os.Parcelable
-import android.util.Base64InputStream
-import android.util.Base64OutputStream
 import com.kunzisoft.keepass.database.element.binary.BinaryCache.Companion.UNKNOWN
 import com.kunzisoft.keepass.utils.readAllBytes
 import java.io.*
 import java.util.zip.GZIPOutputStream
 
+/**
+ * Binary stored as raw bytes in the [BinaryCache] memory
+ */
 class BinaryByte : BinaryData {
 
     private var mDataByteId: String
@@ -57,14 +58,18 @@ class BinaryByte : BinaryData {
         dest.writeString(mDataByteId)
     }
 
+    override val cacheId: String
+        get() = mDataByteId
+
     @Throws(IOException::class)
     override fun getInputDataStream(binaryCache: BinaryCache): InputStream {
-        return Base64InputStream(ByteArrayInputStream(getByteArray(binaryCache)), BASE64_FLAG)
+        binaryCache.awaitWrite(cacheId)
+        return ByteArrayInputStream(getByteArray(binaryCache))
     }
 
     @Throws(IOException::class)
     override fun getOutputDataStream(binaryCache: BinaryCache): OutputStream {
-        return BinaryCountingOutputStream(Base64OutputStream(ByteOutputStream(binaryCache), BASE64_FLAG))
+        return BinaryCountingOutputStream(ByteOutputStream(binaryCache))
     }
 
     @Throws(IOException::class)
@@ -97,6 +102,7 @@ class BinaryByte : BinaryData {
 
     @Throws(IOException::class)
     override fun clear(binaryCache: BinaryCache) {
+        binaryCache.cancelWrite(cacheId)
         binaryCache.removeByteArray(mDataByteId)
     }
 
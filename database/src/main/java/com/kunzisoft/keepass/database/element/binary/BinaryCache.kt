@@ -1,6 +1,8 @@
 package com.kunzisoft.keepass.database.element.binary
 
 import java.io.File
+import java.io.InterruptedIOException
+import java.util.concurrent.CountDownLatch
 
 class BinaryCache {
 
@@ -23,13 +25,19 @@ class BinaryCache {
             BinaryByte(binaryId, compression, protection)
         } else {
             val fileInCache = File(cacheDir, binaryId)
+            // Remove a temp file of the legacy format, it cannot be decrypted with the current key
+            if (BinaryFile.isLegacyFile(fileInCache)) {
+                fileInCache.delete()
+            }
             BinaryFile(fileInCache, compression, protection)
         }
     }
 
     // Similar to file storage but much faster TODO SparseArray
+    // Synchronized, binaries can be written by background threads
     private val byteArrayList = mutableMapOf<String, ByteArray>()
 
+    @Synchronized
     fun getByteArray(key: String): KeyByteArray {
         if (key == UNKNOWN) {
             return voidBinary
@@ -42,6 +50,7 @@ class BinaryCache {
         return KeyByteArray(key, byteArrayList[key]!!)
     }
 
+    @Synchronized
     fun setByteArray(key: String, data: ByteArray): KeyByteArray {
         if (key == UNKNOWN) {
             return voidBinary
@@ -50,14 +59,81 @@ class BinaryCache {
         return KeyByteArray(key, data)
     }
 
+    @Synchronized
     fun removeByteArray(key: String?) {
         key?.let {
             byteArrayList.remove(it)
         }
     }
 
+    @Synchronized
     fun clear() {
         byteArrayList.clear()
+        pendingWrites.values.forEach { it.countDown() }
+        pendingWrites.clear()
+    }
+
+    // Binaries still written in background, by cache id
+    private val pendingWrites = HashMap<String, CountDownLatch>()
+
+    /**
+     * Mark the binary [cacheId] as written in background, reading it waits for [endWrite],
+     * the returned latch is released at the end of the write
+     */
+    @Synchronized
+    fun startWrite(cacheId: String): CountDownLatch {
+        return CountDownLatch(1).also { pendingWrites[cacheId] = it }
+    }
+
+    /**
+     * Release the readers waiting for the binary [cacheId],
+     * return false if the write was cancelled meanwhile and the written data must be removed
+     */
+    fun endWrite(cacheId: String): Boolean {
+        val latch = synchronized(this) {
+            pendingWrites.remove(cacheId)
+        } ?: return false
+        latch.countDown()
+        return true
+    }
+
+    /**
+     * Cancel the background write of the binary [cacheId], when the binary is removed
+     */
+    fun cancelWrite(cacheId: String) {
+        synchronized(this) {
+            pendingWrites.remove(cacheId)
+        }?.countDown()
+    }
+
+    /**
+     * Wait until the binary [cacheId] is completely written
+     */
+    @Throws(InterruptedIOException::class)
+    fun awaitWrite(cacheId: String) {
+        val latch = synchronized(this) {
+            pendingWrites[cacheId]
+        } ?: return
+        try {
+            latch.await()
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException("Interrupted while waiting for binary $cacheId")
+        }
+    }
+
+    /**
+     * Wait until all the binaries are completely written, before reading them all
+     */
+    @Throws(InterruptedIOException::class)
+    fun awaitAllWrites() {
+        val latches = synchronized(this) {
+            pendingWrites.values.toList()
+        }
+        try {
+            latches.forEach { it.await() }
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException("Interrupted while waiting for binaries")
+        }
     }
 
     companion object {
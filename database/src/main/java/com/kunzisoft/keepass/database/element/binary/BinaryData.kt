@@ -24,14 +24,17 @@ import android.content.Context
 import android.os.Parcel
 import android.os.Parcelable
 import android.util.Base64
+import com.kunzisoft.encrypt.HashManager
 import com.kunzisoft.keepass.utils.readBooleanCompat
 import com.kunzisoft.keepass.utils.writeBooleanCompat
 import org.apache.commons.io.output.CountingOutputStream
 import java.io.IOException
 import java.io.InputStream
+import java.io.InterruptedIOException
 import java.io.OutputStream
 import java.nio.ByteBuffer
 import java.security.MessageDigest
+import java.util.concurrent.CountDownLatch
 import java.util.zip.GZIPInputStream
 import java.util.zip.GZIPOutputStream
 
@@ -42,8 +45,29 @@ abstract class BinaryData : Parcelable {
     var isProtected: Boolean = false
         protected set
     var isCorrupted: Boolean = false
+    @Volatile
     private var mLength: Long = 0
+    @Volatile
     private var mBinaryHash = 0
+    // SHA-256 of the stored bytes, empty if not yet written
+    @Volatile
+    private var mBinaryDigest = ByteArray(0)
+    // Size of the data once decompressed, only computed once until the binary is written again
+    @Volatile
+    private var mDecompressedLength = -1L
+
+    /**
+     * Released at the end of a write in background,
+     * the size and the digest are only known once the write is finished
+     */
+    @Volatile
+    var pendingWrite: CountDownLatch? = null
+
+    /**
+     * Called when the stored content starts or ends to be written, possibly from a background thread
+     */
+    @Volatile
+    var contentListener: ((BinaryData) -> Unit)? = null
 
     protected constructor(compressed: Boolean = false, protected: Boolean = false) {
         this.isCompressed = compressed
@@ -58,6 +82,7 @@ abstract class BinaryData : Parcelable {
         isCorrupted = parcel.readBooleanCompat()
         mLength = parcel.readLong()
         mBinaryHash = parcel.readInt()
+        mBinaryDigest = parcel.createByteArray() ?: ByteArray(0)
     }
 
     override fun writeToParcel(dest: Parcel, flags: Int) {
@@ -66,11 +91,33 @@ abstract class BinaryData : Parcelable {
         dest.writeBooleanCompat(isCorrupted)
         dest.writeLong(mLength)
         dest.writeInt(mBinaryHash)
+        dest.writeByteArray(mBinaryDigest)
     }
 
+    /**
+     * Id of the binary in the [BinaryCache]
+     */
+    abstract val cacheId: String
+
     @Throws(IOException::class)
     abstract fun getInputDataStream(binaryCache: BinaryCache): InputStream
 
+    /**
+     * Retrieve the data from the byte [position], skip without reading the previous bytes if the storage allows it
+     */
+    @Throws(IOException::class)
+    open fun getInputDataStream(binaryCache: BinaryCache, position: Long): InputStream {
+        val inputStream = getInputDataStream(binaryCache)
+        var remaining = position
+        while (remaining > 0) {
+            val skipped = inputStream.skip(remaining)
+            if (skipped <= 0)
+                break
+            remaining -= skipped
+        }
+        return inputStream
+    }
+
     @Throws(IOException::class)
     abstract fun getOutputDataStream(binaryCache: BinaryCache): OutputStream
 
@@ -98,21 +145,70 @@ abstract class BinaryData : Parcelable {
     @Throws(IOException::class)
     abstract fun decompress(binaryCache: BinaryCache)
 
+    @Throws(InterruptedIOException::class)
+    private fun awaitPendingWrite() {
+        val latch = pendingWrite ?: return
+        try {
+            latch.await()
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException("Interrupted while waiting for binary $cacheId")
+        }
+    }
+
     @Throws(IOException::class)
     fun dataExists(): Boolean {
+        awaitPendingWrite()
         return mLength > 0
     }
 
     @Throws(IOException::class)
     fun getSize(): Long {
+        awaitPendingWrite()
         return mLength
     }
 
+    /**
+     * Size of the data without the compression, the stored data is read only the first time,
+     * a binary not written again since the last save gives its size without any read
+     */
+    @Throws(IOException::class)
+    fun getDecompressedSize(binaryCache: BinaryCache): Long {
+        if (!isCompressed)
+            return getSize()
+        if (mDecompressedLength < 0) {
+            var length = 0L
+            getUnGzipInputDataStream(binaryCache).use { inputStream ->
+                val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+                var read = inputStream.read(buffer)
+                while (read >= 0) {
+                    length += read
+                    read = inputStream.read(buffer)
+                }
+            }
+            mDecompressedLength = length
+        }
+        return mDecompressedLength
+    }
+
     @Throws(IOException::class)
     fun binaryHash(): Int {
+        awaitPendingWrite()
         return mBinaryHash
     }
 
+    /**
+     * Key of the stored content, equal for binaries with the same stored bytes,
+     * or null if the binary is empty
+     */
+    @Throws(IOException::class)
+    fun contentKey(): ByteBuffer? {
+        awaitPendingWrite()
+        return if (mLength > 0 && mBinaryDigest.isNotEmpty())
+            ByteBuffer.wrap(mBinaryDigest).asReadOnlyBuffer()
+        else
+            null
+    }
+
     @Throws(IOException::class)
     abstract fun clear(binaryCache: BinaryCache)
 
@@ -149,8 +245,11 @@ abstract class BinaryData : Parcelable {
         private val mMessageDigest: MessageDigest
         init {
             mLength = 0
-            mMessageDigest = MessageDigest.getInstance("MD5")
+            mDecompressedLength = -1L
+            mMessageDigest = HashManager.getHash256()
             mBinaryHash = 0
+            mBinaryDigest = ByteArray(0)
+            contentListener?.invoke(this@BinaryData)
         }
 
         override fun beforeWrite(n: Int) {
@@ -177,7 +276,9 @@ abstract class BinaryData : Parcelable {
             super.close()
             mLength = byteCount
             val bytes = mMessageDigest.digest()
+            mBinaryDigest = bytes
             mBinaryHash = ByteBuffer.wrap(bytes).int
+            contentListener?.invoke(this@BinaryData)
         }
     }
 
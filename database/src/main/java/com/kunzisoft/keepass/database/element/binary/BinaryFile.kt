@@ -21,26 +21,22 @@ package com.kunzisoft.keepass.database.element.binary
 
 import android.os.Parcel
 import android.os.Parcelable
-import android.util.Base64InputStream
-import android.util.Base64OutputStream
+import com.kunzisoft.encrypt.CipherFactory
+import com.kunzisoft.encrypt.StreamCipher
 import com.kunzisoft.keepass.utils.readAllBytes
 import java.io.*
+import java.security.SecureRandom
 import java.util.zip.GZIPOutputStream
-import javax.crypto.Cipher
-import javax.crypto.CipherInputStream
-import javax.crypto.CipherOutputStream
-import javax.crypto.spec.IvParameterSpec
 
+/**
+ * Binary stored in a temp file, encrypted with the ChaCha20 stream cipher of the [BinaryCache] key.
+ * The file begins with a header containing a random IV, followed by the raw encrypted bytes,
+ * so the data can be read from any position.
+ */
 class BinaryFile : BinaryData {
 
     private var mDataFile: File? = null
 
-    // Cipher to encrypt temp file
-    @Transient
-    private var cipherEncryption: Cipher = Cipher.getInstance(LoadedKey.BINARY_CIPHER)
-    @Transient
-    private var cipherDecryption: Cipher = Cipher.getInstance(LoadedKey.BINARY_CIPHER)
-
     constructor(dataFile: File,
                 compressed: Boolean = false,
                 protected: Boolean = false) : super(compressed, protected) {
@@ -58,9 +54,19 @@ class BinaryFile : BinaryData {
         dest.writeString(mDataFile?.absolutePath)
     }
 
+    override val cacheId: String
+        get() = mDataFile?.name ?: BinaryCache.UNKNOWN
+
     @Throws(IOException::class)
     override fun getInputDataStream(binaryCache: BinaryCache): InputStream {
-        return buildInputStream(mDataFile, binaryCache)
+        binaryCache.awaitWrite(cacheId)
+        return buildInputStream(mDataFile, binaryCache, 0)
+    }
+
+    @Throws(IOException::class)
+    override fun getInputDataStream(binaryCache: BinaryCache, position: Long): InputStream {
+        binaryCache.awaitWrite(cacheId)
+        return buildInputStream(mDataFile, binaryCache, position)
     }
 
     @Throws(IOException::class)
@@ -69,12 +75,20 @@ class BinaryFile : BinaryData {
     }
 
     @Throws(IOException::class)
-    private fun buildInputStream(file: File?, binaryCache: BinaryCache): InputStream {
-        val cipherKey = binaryCache.loadedCipherKey
+    private fun buildInputStream(file: File?, binaryCache: BinaryCache, position: Long): InputStream {
         return when {
             file != null && file.length() > 0 -> {
-                cipherDecryption.init(Cipher.DECRYPT_MODE, cipherKey.key, IvParameterSpec(cipherKey.iv))
-                Base64InputStream(CipherInputStream(FileInputStream(file), cipherDecryption), BASE64_FLAG)
+                val fileInputStream = FileInputStream(file)
+                try {
+                    val iv = readHeader(fileInputStream)
+                        ?: throw IOException("Unknown format of temp file " + file.absolutePath)
+                    val streamCipher = CipherFactory.getChacha20Stream(
+                        binaryCache.loadedCipherKey.key.encoded, iv)
+                    StreamCipherInputStream(fileInputStream, streamCipher, position)
+                } catch (e: Exception) {
+                    fileInputStream.close()
+                    throw e as? IOException ?: IOException("Unable to read temp file", e)
+                }
             }
             else -> ByteArrayInputStream(ByteArray(0))
         }
@@ -82,11 +96,17 @@ class BinaryFile : BinaryData {
 
     @Throws(IOException::class)
     private fun buildOutputStream(file: File?, binaryCache: BinaryCache): OutputStream {
-        val cipherKey = binaryCache.loadedCipherKey
         return when {
             file != null -> {
-                cipherEncryption.init(Cipher.ENCRYPT_MODE, cipherKey.key, IvParameterSpec(cipherKey.iv))
-                BinaryCountingOutputStream(Base64OutputStream(CipherOutputStream(FileOutputStream(file), cipherEncryption), BASE64_FLAG))
+                // New IV for each write, the key stream is never reused
+                val iv = ByteArray(LoadedKey.BINARY_CIPHER_IV_LENGTH)
+                SecureRandom().nextBytes(iv)
+                val streamCipher = CipherFactory.getChacha20Stream(
+                    binaryCache.loadedCipherKey.key.encoded, iv)
+                val fileOutputStream = FileOutputStream(file)
+                fileOutputStream.write(HEADER_MAGIC)
+                fileOutputStream.write(iv)
+                BinaryCountingOutputStream(StreamCipherOutputStream(fileOutputStream, streamCipher))
             }
             else -> throw IOException("Unable to write in an unknown file")
         }
@@ -142,6 +162,7 @@ class BinaryFile : BinaryData {
     }
 
     override fun clear(binaryCache: BinaryCache) {
+        binaryCache.cancelWrite(cacheId)
         if (mDataFile != null && !mDataFile!!.delete())
             throw IOException("Unable to delete temp file " + mDataFile!!.absolutePath)
     }
@@ -164,9 +185,129 @@ class BinaryFile : BinaryData {
         return result
     }
 
+    /**
+     * Decrypt the file stream, skip by moving the file position and the key stream
+     */
+    private class StreamCipherInputStream(private val fileInputStream: FileInputStream,
+                                          private val streamCipher: StreamCipher,
+                                          position: Long) : InputStream() {
+
+        private val dataLength = fileInputStream.channel.size() - HEADER_LENGTH
+        private var mPosition = 0L
+
+        init {
+            seekTo(position)
+        }
+
+        private fun seekTo(position: Long) {
+            mPosition = position.coerceIn(0, dataLength)
+            fileInputStream.channel.position(HEADER_LENGTH + mPosition)
+            streamCipher.seekTo(mPosition)
+        }
+
+        override fun read(): Int {
+            val byte = ByteArray(1)
+            return if (read(byte, 0, 1) <= 0) -1 else byte[0].toInt() and 0xFF
+        }
+
+        override fun read(b: ByteArray, off: Int, len: Int): Int {
+            val read = fileInputStream.read(b, off, len)
+            if (read > 0) {
+                streamCipher.processBytes(b, off, read, b, off)
+                mPosition += read
+            }
+            return read
+        }
+
+        override fun skip(n: Long): Long {
+            if (n <= 0)
+                return 0
+            val start = mPosition
+            seekTo(mPosition + n)
+            return mPosition - start
+        }
+
+        override fun available(): Int {
+            return fileInputStream.available()
+        }
+
+        override fun close() {
+            fileInputStream.close()
+        }
+    }
+
+    /**
+     * Encrypt in a buffer to not modify the bytes given by the caller
+     */
+    private class StreamCipherOutputStream(private val fileOutputStream: FileOutputStream,
+                                           private val streamCipher: StreamCipher) : OutputStream() {
+
+        private val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+
+        override fun write(b: Int) {
+            buffer[0] = b.toByte()
+            streamCipher.processBytes(buffer, 0, 1, buffer, 0)
+            fileOutputStream.write(buffer, 0, 1)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            var offset = off
+            var remaining = len
+            while (remaining > 0) {
+                val length = minOf(remaining, buffer.size)
+                streamCipher.processBytes(b, offset, length, buffer, 0)
+                fileOutputStream.write(buffer, 0, length)
+                offset += length
+                remaining -= length
+            }
+        }
+
+        override fun flush() {
+            fileOutputStream.flush()
+        }
+
+        override fun close() {
+            fileOutputStream.close()
+        }
+    }
+
     companion object {
         private val TAG = BinaryFile::class.java.name
 
+        private val HEADER_MAGIC = byteArrayOf(0x4B, 0x44, 0x58, 0x02) // "KDX" version 2
+        private val HEADER_LENGTH = (HEADER_MAGIC.size + LoadedKey.BINARY_CIPHER_IV_LENGTH).toLong()
+
+        /**
+         * Read the header and return the IV, or null if the file is not in the current format
+         */
+        private fun readHeader(inputStream: InputStream): ByteArray? {
+            val header = ByteArray(HEADER_LENGTH.toInt())
+            try {
+                DataInputStream(inputStream).readFully(header)
+            } catch (e: EOFException) {
+                return null
+            }
+            for (i in HEADER_MAGIC.indices) {
+                if (header[i] != HEADER_MAGIC[i])
+                    return null
+            }
+            return header.copyOfRange(HEADER_MAGIC.size, header.size)
+        }
+
+        /**
+         * Check if [file] is a temp file written in the legacy format (Base64 text encrypted with Blowfish),
+         * its key is lost when the database is closed, so it cannot be read anymore
+         */
+        fun isLegacyFile(file: File): Boolean {
+            if (!file.exists() || file.length() == 0L)
+                return false
+            return try {
+                FileInputStream(file).use { readHeader(it) == null }
+            } catch (e: IOException) {
+                true
+            }
+        }
+
         @JvmField
         val CREATOR: Parcelable.Creator<BinaryFile> = object : Parcelable.Creator<BinaryFile> {
             override fun createFromParcel(parcel: Parcel): BinaryFile {
@@ -21,11 +21,26 @@ package com.kunzisoft.keepass.database.element.binary
 
 import android.util.Log
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.Collections
+import java.util.IdentityHashMap
 import kotlin.math.abs
 
 abstract class BinaryPool<T> {
 
     protected val pool = LinkedHashMap<T, BinaryData>()
+    // Keys of each binary instance, to not scan the pool to retrieve a key
+    private val keysByBinary = IdentityHashMap<BinaryData, LinkedHashSet<T>>()
+    // Keys by stored content, to retrieve the duplicates of a binary without scanning the pool
+    private val keysByContent = HashMap<ByteBuffer, LinkedHashSet<T>>()
+    private val contentKeys = HashMap<T, ByteBuffer>()
+    // Binaries added or written since the last indexing of the contents, filled by the writing threads,
+    // each instance only once whatever the number of writes, the hash changes during a write
+    private val binariesToIndex: MutableSet<BinaryData> =
+        Collections.synchronizedSet(Collections.newSetFromMap(IdentityHashMap()))
+    private val contentListener: (BinaryData) -> Unit = { binaryData ->
+        binariesToIndex.add(binaryData)
+    }
 
     // To build unique file id
     private var creationId: Long = System.currentTimeMillis()
@@ -39,6 +54,13 @@ abstract class BinaryPool<T> {
         return pool[key]
     }
 
+    /**
+     * Retrieve the instance of the pool equal to [binaryData], itself if it is in the pool
+     */
+    fun getBinary(binaryData: BinaryData): BinaryData? {
+        return findKey(binaryData)?.let { pool[it] }
+    }
+
     /**
      * Create and return a new binary file not yet linked to a binary
      */
@@ -57,7 +79,7 @@ abstract class BinaryPool<T> {
         if (key == null)
             return put(value)
         else
-            pool[key] = value
+            putInPool(key, value)
         return key
     }
 
@@ -71,16 +93,78 @@ abstract class BinaryPool<T> {
         if (key == null) {
             key = findUnusedKey()
         }
-        pool[key!!] = binaryData
+        putInPool(key!!, binaryData)
         return key
     }
 
+    private fun putInPool(key: T, binaryData: BinaryData) {
+        pool.put(key, binaryData)?.let { oldBinaryData ->
+            if (oldBinaryData !== binaryData)
+                removeKeyOfBinary(key, oldBinaryData)
+        }
+        keysByBinary.getOrPut(binaryData) { LinkedHashSet() }.add(key)
+        // The content is indexed at the next check, it may still be written
+        removeContentKey(key)
+        binaryData.contentListener = contentListener
+        binariesToIndex.add(binaryData)
+    }
+
+    private fun removeFromPool(key: T) {
+        pool.remove(key)?.let { binaryData ->
+            removeKeyOfBinary(key, binaryData)
+        }
+    }
+
+    private fun removeKeyOfBinary(key: T, binaryData: BinaryData) {
+        // The same instance can be linked to another key
+        keysByBinary[binaryData]?.let { keys ->
+            keys.remove(key)
+            if (keys.isEmpty()) {
+                keysByBinary.remove(binaryData)
+                if (binaryData.contentListener === contentListener)
+                    binaryData.contentListener = null
+                // Not kept until the next check
+                binariesToIndex.remove(binaryData)
+            }
+        }
+        removeContentKey(key)
+    }
+
+    private fun removeContentKey(key: T) {
+        contentKeys.remove(key)?.let { contentKey ->
+            keysByContent[contentKey]?.let { keys ->
+                keys.remove(key)
+                if (keys.isEmpty())
+                    keysByContent.remove(contentKey)
+            }
+        }
+    }
+
+    /**
+     * Index the content of the binaries added or written since the last call
+     */
+    private fun indexContents() {
+        val binaries = synchronized(binariesToIndex) {
+            binariesToIndex.toList().also { binariesToIndex.clear() }
+        }
+        binaries.forEach { binaryData ->
+            val contentKey = binaryData.contentKey()
+            keysByBinary[binaryData]?.forEach { key ->
+                removeContentKey(key)
+                if (contentKey != null) {
+                    contentKeys[key] = contentKey
+                    keysByContent.getOrPut(contentKey) { LinkedHashSet() }.add(key)
+                }
+            }
+        }
+    }
+
     /**
      * Remove a binary from the pool with its [key], the file is not deleted
      */
     @Throws(IOException::class)
     fun remove(key: T) {
-        pool.remove(key)
+        removeFromPool(key)
         // Don't clear attachment here because a file can be used in many BinaryAttachment
     }
 
@@ -90,7 +174,7 @@ abstract class BinaryPool<T> {
     @Throws(IOException::class)
     fun remove(binaryData: BinaryData) {
         findKey(binaryData)?.let {
-            pool.remove(it)
+            removeFromPool(it)
         }
         // Don't clear attachment here because a file can be used in many BinaryAttachment
     }
@@ -104,33 +188,24 @@ abstract class BinaryPool<T> {
      * Return key of [binaryDataToRetrieve] or null if not found
      */
     private fun findKey(binaryDataToRetrieve: BinaryData): T? {
-        val contains = pool.containsValue(binaryDataToRetrieve)
-        return if (!contains)
-            null
-        else {
-            for ((key, binary) in pool) {
-                if (binary == binaryDataToRetrieve) {
-                    return key
-                }
+        keysByBinary[binaryDataToRetrieve]?.firstOrNull()?.let {
+            return it
+        }
+        // Equal binary from another instance (e.g. retrieved from a parcel)
+        for ((key, binary) in pool) {
+            if (binary == binaryDataToRetrieve) {
+                return key
             }
-            return null
         }
+        return null
     }
 
     fun isBinaryDuplicate(binaryData: BinaryData?): Boolean {
         try {
-            binaryData?.let {
-                if (it.getSize() > 0) {
-                    val searchBinaryMD5 = it.binaryHash()
-                    var i = 0
-                    for ((_, binary) in pool) {
-                        if (binary.binaryHash() == searchBinaryMD5) {
-                            i++
-                            if (i > 1)
-                                return true
-                        }
-                    }
-                }
+            // The content is written after the binary is added, so only indexed at the check
+            indexContents()
+            binaryData?.contentKey()?.let { searchContentKey ->
+                return (keysByContent[searchContentKey]?.size ?: 0) > 1
             }
         } catch (e: Exception) {
             Log.e(TAG, "Unable to check binary duplication", e)
@@ -160,27 +235,21 @@ abstract class BinaryPool<T> {
     protected fun orderedBinariesWithoutDuplication(condition: ((binary: BinaryData) -> Boolean) = { true })
     : List<KeyBinary<T>> {
         val keyBinaryList = mutableListOf<KeyBinary<T>>()
+        val keyBinariesByContent = HashMap<ByteBuffer, KeyBinary<T>>()
         for ((key, binary) in pool) {
-            // Don't deduplicate
-            val existentBinary =
-            try {
-                if (binary.getSize() > 0) {
-                    keyBinaryList.find {
-                        val hash0 = it.binary.binaryHash()
-                        val hash1 = binary.binaryHash()
-                        hash0 != 0 && hash1 != 0 && hash0 == hash1
-                    }
-                } else {
-                    null
-                }
+            // Don't deduplicate empty binaries
+            val contentKey = try {
+                binary.contentKey()
             } catch (e: Exception) {
-                Log.e(TAG, "Unable to check binary hash", e)
+                Log.e(TAG, "Unable to check binary digest", e)
                 null
             }
+            val existentBinary = contentKey?.let { keyBinariesByContent[it] }
             if (existentBinary == null) {
                 val newKeyBinary = KeyBinary(binary, key)
                 if (condition.invoke(newKeyBinary.binary)) {
                     keyBinaryList.add(newKeyBinary)
+                    contentKey?.let { keyBinariesByContent[it] = newKeyBinary }
                 }
             } else {
                 if (condition.invoke(existentBinary.binary)) {
@@ -225,7 +294,15 @@ abstract class BinaryPool<T> {
 
     @Throws(IOException::class)
     fun clear() {
+        keysByBinary.keys.forEach { binaryData ->
+            if (binaryData.contentListener === contentListener)
+                binaryData.contentListener = null
+        }
         pool.clear()
+        keysByBinary.clear()
+        keysByContent.clear()
+        contentKeys.clear()
+        binariesToIndex.clear()
     }
 
     override fun toString(): String {
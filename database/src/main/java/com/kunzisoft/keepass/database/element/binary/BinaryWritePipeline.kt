@@ -0,0 +1,188 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.binary
+
+import android.util.Log
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Write binaries in the [binaryCache] with a bounded pool of worker threads.
+ *
+ * The calling thread only copies the bytes of each binary in chunks,
+ * the hash and the encryption in the cache are done by the workers, in the order of the chunks.
+ * The number of chunks waiting to be written is limited, the calling thread waits for the workers if needed.
+ * A binary is marked as pending in the [binaryCache] until written, reading it waits for the end of its write.
+ */
+class BinaryWritePipeline(private val binaryCache: BinaryCache,
+                          private val threads: Int = DEFAULT_THREADS,
+                          private val maxChunks: Int = DEFAULT_MAX_CHUNKS) {
+
+    private val threadNumber = AtomicInteger()
+    // Only created with the first binary, a database without attachment in the inner header starts no thread
+    private var executor: ExecutorService? = null
+    private val freeChunks = ArrayBlockingQueue<ByteArray>(maxChunks)
+    private var allocatedChunks = 0
+    private val writes = mutableListOf<Future<*>>()
+    private var inBackground = false
+
+    /**
+     * Read [length] bytes of [inputStream] and write them in [binaryData] in background
+     */
+    @Throws(IOException::class)
+    fun write(binaryData: BinaryData, length: Int, inputStream: InputStream) {
+        val chunks = LinkedBlockingQueue<Chunk>()
+        binaryData.pendingWrite = binaryCache.startWrite(binaryData.cacheId)
+        writes.add(getExecutor().submit<Unit> {
+            writeChunks(binaryData, chunks)
+        })
+        try {
+            var remaining = length
+            while (remaining > 0) {
+                val buffer = takeFreeChunk()
+                val read = inputStream.read(buffer, 0, minOf(remaining, buffer.size))
+                if (read < 0) {
+                    freeChunks.offer(buffer)
+                    break
+                }
+                chunks.put(Chunk(buffer, read))
+                remaining -= read
+            }
+        } catch (e: InterruptedException) {
+            throw IOException("Interrupted while reading binary", e)
+        } finally {
+            chunks.put(END_OF_BINARY)
+        }
+    }
+
+    private fun writeChunks(binaryData: BinaryData, chunks: LinkedBlockingQueue<Chunk>) {
+        var error: Exception? = null
+        val outputStream = try {
+            binaryData.getOutputDataStream(binaryCache)
+        } catch (e: Exception) {
+            error = e
+            null
+        }
+        try {
+            while (true) {
+                val chunk = chunks.take()
+                if (chunk === END_OF_BINARY)
+                    break
+                // After an error, the chunks are only released to not block the calling thread
+                if (error == null) {
+                    try {
+                        outputStream?.write(chunk.data, 0, chunk.length)
+                    } catch (e: Exception) {
+                        error = e
+                    }
+                }
+                freeChunks.offer(chunk.data)
+            }
+        } finally {
+            try {
+                outputStream?.close()
+            } catch (e: Exception) {
+                if (error == null)
+                    error = e
+            }
+            error?.let {
+                Log.e(TAG, "Unable to write binary", it)
+                binaryData.isCorrupted = true
+            }
+            if (!binaryCache.endWrite(binaryData.cacheId)) {
+                // Binary removed during the write
+                binaryData.clear(binaryCache)
+            }
+        }
+        error?.let { throw it }
+    }
+
+    private fun getExecutor(): ExecutorService {
+        return executor ?: Executors.newFixedThreadPool(threads) { runnable ->
+            Thread(runnable, "BinaryWrite-" + threadNumber.incrementAndGet()).apply {
+                isDaemon = true
+            }
+        }.also { executor = it }
+    }
+
+    private fun takeFreeChunk(): ByteArray {
+        freeChunks.poll()?.let { return it }
+        if (allocatedChunks < maxChunks) {
+            allocatedChunks++
+            return ByteArray(CHUNK_SIZE)
+        }
+        return freeChunks.take()
+    }
+
+    /**
+     * Wait until all the binaries are written, and throw the first error of a worker
+     */
+    @Throws(IOException::class)
+    fun await() {
+        try {
+            writes.forEach { it.get() }
+        } catch (e: ExecutionException) {
+            val cause = e.cause
+            throw cause as? IOException ?: IOException("Unable to write binary", cause)
+        } catch (e: InterruptedException) {
+            throw IOException("Interrupted while writing binaries", e)
+        } finally {
+            writes.clear()
+        }
+    }
+
+    /**
+     * Let the workers finish the writes without waiting for them,
+     * each binary can be read as soon as it is written
+     */
+    fun finishInBackground() {
+        inBackground = true
+        writes.clear()
+        executor?.shutdown()
+    }
+
+    /**
+     * Stop the workers, binaries not yet written are incomplete,
+     * does nothing if the writes are finished in background
+     */
+    fun shutdown() {
+        if (!inBackground) {
+            executor?.shutdownNow()
+            freeChunks.clear()
+        }
+    }
+
+    private class Chunk(val data: ByteArray, val length: Int)
+
+    companion object {
+        private val TAG = BinaryWritePipeline::class.java.name
+        private const val CHUNK_SIZE = 64 * 1024
+        private const val DEFAULT_MAX_CHUNKS = 32
+        private val DEFAULT_THREADS = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(1, 4)
+        private val END_OF_BINARY = Chunk(ByteArray(0), 0)
+    }
+}
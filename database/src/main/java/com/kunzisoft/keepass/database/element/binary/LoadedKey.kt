@@ -3,16 +3,18 @@ package com.kunzisoft.keepass.database.element.binary
 import java.io.Serializable
 import java.security.Key
 import java.security.SecureRandom
-import javax.crypto.KeyGenerator
+import javax.crypto.spec.SecretKeySpec
 
-class LoadedKey(val key: Key, val iv: ByteArray): Serializable {
+class LoadedKey(val key: Key): Serializable {
     companion object {
-        const val BINARY_CIPHER = "Blowfish/CBC/PKCS5Padding"
+        const val BINARY_CIPHER = "ChaCha7539"
+        const val BINARY_CIPHER_KEY_LENGTH = 32
+        const val BINARY_CIPHER_IV_LENGTH = 12
 
         fun generateNewCipherKey(): LoadedKey {
-            val iv = ByteArray(8)
-            SecureRandom().nextBytes(iv)
-            return LoadedKey(KeyGenerator.getInstance("Blowfish").generateKey(), iv)
+            val key = ByteArray(BINARY_CIPHER_KEY_LENGTH)
+            SecureRandom().nextBytes(key)
+            return LoadedKey(SecretKeySpec(key, BINARY_CIPHER))
         }
     }
-}
\ No newline at end of file
+}
@@ -35,6 +35,7 @@ import com.kunzisoft.keepass.database.element.MasterCredential
 import com.kunzisoft.keepass.database.element.Tags
 import com.kunzisoft.keepass.database.element.binary.BinaryData
 import com.kunzisoft.keepass.database.element.database.DatabaseKDB.Companion.BACKUP_FOLDER_TITLE
+import com.kunzisoft.keepass.database.element.entry.EntryFieldIndex
 import com.kunzisoft.keepass.database.element.entry.EntryKDBX
 import com.kunzisoft.keepass.database.element.entry.FieldReferencesEngine
 import com.kunzisoft.keepass.database.element.group.GroupKDBX
@@ -43,7 +44,6 @@ import com.kunzisoft.keepass.database.element.icon.IconImageStandard
 import com.kunzisoft.keepass.database.element.node.NodeHandler
 import com.kunzisoft.keepass.database.element.node.NodeId
 import com.kunzisoft.keepass.database.element.node.NodeIdUUID
-import com.kunzisoft.keepass.database.element.node.NodeKDBXInterface
 import com.kunzisoft.keepass.database.element.node.NodeVersioned
 import com.kunzisoft.keepass.database.element.security.MemoryProtectionConfig
 import com.kunzisoft.keepass.database.element.template.Template
@@ -53,9 +53,12 @@ import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX.Companion.FILE_VER
 import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX.Companion.FILE_VERSION_40
 import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX.Companion.FILE_VERSION_41
 import com.kunzisoft.keepass.hardware.HardwareKey
+import com.kunzisoft.keepass.model.AppOriginEntryField.isAppId
+import com.kunzisoft.keepass.model.AppOriginEntryField.isWebDomain
 import com.kunzisoft.keepass.utils.CharArrayUtil.contentEquals
 import com.kunzisoft.keepass.utils.UnsignedInt
 import com.kunzisoft.keepass.utils.clear
+import com.kunzisoft.keepass.utils.logDuration
 import com.kunzisoft.keepass.utils.longTo8Bytes
 import java.io.IOException
 import java.nio.charset.Charset
@@ -118,6 +121,57 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         }
     }
 
+    /**
+     * Finish to write the attachments of the inner header in the cache after the load,
+     * an attachment read before the end of its write waits for it
+     */
+    var loadAttachmentsInBackground = false
+
+    /**
+     * Keep the transformed key in memory between saves, the key derivation function
+     * is then only run when the credentials or the KDF parameters change,
+     * the master seed and the IVs are still regenerated for each save
+     */
+    var fastSave = false
+        set(value) {
+            field = value
+            if (!value)
+                clearTransformedKey()
+        }
+    private var mTransformedKey: ByteArray? = null
+    // Digest of the master key and the KDF parameters used to build the transformed key
+    private var mTransformedKeySource: ByteArray? = null
+
+    fun clearTransformedKey() {
+        mTransformedKey?.clear()
+        mTransformedKey = null
+        mTransformedKeySource?.clear()
+        mTransformedKeySource = null
+    }
+
+    private fun transformedKeySource(kdfParameters: KdfParameters): ByteArray {
+        return HashManager.hashSha256(masterKey, KdfParameters.serialize(kdfParameters))
+    }
+
+    /**
+     * Check if the transformed key of the last load or save can be used for the next save,
+     * not possible with a hardware key because the challenge depends on the KDF seed
+     */
+    fun canReuseTransformedKey(): Boolean {
+        val parameters = kdfParameters ?: return false
+        val source = mTransformedKeySource ?: return false
+        return fastSave
+                && mTransformedKey != null
+                && mCompositeKey.hardwareKey == null
+                && source.contentEquals(transformedKeySource(parameters))
+    }
+
+    /**
+     * True if the composite key needs the response of a hardware key
+     */
+    val isHardwareKeyProtected: Boolean
+        get() = mCompositeKey.hardwareKey != null
+
     override val kdfAvailableList: List<KdfEngine> = listOf(
         KdfFactory.aesKdf,
         KdfFactory.argon2dKdf,
@@ -127,6 +181,11 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
     var compressionAlgorithm = CompressionAlgorithm.GZIP
 
     private val mFieldReferenceEngine = FieldReferencesEngine(this)
+    // Lookup tables of the field references targets
+    private val mTitleIndex = EntryFieldIndex(EntryKDBX.STR_TITLE)
+    private val mUsernameIndex = EntryFieldIndex(EntryKDBX.STR_USERNAME)
+    private val mUrlIndex = EntryFieldIndex(EntryKDBX.STR_URL)
+    private val mNotesIndex = EntryFieldIndex(EntryKDBX.STR_NOTES)
     private val mTemplateEngine = TemplateEngineCompatible(this)
 
     var kdbxVersion = UnsignedInt(0)
@@ -205,33 +264,28 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
     override val defaultFileExtension: String
         get() = ".kdbx"
 
-    private open class NodeOperationHandler<T : NodeKDBXInterface> : NodeHandler<T>() {
-        var containsCustomData = false
-        override fun operate(node: T): Boolean {
-            if (node.customData.isNotEmpty()) {
-                containsCustomData = true
-            }
-            return true
-        }
-    }
-
-    private class EntryOperationHandler : NodeOperationHandler<EntryKDBX>() {
-        var passwordQualityEstimationDisabled = false
-        override fun operate(node: EntryKDBX): Boolean {
-            if (!node.qualityCheck) {
-                passwordQualityEstimationDisabled = true
+    /**
+     * Call each visitor for each node of the tree, the tree is walked only once
+     */
+    fun visitNodes(vararg visitors: TreeVisitorKDBX) {
+        rootGroup?.doForEachChildAndForIt(
+            object : NodeHandler<EntryKDBX>() {
+                override fun operate(node: EntryKDBX): Boolean {
+                    visitors.forEach { it.visitEntry(node) }
+                    return true
+                }
+            },
+            object : NodeHandler<GroupKDBX>() {
+                override fun operate(node: GroupKDBX): Boolean {
+                    visitors.forEach { it.visitGroup(node) }
+                    return true
+                }
             }
-            return super.operate(node)
-        }
+        )
     }
 
-    private class GroupOperationHandler : NodeOperationHandler<GroupKDBX>() {
-        var containsTags = false
-        override fun operate(node: GroupKDBX): Boolean {
-            if (node.tags.isNotEmpty())
-                containsTags = true
-            return super.operate(node)
-        }
+    fun getTreeStatistics(): TreeStatisticsKDBX {
+        return TreeStatisticsKDBX(attachmentPool).also { visitNodes(it) }
     }
 
     fun deriveMasterKey(
@@ -311,15 +365,11 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         this.mCompositeKey = databaseVersioned.mCompositeKey.copyOf()
     }
 
-    fun getMinKdbxVersion(): UnsignedInt {
-        val entryHandler = EntryOperationHandler()
-        val groupHandler = GroupOperationHandler()
-        rootGroup?.doForEachChildAndForIt(entryHandler, groupHandler)
-
+    fun getMinKdbxVersion(treeStatistics: TreeStatisticsKDBX = getTreeStatistics()): UnsignedInt {
         // https://keepass.info/help/kb/kdbx_4.1.html
-        val containsGroupWithTag = groupHandler.containsTags
+        val containsGroupWithTag = treeStatistics.containsGroupWithTags
         val containsEntryWithPasswordQualityEstimationDisabled =
-            entryHandler.passwordQualityEstimationDisabled
+            treeStatistics.containsEntryWithPasswordQualityEstimationDisabled
         val containsCustomIconWithNameOrLastModificationTime =
             iconsManager.containsCustomIconWithNameOrLastModificationTime()
         val containsHeaderCustomDataWithLastModificationTime =
@@ -331,8 +381,7 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         val kdfIsNotAes =
             keyDerivationFunction != null && keyDerivationFunction.uuid != AesKdf.CIPHER_UUID
         val containsHeaderCustomData = customData.isNotEmpty()
-        val containsNodeCustomData =
-            entryHandler.containsCustomData || groupHandler.containsCustomData
+        val containsNodeCustomData = treeStatistics.containsNodeCustomData
 
         // Check each condition to determine version
         return if (containsGroupWithTag
@@ -584,20 +633,20 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
     }
 
     fun getEntryByTitle(title: String, recursionLevel: Int): EntryKDBX? {
-        return findEntry { entry ->
-            entry.decodeTitleKey(recursionLevel).contentEquals(title.toCharArray(), true)
+        return mTitleIndex.find(title.toCharArray(), getEntryIndexes()) { entry ->
+            entry.decodeTitleKey(recursionLevel)
         }
     }
 
     fun getEntryByUsername(username: String, recursionLevel: Int): EntryKDBX? {
-        return findEntry { entry ->
-            entry.decodeUsernameKey(recursionLevel).contentEquals(username.toCharArray(), true)
+        return mUsernameIndex.find(username.toCharArray(), getEntryIndexes()) { entry ->
+            entry.decodeUsernameKey(recursionLevel)
         }
     }
 
     fun getEntryByURL(url: String, recursionLevel: Int): EntryKDBX? {
-        return findEntry { entry ->
-            entry.decodeUrlKey(recursionLevel).contentEquals(url.toCharArray(), true)
+        return mUrlIndex.find(url.toCharArray(), getEntryIndexes()) { entry ->
+            entry.decodeUrlKey(recursionLevel)
         }
     }
 
@@ -608,11 +657,27 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
     }
 
     fun getEntryByNotes(notes: String, recursionLevel: Int): EntryKDBX? {
-        return findEntry { entry ->
-            entry.decodeNotesKey(recursionLevel).contentEquals(notes.toCharArray(), true)
+        return mNotesIndex.find(notes.toCharArray(), getEntryIndexes()) { entry ->
+            entry.decodeNotesKey(recursionLevel)
         }
     }
 
+    private fun doForEachFieldIndex(action: (EntryFieldIndex) -> Unit) {
+        action.invoke(mTitleIndex)
+        action.invoke(mUsernameIndex)
+        action.invoke(mUrlIndex)
+        action.invoke(mNotesIndex)
+    }
+
+    /**
+     * Clear the references cache and the lookup tables,
+     * needed when entries are modified in place
+     */
+    fun clearFieldReferences() {
+        mFieldReferenceEngine.clear()
+        doForEachFieldIndex { it.clear() }
+    }
+
     fun getEntryByCustomData(customDataValue: String): EntryKDBX? {
         return findEntry { entry ->
             entry.customData.containsItemWithValue(customDataValue)
@@ -633,10 +698,30 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
             val kdfEngine = getKdfEngineFromParameters(keyDerivationFunctionParameters)
                 ?: throw IOException("Unknown key derivation function")
 
-            var transformedMasterKey =
-                kdfEngine.transform(masterKey, keyDerivationFunctionParameters)
-            if (transformedMasterKey.size != 32) {
-                transformedMasterKey = HashManager.hashSha256(transformedMasterKey)
+            val transformedKeySource = if (fastSave)
+                transformedKeySource(keyDerivationFunctionParameters)
+            else null
+            val cachedTransformedKey = mTransformedKey
+            val transformedMasterKey: ByteArray
+            if (transformedKeySource != null
+                && cachedTransformedKey != null
+                && transformedKeySource.contentEquals(mTransformedKeySource)) {
+                Log.d(TAG, "Transformed key reused")
+                transformedMasterKey = cachedTransformedKey.copyOf()
+                transformedKeySource.clear()
+            } else {
+                var newTransformedKey = logDuration(TAG, "Key derivation done") {
+                    kdfEngine.transform(masterKey, keyDerivationFunctionParameters)
+                }
+                if (newTransformedKey.size != 32) {
+                    newTransformedKey = HashManager.hashSha256(newTransformedKey)
+                }
+                if (transformedKeySource != null) {
+                    clearTransformedKey()
+                    mTransformedKey = newTransformedKey.copyOf()
+                    mTransformedKeySource = transformedKeySource
+                }
+                transformedMasterKey = newTransformedKey
             }
 
             val cmpKey = ByteArray(65)
@@ -828,18 +913,46 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         super.addEntryTo(newEntry, parent)
         tagPool.put(newEntry.tags)
         mFieldReferenceEngine.clear()
+        doForEachFieldIndex { it.addEntry(newEntry) }
     }
 
     override fun updateEntry(entry: EntryKDBX) {
         super.updateEntry(entry)
         tagPool.put(entry.tags)
         mFieldReferenceEngine.clear()
+        doForEachFieldIndex { it.updateEntry(entry) }
+    }
+
+    override fun doForEachSearchableValue(entry: EntryKDBX, action: (CharArray) -> Unit) {
+        entry.getFields().forEach { field ->
+            if (field.name != EntryKDBX.STR_PASSWORD)
+                action.invoke(field.protectedValue.charArrayValue)
+        }
+        for (i in 0 until entry.tags.size()) {
+            action.invoke(entry.tags.get(i).name.toCharArray())
+        }
+    }
+
+    override fun doForEachUrlValue(entry: EntryKDBX, action: (String) -> Unit) {
+        action.invoke(entry.url)
+        entry.getFields().forEach { field ->
+            if (field.isWebDomain())
+                action.invoke(field.protectedValue.toString())
+        }
+    }
+
+    override fun doForEachAppIdValue(entry: EntryKDBX, action: (CharArray) -> Unit) {
+        entry.getFields().forEach { field ->
+            if (field.isAppId())
+                action.invoke(field.protectedValue.charArrayValue)
+        }
     }
 
     override fun removeEntryFrom(entryToRemove: EntryKDBX, parent: GroupKDBX?) {
         super.removeEntryFrom(entryToRemove, parent)
         // Do not remove tags from pool, it's only in temp memory
         mFieldReferenceEngine.clear()
+        doForEachFieldIndex { it.removeEntry(entryToRemove) }
     }
 
     fun getTagPoolWithoutHistory(): Tags {
@@ -864,36 +977,28 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         }.binary
     }
 
-    fun removeUnlinkedAttachment(binary: BinaryData, clear: Boolean) {
-        val listBinaries = mutableListOf<BinaryData>()
-        listBinaries.add(binary)
-        removeUnlinkedAttachments(listBinaries, clear)
-    }
-
     fun removeUnlinkedAttachments(clear: Boolean) {
-        removeUnlinkedAttachments(emptyList(), clear)
+        // Build binaries to remove with all binaries known
+        val binariesToRemove = mutableListOf<BinaryData>()
+        attachmentPool.doForEachBinary { _, binary ->
+            binariesToRemove.add(binary)
+        }
+        removeUnlinkedAttachments(binariesToRemove, clear)
     }
 
-    private fun removeUnlinkedAttachments(binaries: List<BinaryData>, clear: Boolean) {
+    /**
+     * Remove the [binaries] not linked to an entry, the tree is walked once for all of them
+     */
+    fun removeUnlinkedAttachments(binaries: Collection<BinaryData>, clear: Boolean) {
         // TODO check in icon pool
-        // Build binaries to remove with all binaries known
-        val binariesToRemove = mutableListOf<BinaryData>()
-        if (binaries.isEmpty()) {
-            attachmentPool.doForEachBinary { _, binary ->
-                binariesToRemove.add(binary)
-            }
-        } else {
-            binariesToRemove.addAll(binaries)
+        if (binaries.isEmpty())
+            return
+        val binariesToRemove = binaries.toMutableList()
+        // Remove binaries from the list, a copy is checked with the instance of the pool
+        val linkedBinaries = getTreeStatistics().linkedBinaries
+        binariesToRemove.removeAll { binary ->
+            linkedBinaries.contains(attachmentPool.getBinary(binary) ?: binary)
         }
-        // Remove binaries from the list
-        rootGroup?.doForEachChild(object : NodeHandler<EntryKDBX>() {
-            override fun operate(node: EntryKDBX): Boolean {
-                node.getAttachments(attachmentPool, true).forEach {
-                    binariesToRemove.remove(it.binaryData)
-                }
-                return binariesToRemove.isNotEmpty()
-            }
-        }, null)
         // Effective removing
         binariesToRemove.forEach {
             try {
@@ -915,7 +1020,7 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
     override fun clearIndexes() {
         try {
             super.clearIndexes()
-            mFieldReferenceEngine.clear()
+            clearFieldReferences()
         } catch (e: Exception) {
             Log.e(TAG, "Unable to clear cache", e)
         }
@@ -925,6 +1030,7 @@ class DatabaseKDBX : DatabaseVersioned<UUID, UUID, GroupKDBX, EntryKDBX> {
         super.clearSensitiveData()
         hmacKey?.clear()
         mCompositeKey.clear()
+        clearTransformedKey()
     }
 
     companion object {
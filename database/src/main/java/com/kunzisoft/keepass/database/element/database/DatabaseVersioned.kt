@@ -31,6 +31,9 @@ import com.kunzisoft.keepass.database.element.icon.IconsManager
 import com.kunzisoft.keepass.database.element.node.NodeId
 import com.kunzisoft.keepass.database.element.node.Type
 import com.kunzisoft.keepass.database.exception.DuplicateUuidDatabaseException
+import com.kunzisoft.keepass.database.search.DomainIndex
+import com.kunzisoft.keepass.database.search.SearchIndex
+import com.kunzisoft.keepass.database.search.SearchQuery
 import com.kunzisoft.keepass.utils.clear
 import java.io.UnsupportedEncodingException
 import java.nio.CharBuffer
@@ -78,6 +81,25 @@ abstract class DatabaseVersioned<
 
     private var groupIndexes = LinkedHashMap<NodeId<GroupId>, Group>()
     private var entryIndexes = LinkedHashMap<NodeId<EntryId>, Entry>()
+    // Order of addition in the entry indexes, to return the candidates of an index in a stable order
+    private var entryPositions = HashMap<NodeId<EntryId>, Int>()
+    private var nextEntryPosition = 0
+
+    /**
+     * Optional inverted index to retrieve the search candidates without checking each entry,
+     * maintained with the entry indexes once created
+     */
+    @Volatile
+    var searchIndex: SearchIndex<EntryId>? = null
+        private set
+
+    /**
+     * Index of the entries by domain and application id for the autofill,
+     * maintained with the entry indexes once created
+     */
+    @Volatile
+    var domainIndex: DomainIndex<EntryId>? = null
+        private set
 
     var rootGroup: Group? = null
         set(value) {
@@ -188,6 +210,14 @@ abstract class DatabaseVersioned<
         this.groupIndexes.remove(group.nodeId)
     }
 
+    /**
+     * Forget the number of entries kept by each group, after nodes updated in place
+     */
+    fun clearEntriesCounts() {
+        rootGroup?.clearEntriesCount()
+        groupIndexes.values.forEach { it.clearEntriesCount() }
+    }
+
     fun isEntryIdUsed(id: NodeId<EntryId>): Boolean {
         return entryIndexes.containsKey(id)
     }
@@ -218,15 +248,144 @@ abstract class DatabaseVersioned<
         } else {
             this.entryIndexes[entryId] = entry
         }
+        this.entryPositions[entry.nodeId] = nextEntryPosition++
+        addSearchIndex(entry)
     }
 
     fun removeEntryIndex(entry: Entry) {
         this.entryIndexes.remove(entry.nodeId)
+        this.entryPositions.remove(entry.nodeId)
+        this.searchIndex?.removeEntry(entry.nodeId)
+        this.domainIndex?.removeEntry(entry.nodeId)
+    }
+
+    /**
+     * Create a new search index and return the task to fill it with the current entries,
+     * can be run in a background thread, modifications of entries are indexed directly,
+     * each chunk of entries is indexed in [runChunk] to lock the tree only during the chunk
+     */
+    fun createSearchIndex(runChunk: (() -> Unit) -> Unit = { it() }): Runnable {
+        val index = SearchIndex<EntryId>()
+        this.searchIndex = index
+        return createIndexTask(runChunk,
+            { searchIndex === index },
+            { entry ->
+                index.putEntry(entry.nodeId) { action ->
+                    doForEachSearchableValue(entry, action)
+                }
+            },
+            { index.isReady = true }
+        )
+    }
+
+    /**
+     * Create a new domain index and return the task to fill it with the current entries,
+     * can be run in a background thread, modifications of entries are indexed directly,
+     * each chunk of entries is indexed in [runChunk] to lock the tree only during the chunk
+     */
+    fun createDomainIndex(runChunk: (() -> Unit) -> Unit = { it() }): Runnable {
+        val index = DomainIndex<EntryId>()
+        this.domainIndex = index
+        return createIndexTask(runChunk,
+            { domainIndex === index },
+            { entry -> putDomainIndex(index, entry) },
+            { index.isReady = true }
+        )
+    }
+
+    private fun createIndexTask(
+        runChunk: (() -> Unit) -> Unit,
+        isCurrentIndex: () -> Boolean,
+        putEntry: (Entry) -> Unit,
+        setReady: () -> Unit
+    ): Runnable {
+        val entries = entryIndexes.values.toList()
+        return Runnable {
+            for (chunk in entries.chunked(INDEX_CHUNK_SIZE)) {
+                var indexed = true
+                runChunk {
+                    // Index replaced or cleared
+                    indexed = isCurrentIndex()
+                    if (indexed) {
+                        chunk.forEach { entry ->
+                            // Entry removed between two chunks, already out of the index
+                            if (entryIndexes[entry.nodeId] === entry)
+                                putEntry(entry)
+                        }
+                    }
+                }
+                if (!indexed)
+                    return@Runnable
+            }
+            runChunk {
+                if (isCurrentIndex())
+                    setReady()
+            }
+        }
+    }
+
+    /**
+     * Retrieve the ids of the entries which may match [searchQuery] with the indexes,
+     * or null if no index can answer the query
+     */
+    fun getSearchCandidates(searchQuery: SearchQuery): Set<NodeId<EntryId>>? {
+        return (domainIndex?.getCandidates(searchQuery)
+            ?: searchIndex?.getCandidates(searchQuery))?.let { inEntryOrder(it) }
+    }
+
+    /**
+     * Sort [candidates] in the order of the entry indexes, as checked without index,
+     * so a search limited to a maximum of results always keeps the same entries
+     */
+    private fun inEntryOrder(candidates: Set<NodeId<EntryId>>): Set<NodeId<EntryId>> {
+        return candidates.sortedBy { entryPositions[it] ?: Int.MAX_VALUE }.toCollection(LinkedHashSet())
+    }
+
+    private fun addSearchIndex(entry: Entry) {
+        this.searchIndex?.putEntry(entry.nodeId) { action ->
+            doForEachSearchableValue(entry, action)
+        }
+        this.domainIndex?.let { putDomainIndex(it, entry) }
+    }
+
+    private fun putDomainIndex(index: DomainIndex<EntryId>, entry: Entry) {
+        index.putEntry(entry.nodeId,
+            { action -> doForEachUrlValue(entry, action) },
+            { action -> doForEachAppIdValue(entry, action) }
+        )
     }
 
+    /**
+     * Values of the entry retrieved by the search index, never the password
+     */
+    protected open fun doForEachSearchableValue(entry: Entry, action: (CharArray) -> Unit) {
+        action.invoke(entry.title.toCharArray())
+        action.invoke(entry.username.toCharArray())
+        action.invoke(entry.url.toCharArray())
+        action.invoke(entry.notes.toCharArray())
+    }
+
+    /**
+     * URLs and web domains of the entry retrieved by the domain index
+     */
+    protected open fun doForEachUrlValue(entry: Entry, action: (String) -> Unit) {
+        action.invoke(entry.url)
+    }
+
+    /**
+     * Application ids of the entry retrieved by the domain index
+     */
+    protected open fun doForEachAppIdValue(entry: Entry, action: (CharArray) -> Unit) {}
+
     open fun clearIndexes() {
         this.groupIndexes.clear()
         this.entryIndexes.clear()
+        this.entryPositions.clear()
+        this.nextEntryPosition = 0
+        this.searchIndex?.clear()
+        this.searchIndex = null
+        this.domainIndex?.clear()
+        this.domainIndex = null
     }
 
     /*
@@ -272,6 +431,7 @@ abstract class DatabaseVersioned<
         val entryId = entry.nodeId
         if (entryIndexes.containsKey(entryId)) {
             entryIndexes[entryId] = entry
+            addSearchIndex(entry)
         }
     }
 
@@ -328,6 +488,9 @@ abstract class DatabaseVersioned<
 
         private const val TAG = "DatabaseVersioned"
 
+        // Entries indexed each time the tree is locked by the index task
+        private const val INDEX_CHUNK_SIZE = 200
+
         val UUID_ZERO = UUID(0, 0)
     }
 }
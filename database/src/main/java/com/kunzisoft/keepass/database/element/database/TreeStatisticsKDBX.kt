@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.database
+
+import com.kunzisoft.keepass.database.element.binary.AttachmentPool
+import com.kunzisoft.keepass.database.element.binary.BinaryData
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
+import com.kunzisoft.keepass.database.element.group.GroupKDBX
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * Visitor called for each node of a KDBX tree,
+ * several visitors can be given to [DatabaseKDBX.visitNodes] to share a single traversal
+ */
+interface TreeVisitorKDBX {
+    fun visitGroup(group: GroupKDBX) {}
+    fun visitEntry(entry: EntryKDBX) {}
+}
+
+/**
+ * Information of the nodes needed before a save, collected in a single traversal
+ * instead of a walk for each of them
+ */
+class TreeStatisticsKDBX(private val attachmentPool: AttachmentPool) : TreeVisitorKDBX {
+
+    var containsGroupWithTags = false
+        private set
+    var containsEntryWithPasswordQualityEstimationDisabled = false
+        private set
+    var containsNodeCustomData = false
+        private set
+    // Binaries linked to an entry or its history, by instance because the hash of a binary
+    // changes while it is written
+    val linkedBinaries: MutableSet<BinaryData> = Collections.newSetFromMap(IdentityHashMap())
+
+    override fun visitGroup(group: GroupKDBX) {
+        if (group.tags.isNotEmpty())
+            containsGroupWithTags = true
+        if (group.customData.isNotEmpty())
+            containsNodeCustomData = true
+    }
+
+    override fun visitEntry(entry: EntryKDBX) {
+        if (!entry.qualityCheck)
+            containsEntryWithPasswordQualityEstimationDisabled = true
+        if (entry.customData.isNotEmpty())
+            containsNodeCustomData = true
+        entry.getAttachments(attachmentPool, true).forEach {
+            linkedBinaries.add(it.binaryData)
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.entry
+
+import com.kunzisoft.keepass.database.element.node.NodeId
+import com.kunzisoft.keepass.utils.CharArrayUtil.contains
+import java.util.UUID
+
+/**
+ * Case-insensitive lookup table of entries by the value of a field [fieldKey],
+ * to retrieve the target of a field reference without checking each entry.
+ *
+ * The table is built at the first lookup and updated for each entry added, updated or removed.
+ * Entries with a placeholder in the field are kept apart because their value depends on other entries,
+ * it is decoded at the first lookup and kept until an entry is modified.
+ * The first entry in the order of the entry indexes is returned, as a linear search would do.
+ */
+class EntryFieldIndex(private val fieldKey: String) {
+
+    private var built = false
+    private var nextPosition = 0
+    private val positions = HashMap<NodeId<UUID>, Int>()
+    private val valueKeys = HashMap<NodeId<UUID>, String>()
+    private val entriesByValue = HashMap<String, MutableList<EntryKDBX>>()
+    private val entriesWithReference = mutableListOf<EntryKDBX>()
+    // Decoded values of the entries with a placeholder, depend on the target entries
+    private val decodedValueKeys = HashMap<NodeId<UUID>, String>()
+    private var decodedGeneration = 0
+
+    /**
+     * Retrieve the first entry of [entries] whose field is equal to [value] ignoring case,
+     * [decode] gives the value of an entry containing a placeholder
+     */
+    fun find(value: CharArray,
+             entries: Collection<EntryKDBX>,
+             decode: (EntryKDBX) -> CharArray): EntryKDBX? {
+        val entry: EntryKDBX?
+        val valueKey = normalize(value)
+        // Entries with a placeholder before the entry found, with the decoded value if known
+        val entriesToCheck = mutableListOf<Pair<EntryKDBX, String?>>()
+        val generation: Int
+        synchronized(this) {
+            if (!built) {
+                entries.forEach { put(it) }
+                built = true
+            }
+            entry = entriesByValue[valueKey]?.firstOrNull()
+            val entryPosition = entry?.let { positions[it.nodeId] } ?: Int.MAX_VALUE
+            for (entryWithReference in entriesWithReference) {
+                val position = positions[entryWithReference.nodeId] ?: continue
+                if (position > entryPosition)
+                    break
+                val decodedValueKey = decodedValueKeys[entryWithReference.nodeId]
+                entriesToCheck.add(entryWithReference to decodedValueKey)
+                if (decodedValueKey == valueKey)
+                    break
+            }
+            generation = decodedGeneration
+        }
+        for ((entryWithReference, decodedValueKey) in entriesToCheck) {
+            // Decoded without the lock, a reference can lead to a lookup in another field index
+            val entryValueKey = decodedValueKey
+                ?: normalize(decode(entryWithReference)).also { decodedValue ->
+                    synchronized(this) {
+                        // Not kept if an entry was modified during the decode
+                        if (generation == decodedGeneration)
+                            decodedValueKeys[entryWithReference.nodeId] = decodedValue
+                    }
+                }
+            if (entryValueKey == valueKey)
+                return entryWithReference
+        }
+        return entry
+    }
+
+    @Synchronized
+    fun addEntry(entry: EntryKDBX) {
+        clearDecodedValues()
+        if (built) {
+            remove(entry.nodeId)
+            put(entry)
+        }
+    }
+
+    @Synchronized
+    fun updateEntry(entry: EntryKDBX) {
+        clearDecodedValues()
+        if (built) {
+            // Keep the position, the entry is not moved in the entry indexes
+            val position = positions[entry.nodeId]
+            remove(entry.nodeId)
+            put(entry, position)
+        }
+    }
+
+    @Synchronized
+    fun removeEntry(entry: EntryKDBX) {
+        clearDecodedValues()
+        if (built) {
+            remove(entry.nodeId)
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        built = false
+        nextPosition = 0
+        positions.clear()
+        valueKeys.clear()
+        entriesByValue.clear()
+        entriesWithReference.clear()
+        clearDecodedValues()
+    }
+
+    /**
+     * A modified entry can be the target of a placeholder
+     */
+    private fun clearDecodedValues() {
+        decodedGeneration++
+        decodedValueKeys.clear()
+    }
+
+    private fun put(entry: EntryKDBX, entryPosition: Int? = null) {
+        val position = entryPosition ?: nextPosition++
+        positions[entry.nodeId] = position
+        val value = entry.getFieldValue(fieldKey)?.charArrayValue ?: charArrayOf()
+        if (value.contains(STR_REF_START, true) || value.contains(STR_SELF_REF_START, true)) {
+            insertByPosition(entriesWithReference, entry, position)
+        } else {
+            val key = normalize(value)
+            valueKeys[entry.nodeId] = key
+            insertByPosition(entriesByValue.getOrPut(key) { mutableListOf() }, entry, position)
+        }
+    }
+
+    private fun remove(entryId: NodeId<UUID>) {
+        positions.remove(entryId) ?: return
+        val key = valueKeys.remove(entryId)
+        if (key != null) {
+            entriesByValue[key]?.let { entries ->
+                entries.removeAll { it.nodeId == entryId }
+                if (entries.isEmpty())
+                    entriesByValue.remove(key)
+            }
+        } else {
+            entriesWithReference.removeAll { it.nodeId == entryId }
+        }
+    }
+
+    private fun insertByPosition(entries: MutableList<EntryKDBX>, entry: EntryKDBX, position: Int) {
+        var index = entries.size
+        while (index > 0 && (positions[entries[index - 1].nodeId] ?: 0) > position) {
+            index--
+        }
+        entries.add(index, entry)
+    }
+
+    companion object {
+        private const val STR_REF_START = "{REF:"
+        private const val STR_SELF_REF_START = "{S:"
+
+        // Same case folding as Char.equals(other, ignoreCase = true)
+        private fun normalize(value: CharArray): String {
+            val normalized = CharArray(value.size) { value[it].uppercaseChar().lowercaseChar() }
+            return String(normalized)
+        }
+    }
+}
@@ -51,15 +51,23 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
     private var mDatabase: DatabaseKDBX? = null
     @Transient
     private var mDecodeRef = false
+    // Size of the fields of the entry, computed once until a field is modified
+    @Transient
+    private var mFieldsSize = -1L
 
     override var usageCount = UnsignedLong(0)
     override var locationChanged = DateInstant()
     override var customData = CustomData()
-    private var fields = LinkedHashMap<String, ProtectedString>()
+    // Shared with the copies of the entry, as the history snapshots, until one of them is modified
+    private var fields = EntryFields()
     var binaries = LinkedHashMap<String, Int>() // Map<Label, PoolId>
     var foregroundColor = ""
     var backgroundColor = ""
     var overrideURL = ""
+        set(value) {
+            field = value
+            invalidateSize()
+        }
     override var tags = Tags()
     override var previousParentGroup: UUID = DatabaseVersioned.UUID_ZERO
     var qualityCheck = true
@@ -75,7 +83,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         usageCount = UnsignedLong(parcel.readLong())
         locationChanged = parcel.readParcelableCompat() ?: locationChanged
         customData = parcel.readParcelableCompat() ?: CustomData()
-        fields = parcel.readStringParcelableMap()
+        fields = EntryFields(parcel.readStringParcelableMap())
         binaries = parcel.readStringIntMap()
         foregroundColor = parcel.readString() ?: foregroundColor
         backgroundColor = parcel.readString() ?: backgroundColor
@@ -100,7 +108,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         dest.writeLong(usageCount.toKotlinLong())
         dest.writeParcelable(locationChanged, flags)
         dest.writeParcelable(customData, flags)
-        dest.writeStringParcelableMap(fields, flags)
+        dest.writeStringParcelableMap(fields.map, flags)
         dest.writeStringIntMap(binaries)
         dest.writeString(foregroundColor)
         dest.writeString(backgroundColor)
@@ -123,8 +131,8 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         usageCount = source.usageCount
         locationChanged = DateInstant(source.locationChanged)
         customData = CustomData(source.customData)
-        fields.clear()
-        fields.putAll(source.fields)
+        fields = source.fields
+        fields.shared = true
         binaries.clear()
         binaries.putAll(source.binaries)
         foregroundColor = source.foregroundColor
@@ -137,6 +145,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         if (copyHistory)
             history.addAll(source.history)
         additional = source.additional
+        invalidateSize()
     }
 
     fun startToManageFieldReferences(database: DatabaseKDBX) {
@@ -164,7 +173,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
      * Decode a reference key with the FieldReferencesEngine
      */
     private fun decodeRefKey(decodeRef: Boolean, key: String, recursionLevel: Int): CharArray {
-        return fields[key]?.charArrayValue?.let { charArray ->
+        return fields.map[key]?.charArrayValue?.let { charArray ->
             return if (decodeRef) {
                 mDatabase?.getFieldReferenceValue(
                     entry = this,
@@ -183,7 +192,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         get() = String(decodeTitleKey(0))
         set(value) {
             val protect = mDatabase != null && mDatabase!!.memoryProtection.protectTitle
-            fields[STR_TITLE] = ProtectedString(protect, value)
+            editableFields()[STR_TITLE] = ProtectedString(protect, value)
         }
 
     fun decodeUsernameKey(recursionLevel: Int): CharArray {
@@ -194,7 +203,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         get() = String(decodeUsernameKey(0))
         set(value) {
             val protect = mDatabase != null && mDatabase!!.memoryProtection.protectUserName
-            fields[STR_USERNAME] = ProtectedString(protect, value)
+            editableFields()[STR_USERNAME] = ProtectedString(protect, value)
         }
 
     fun decodePasswordKey(recursionLevel: Int): CharArray {
@@ -205,7 +214,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         get() = decodePasswordKey(0)
         set(value) {
             val protect = mDatabase != null && mDatabase!!.memoryProtection.protectPassword
-            fields[STR_PASSWORD] = ProtectedString(protect, value)
+            editableFields()[STR_PASSWORD] = ProtectedString(protect, value)
         }
 
     fun decodeUrlKey(recursionLevel: Int): CharArray {
@@ -216,7 +225,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         get() = String(decodeUrlKey(0))
         set(value) {
             val protect = mDatabase != null && mDatabase!!.memoryProtection.protectUrl
-            fields[STR_URL] = ProtectedString(protect, value)
+            editableFields()[STR_URL] = ProtectedString(protect, value)
         }
 
     fun decodeNotesKey(recursionLevel: Int): CharArray {
@@ -227,7 +236,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         get() = String(decodeNotesKey(0))
         set(value) {
             val protect = mDatabase != null && mDatabase!!.memoryProtection.protectNotes
-            fields[STR_NOTES] = ProtectedString(protect, value)
+            editableFields()[STR_NOTES] = ProtectedString(protect, value)
         }
 
     fun getCustomFieldValue(label: String, recursionLevel: Int = 0): CharArray {
@@ -235,13 +244,17 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
     }
 
     fun getSize(attachmentPool: AttachmentPool): Long {
-        var size = FIXED_LENGTH_SIZE
-
-        for (entry in fields.entries) {
-            size += entry.key.length.toLong()
-            size += entry.value.length().toLong()
+        var size = getSizeWithoutHistory(attachmentPool)
+        for (entry in history) {
+            size += entry.getSize(attachmentPool)
         }
+        return size
+    }
 
+    private fun getSizeWithoutHistory(attachmentPool: AttachmentPool): Long {
+        var size = FIXED_LENGTH_SIZE + getFieldsSize()
+
+        // Attachments may still be written, tags and auto-type are modified in place
         size += getAttachmentsSize(attachmentPool)
 
         size += autoType.defaultSequence.length.toLong()
@@ -250,16 +263,29 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
             size += value.length.toLong()
         }
 
-        for (entry in history) {
-            size += entry.getSize(attachmentPool)
-        }
+        size += tags.toString().length
+        return size
+    }
 
+    private fun getFieldsSize(): Long {
+        if (mFieldsSize >= 0)
+            return mFieldsSize
+
+        var size = 0L
+        for (entry in fields.map.entries) {
+            size += entry.key.length.toLong()
+            size += entry.value.length().toLong()
+        }
         size += overrideURL.length.toLong()
-        size += tags.toString().length
 
+        mFieldsSize = size
         return size
     }
 
+    private fun invalidateSize() {
+        mFieldsSize = -1L
+    }
+
     fun afterChangeParent() {
         locationChanged = DateInstant()
     }
@@ -273,7 +299,7 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
     }
 
     fun doForEachDecodedCustomField(action: (field: Field) -> Unit) {
-        val iterator = fields.entries.iterator()
+        val iterator = fields.map.entries.iterator()
         while (iterator.hasNext()) {
             val mapEntry = iterator.next()
             if (!isStandardField(mapEntry.key)) {
@@ -288,11 +314,11 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
     }
 
     fun getFieldValue(label: String): ProtectedString? {
-        return fields[label]
+        return fields.map[label]
     }
 
     fun getFields(): List<Field> {
-        return fields.map { Field(it.key, it.value) }
+        return fields.map.map { Field(it.key, it.value) }
     }
 
     fun putField(field: Field) {
@@ -300,15 +326,48 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
     }
 
     fun putField(label: String, value: ProtectedString) {
-        fields[label] = value
+        editableFields()[label] = value
     }
 
     fun removeField(name: String) {
-        fields.remove(name)
+        editableFields().remove(name)
     }
 
     fun removeAllFields() {
-        fields.clear()
+        fields = EntryFields()
+        invalidateSize()
+    }
+
+    private fun editableFields(): LinkedHashMap<String, ProtectedString> {
+        invalidateSize()
+        if (fields.shared) {
+            fields = EntryFields(LinkedHashMap(fields.map))
+        }
+        return fields.map
+    }
+
+    /**
+     * Reuse the fields of [entry] equal to the fields of this entry,
+     * to not keep in memory a value for each snapshot of the history
+     */
+    fun shareFieldsWith(entry: EntryKDBX) {
+        if (fields === entry.fields)
+            return
+        val entryFields = entry.fields.map
+        if (isSameFields(fields.map, entryFields)) {
+            fields = entry.fields
+            fields.shared = true
+        } else {
+            val editableFields = editableFields()
+            for (mapEntry in editableFields.entries) {
+                val entryValue = entryFields[mapEntry.key]
+                if (entryValue != null
+                    && entryValue !== mapEntry.value
+                    && entryValue == mapEntry.value) {
+                    mapEntry.setValue(entryValue)
+                }
+            }
+        }
     }
 
     /**
@@ -378,10 +437,78 @@ class EntryKDBX : EntryVersioned<UUID, UUID, GroupKDBX, EntryKDBX>, NodeKDBXInte
         } else null
     }
 
+    /**
+     * Remove the oldest entries of the history in a single pass,
+     * until the history contains at most [maxItems] entries and its size is at most [maxSize],
+     * a negative value is not a limit. Return the entries removed.
+     */
+    fun removeOldestEntriesFromHistory(maxItems: Int,
+                                       maxSize: Long,
+                                       attachmentPool: AttachmentPool): List<EntryKDBX> {
+        val historySize = history.size
+        if (historySize == 0 || (maxItems < 0 && maxSize < 0))
+            return listOf()
+        val sizes = LongArray(historySize)
+        var totalSize = 0L
+        if (maxSize >= 0) {
+            for (i in 0 until historySize) {
+                sizes[i] = history[i].getSize(attachmentPool)
+                totalSize += sizes[i]
+            }
+        }
+        // Stable sort, the first of the entries with the same date is removed first
+        val oldestIndexes = (0 until historySize).sortedWith { a, b ->
+            history[a].lastModificationTime.compareTo(history[b].lastModificationTime)
+        }
+        val removed = BooleanArray(historySize)
+        val removedEntries = mutableListOf<EntryKDBX>()
+        var remainingItems = historySize
+        for (index in oldestIndexes) {
+            if ((maxItems < 0 || remainingItems <= maxItems)
+                && (maxSize < 0 || totalSize <= maxSize))
+                break
+            removed[index] = true
+            removedEntries.add(history[index])
+            remainingItems--
+            totalSize -= sizes[index]
+        }
+        if (removedEntries.isNotEmpty()) {
+            val newHistory = ArrayList<EntryKDBX>(remainingItems)
+            for (i in 0 until historySize) {
+                if (!removed[i])
+                    newHistory.add(history[i])
+            }
+            history = newHistory
+        }
+        return removedEntries
+    }
+
     fun clearHistory() {
         history.clear()
     }
 
+    private fun isSameFields(fields: Map<String, ProtectedString>,
+                             otherFields: Map<String, ProtectedString>): Boolean {
+        if (fields.size != otherFields.size)
+            return false
+        // Same order, the fields are written in the order of the map
+        val otherIterator = otherFields.entries.iterator()
+        for (mapEntry in fields.entries) {
+            val otherEntry = otherIterator.next()
+            if (mapEntry.key != otherEntry.key || mapEntry.value != otherEntry.value)
+                return false
+        }
+        return true
+    }
+
+    /**
+     * Immutable once shared, an entry copies the map before modifying shared fields
+     */
+    private class EntryFields(val map: LinkedHashMap<String, ProtectedString> = LinkedHashMap()) {
+        @Volatile
+        var shared = false
+    }
+
     override fun touch(modified: Boolean, touchParents: Boolean) {
         super.touch(modified, touchParents)
         usageCount.plusOne()
@@ -25,9 +25,9 @@ import com.kunzisoft.keepass.database.element.node.NodeIdUUID
 import com.kunzisoft.keepass.utils.CharArrayUtil.clear
 import com.kunzisoft.keepass.utils.CharArrayUtil.contains
 import com.kunzisoft.keepass.utils.CharArrayUtil.indexOf
-import com.kunzisoft.keepass.utils.CharArrayUtil.replace
 import com.kunzisoft.keepass.utils.UUIDUtils.asHexCharArray
 import com.kunzisoft.keepass.utils.UUIDUtils.asUUID
+import java.util.Locale
 import java.util.concurrent.ConcurrentHashMap
 
 class FieldReferencesEngine(private val mDatabase: DatabaseKDBX) {
@@ -87,10 +87,11 @@ class FieldReferencesEngine(private val mDatabase: DatabaseKDBX) {
                 }
 
                 val reference = String(textValue, start + startingDelimiter.length, end - (start + startingDelimiter.length))
-                val fullReference = "$startingDelimiter$reference$endingDelimiter".let {
-                    if (selfReference) it + "@I:${currentEntry.id}"
-                    else it
-                }
+                val fullReference = cacheKey(
+                    "$startingDelimiter$reference$endingDelimiter",
+                    selfReference,
+                    currentEntry
+                )
 
                 if (!refsCache.containsKey(fullReference)) {
                     val newRecursionLevel = recursionLevel + 1
@@ -130,25 +131,72 @@ class FieldReferencesEngine(private val mDatabase: DatabaseKDBX) {
         return textValue
     }
 
+    /**
+     * Key of the cache, case-insensitive as the placeholders,
+     * a self reference is only valid for its own entry
+     */
+    private fun cacheKey(placeholder: String, selfReference: Boolean, entry: EntryKDBX): String {
+        val key = placeholder.uppercase(Locale.ROOT)
+        return if (selfReference) "$key@I:${entry.id}" else key
+    }
+
+    /**
+     * Replace each placeholder of [text] already resolved in the cache,
+     * only the placeholders present in the text are looked up
+     */
     private fun fillReferencesUsingCache(entry: EntryKDBX, text: CharArray): CharArray {
-        var result = text
-        refsCache.keys.forEach { key ->
-            val placeholder = key.takeIf { it.startsWith(STR_SELF_REF_START, true) }
-                ?.split("@")?.takeIf { it.last() == "I:${entry.id}" }?.first()
-                ?: key
-
-            val replacement = refsCache[key]
-            if (replacement != null) {
-                val nextResult = result.replace(placeholder, replacement, ignoreCase = true)
-                if (nextResult !== result && result !== text) {
-                    result.clear()
+        if (refsCache.isEmpty())
+            return text
+        // First pass to retrieve the replacements and the final size
+        var replacements: MutableList<Triple<Int, Int, CharArray>>? = null
+        var newSize = text.size
+        var index = 0
+        while (index < text.size) {
+            val selfReference = text.startsWithAt(STR_SELF_REF_START, index)
+            if (selfReference || text.startsWithAt(STR_REF_START, index)) {
+                val end = text.indexOf(STR_REF_END, index, ignoreCase = true)
+                if (end < 0)
+                    break
+                val placeholder = String(text, index, end + STR_REF_END.length - index)
+                val replacement = refsCache[cacheKey(placeholder, selfReference, entry)]
+                if (replacement != null) {
+                    if (replacements == null)
+                        replacements = mutableListOf()
+                    replacements.add(Triple(index, end + STR_REF_END.length, replacement))
+                    newSize += replacement.size - placeholder.length
+                    index = end + STR_REF_END.length
+                    continue
                 }
-                result = nextResult
             }
+            index++
+        }
+        if (replacements == null)
+            return text
+        // Second pass to copy the text with the replacements
+        val result = CharArray(newSize)
+        var textPosition = 0
+        var resultPosition = 0
+        replacements.forEach { (start, end, replacement) ->
+            System.arraycopy(text, textPosition, result, resultPosition, start - textPosition)
+            resultPosition += start - textPosition
+            System.arraycopy(replacement, 0, result, resultPosition, replacement.size)
+            resultPosition += replacement.size
+            textPosition = end
         }
+        System.arraycopy(text, textPosition, result, resultPosition, text.size - textPosition)
         return result
     }
 
+    private fun CharArray.startsWithAt(prefix: String, index: Int): Boolean {
+        if (index + prefix.length > this.size)
+            return false
+        for (i in prefix.indices) {
+            if (!this[index + i].equals(prefix[i], ignoreCase = true))
+                return false
+        }
+        return true
+    }
+
     private fun findReferenceTarget(reference: String, recursionLevel: Int): TargetResult {
 
         val targetResult = TargetResult(null, 'J')
@@ -77,6 +77,11 @@ class GroupKDB : GroupVersioned<Int, UUID, GroupKDB, EntryKDB>, NodeKDBInterface
 
     override fun afterAssignNewParent() {}
 
+    override fun isEntryCounted(entry: EntryKDB): Boolean {
+        // Meta streams are internal entries
+        return !entry.isMetaStream()
+    }
+
     companion object {
 
         @JvmField
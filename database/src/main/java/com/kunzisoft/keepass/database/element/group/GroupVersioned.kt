@@ -20,8 +20,12 @@
 package com.kunzisoft.keepass.database.element.group
 
 import android.os.Parcel
+import com.kunzisoft.keepass.database.element.DateInstant
 import com.kunzisoft.keepass.database.element.entry.EntryVersioned
+import com.kunzisoft.keepass.database.element.node.NodeId
+import com.kunzisoft.keepass.database.element.node.NodeTimeInterface
 import com.kunzisoft.keepass.database.element.node.NodeVersioned
+import kotlin.math.min
 
 abstract class GroupVersioned
         <
@@ -38,6 +42,9 @@ abstract class GroupVersioned
     @Transient
     private val childEntries = mutableListOf<Entry>()
     private var positionIndexChildren = 0
+    // Number of entries in the group and its children, with and without the expired nodes
+    @Transient
+    private val entriesCounts = arrayOfNulls<EntriesCount<GroupId>>(2)
 
     constructor() : super()
 
@@ -60,6 +67,7 @@ abstract class GroupVersioned
             removeChildren()
             childGroups.addAll(source.childGroups)
             childEntries.addAll(source.childEntries)
+            invalidateEntriesCount()
         }
     }
 
@@ -92,6 +100,7 @@ abstract class GroupVersioned
         positionIndexChildren++
         group.nodeIndexInParentForNaturalOrder = positionIndexChildren
         this.childGroups.add(group)
+        invalidateEntriesCount()
     }
 
     override fun addChildEntry(entry: Entry) {
@@ -100,6 +109,7 @@ abstract class GroupVersioned
         positionIndexChildren++
         entry.nodeIndexInParentForNaturalOrder = positionIndexChildren
         this.childEntries.add(entry)
+        invalidateEntriesCount()
     }
 
     override fun updateChildGroup(group: Group) {
@@ -108,6 +118,7 @@ abstract class GroupVersioned
             val oldGroup = this.childGroups.removeAt(index)
             group.nodeIndexInParentForNaturalOrder = oldGroup.nodeIndexInParentForNaturalOrder
             this.childGroups.add(index, group)
+            invalidateEntriesCount()
         }
     }
 
@@ -117,26 +128,131 @@ abstract class GroupVersioned
             val oldEntry = this.childEntries.removeAt(index)
             entry.nodeIndexInParentForNaturalOrder = oldEntry.nodeIndexInParentForNaturalOrder
             this.childEntries.add(index, entry)
+            invalidateEntriesCount()
         }
     }
 
     override fun removeChildGroup(group: Group) {
-        this.childGroups.remove(group)
+        if (this.childGroups.remove(group))
+            invalidateEntriesCount()
     }
 
     override fun removeChildEntry(entry: Entry) {
-        this.childEntries.remove(entry)
+        if (this.childEntries.remove(entry))
+            invalidateEntriesCount()
     }
 
     override fun removeChildren() {
         this.childGroups.clear()
         this.childEntries.clear()
+        invalidateEntriesCount()
+    }
+
+    /**
+     * Entries which are never shown, not included in the number of entries
+     */
+    protected open fun isEntryCounted(entry: Entry): Boolean {
+        return true
+    }
+
+    /**
+     * Number of entries directly in this group,
+     * without the expired entries if not [withExpired]
+     */
+    fun getNumberOfEntries(withExpired: Boolean): Int {
+        return childEntries.count { entry ->
+            isEntryCounted(entry) && (withExpired || !entry.isCurrentlyExpires)
+        }
+    }
+
+    /**
+     * Number of entries in this group and its children,
+     * without the expired nodes if not [withExpired] and without the [excludedGroup] tree.
+     * The number is kept by each group and only computed again for the groups changed in the meantime,
+     * or when a node of the group reaches its expiry time.
+     */
+    fun getRecursiveNumberOfEntries(withExpired: Boolean, excludedGroup: Group? = null): Int {
+        return getEntriesCount(withExpired, excludedGroup?.nodeId, System.currentTimeMillis()).number
     }
 
+    internal fun getEntriesCount(withExpired: Boolean,
+                                 excludedGroupId: NodeId<GroupId>?,
+                                 currentTime: Long): EntriesCount<GroupId> {
+        val countIndex = if (withExpired) 1 else 0
+        entriesCounts[countIndex]?.let { entriesCount ->
+            if (entriesCount.excludedGroupId == excludedGroupId
+                && currentTime < entriesCount.validUntil)
+                return entriesCount
+        }
+        var number = 0
+        var validUntil = Long.MAX_VALUE
+        for (entry in childEntries) {
+            if (!isEntryCounted(entry))
+                continue
+            if (!withExpired) {
+                validUntil = min(validUntil, expiryLimit(entry, currentTime))
+                if (entry.isCurrentlyExpires)
+                    continue
+            }
+            number++
+        }
+        for (group in childGroups) {
+            if (group.nodeId == excludedGroupId)
+                continue
+            if (!withExpired) {
+                validUntil = min(validUntil, expiryLimit(group, currentTime))
+                if (group.isCurrentlyExpires)
+                    continue
+            }
+            val groupCount = group.getEntriesCount(withExpired, excludedGroupId, currentTime)
+            number += groupCount.number
+            validUntil = min(validUntil, groupCount.validUntil)
+        }
+        return EntriesCount(number, excludedGroupId, validUntil).also {
+            entriesCounts[countIndex] = it
+        }
+    }
+
+    /**
+     * Forget the number of entries of this group and its parents, in O(depth)
+     */
+    fun invalidateEntriesCount() {
+        entriesCounts.fill(null)
+        var parentGroup = parent
+        while (parentGroup != null) {
+            parentGroup.clearEntriesCount()
+            parentGroup = parentGroup.parent
+        }
+    }
+
+    internal fun clearEntriesCount() {
+        entriesCounts.fill(null)
+    }
+
+    internal class EntriesCount<GroupId>(val number: Int,
+                                         val excludedGroupId: NodeId<GroupId>?,
+                                         val validUntil: Long)
+
     override fun nodeIndexInParentForNaturalOrder(): Int {
         return if (nodeIndexInParentForNaturalOrder == -1)
             childGroups.indexOf(this)
         else
             nodeIndexInParentForNaturalOrder
     }
+
+    companion object {
+        /**
+         * Time until which the expired state of a node does not change
+         */
+        private fun expiryLimit(node: NodeTimeInterface, currentTime: Long): Long {
+            if (!node.expires || node.isCurrentlyExpires && node.expiryTime.type != DateInstant.Type.TIME)
+                return Long.MAX_VALUE
+            val expiryMilliseconds = node.expiryTime.toMilliseconds()
+            // Only the time of the day is compared for a time, the state is computed each time
+            return if (node.expiryTime.type != DateInstant.Type.TIME && expiryMilliseconds > currentTime)
+                expiryMilliseconds
+            else
+                currentTime
+        }
+    }
 }
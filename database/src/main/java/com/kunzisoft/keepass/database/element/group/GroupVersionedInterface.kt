@@ -49,24 +49,47 @@ interface GroupVersionedInterface<Group: GroupVersionedInterface<Group, Entry>,
         groupHandler.operate(this as Group)
     }
 
+    /**
+     * Visit the entries of this group, then each child group followed by its own children.
+     * When a handler returns false, the remaining children of the group being visited are skipped,
+     * false is returned if it happens for a direct child of this group.
+     * The tree is walked with an explicit stack, so the depth of the tree is not limited by the call stack.
+     */
     fun doForEachChild(entryHandler: NodeHandler<Entry>?,
                        groupHandler: NodeHandler<Group>?,
                        stopIterationWhenGroupHandlerOperateFalse: Boolean = true): Boolean {
-        if (entryHandler != null) {
-            for (entry in this.getChildEntries()) {
-                if (!entryHandler.operate(entry))
-                    return false
+        if (!doForEachChildEntry(this, entryHandler))
+            return false
+        val groupIterators = ArrayDeque<Iterator<Group>>()
+        groupIterators.addLast(this.getChildGroups().iterator())
+        while (groupIterators.isNotEmpty()) {
+            val groupIterator = groupIterators.last()
+            if (!groupIterator.hasNext()) {
+                groupIterators.removeLast()
+                continue
             }
-        }
-        for (group in this.getChildGroups()) {
-            var doActionForChild = true
+            val group = groupIterator.next()
             if (groupHandler != null && !groupHandler.operate(group)) {
-                doActionForChild = false
-                if (stopIterationWhenGroupHandlerOperateFalse)
+                if (stopIterationWhenGroupHandlerOperateFalse) {
+                    if (groupIterators.size == 1)
+                        return false
+                    groupIterators.removeLast()
+                }
+                continue
+            }
+            if (doForEachChildEntry(group, entryHandler))
+                groupIterators.addLast(group.getChildGroups().iterator())
+        }
+        return true
+    }
+
+    private fun doForEachChildEntry(group: GroupVersionedInterface<Group, Entry>,
+                                    entryHandler: NodeHandler<Entry>?): Boolean {
+        if (entryHandler != null) {
+            for (entry in group.getChildEntries()) {
+                if (!entryHandler.operate(entry))
                     return false
             }
-            if (doActionForChild)
-                group.doForEachChild(entryHandler, groupHandler, stopIterationWhenGroupHandlerOperateFalse)
         }
         return true
     }
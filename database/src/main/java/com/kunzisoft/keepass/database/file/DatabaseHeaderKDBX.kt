@@ -83,7 +83,8 @@ class DatabaseHeaderKDBX(private val databaseV4: DatabaseKDBX) : DatabaseHeader(
     inner class HeaderAndHash(var header: ByteArray, var hash: ByteArray)
 
     init {
-        this.version = databaseV4.getMinKdbxVersion()
+        // Minimum version computed before the save, replaced by the version read when loading
+        this.version = databaseV4.kdbxVersion
         this.masterSeed = ByteArray(32)
     }
 
@@ -34,6 +34,7 @@ import com.kunzisoft.keepass.database.element.DeletedObject
 import com.kunzisoft.keepass.database.element.Tags
 import com.kunzisoft.keepass.database.element.binary.BinaryData
 import com.kunzisoft.keepass.database.element.binary.BinaryData.Companion.BASE64_FLAG
+import com.kunzisoft.keepass.database.element.binary.BinaryWritePipeline
 import com.kunzisoft.keepass.database.element.database.CompressionAlgorithm
 import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
 import com.kunzisoft.keepass.database.element.database.DatabaseVersioned
@@ -61,7 +62,6 @@ import com.kunzisoft.keepass.utils.UnsignedInt
 import com.kunzisoft.keepass.utils.UnsignedLong
 import com.kunzisoft.keepass.utils.bytes16ToUuid
 import com.kunzisoft.keepass.utils.bytes64ToLong
-import com.kunzisoft.keepass.utils.readBytes
 import com.kunzisoft.keepass.utils.readBytes4ToUInt
 import com.kunzisoft.keepass.utils.readBytesLength
 import org.xmlpull.v1.XmlPullParser
@@ -125,6 +125,8 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
     override fun openDatabase(databaseInputStream: InputStream,
                               progressTaskUpdater: ProgressTaskUpdater?,
                               assignMasterKey: (() -> Unit)): DatabaseKDBX {
+        var hmacBlockInputStream: HmacBlockInputStream? = null
+        val binaryWritePipeline = BinaryWritePipeline(mDatabase.binaryCache)
         try {
             startKeyTimer(progressTaskUpdater)
 
@@ -194,7 +196,9 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
                     throw InvalidCredentialsDatabaseException()
                 }
 
-                val hmIs = HmacBlockInputStream(databaseInputStream, true, hmacKey)
+                // Blocks are read and verified in background while the previous ones are parsed
+                val hmIs = HmacBlockInputStream(databaseInputStream, true, hmacKey, true)
+                hmacBlockInputStream = hmIs
 
                 plainInputStream = CipherInputStream(hmIs, cipher)
             }
@@ -205,7 +209,7 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
             }
 
             if (!mDatabase.kdbxVersion.isBefore(FILE_VERSION_40)) {
-                readInnerHeader(inputStreamXml, header)
+                readInnerHeader(inputStreamXml, header, binaryWritePipeline)
             }
 
             try {
@@ -222,6 +226,13 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
             }
             readDocumentStreamed(xmlPullParser)
 
+            // Attachments of the inner header are written while the XML is parsed
+            if (mDatabase.loadAttachmentsInBackground) {
+                binaryWritePipeline.finishInBackground()
+            } else {
+                binaryWritePipeline.await()
+            }
+
             stopContentTimer()
 
         } catch (e: Error) {
@@ -230,6 +241,14 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
             if (e.message?.contains("Hash failed with code") == true)
                 throw KDFMemoryDatabaseException(e)
             throw DatabaseInputException(e)
+        } finally {
+            binaryWritePipeline.shutdown()
+            // Stop the read ahead of the blocks
+            try {
+                hmacBlockInputStream?.close()
+            } catch (e: IOException) {
+                Log.w(TAG, "Unable to close the block stream", e)
+            }
         }
 
         return mDatabase
@@ -237,7 +256,8 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
 
     @Throws(IOException::class)
     private fun readInnerHeader(dataInputStream: InputStream,
-                                header: DatabaseHeaderKDBX) {
+                                header: DatabaseHeaderKDBX,
+                                binaryWritePipeline: BinaryWritePipeline) {
 
         var readStream = true
         while (readStream) {
@@ -276,11 +296,8 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
                     // No compression at this level
                     val protectedBinary = mDatabase.buildNewBinaryAttachment(
                             isRAMSufficient.invoke(byteLength.toLong()), false, protectedFlag)
-                    protectedBinary.getOutputDataStream(mDatabase.binaryCache).use { outputStream ->
-                        dataInputStream.readBytes(byteLength) { buffer ->
-                            outputStream.write(buffer)
-                        }
-                    }
+                    // Hash and encryption in the cache are done in background
+                    binaryWritePipeline.write(protectedBinary, byteLength, dataInputStream)
                 }
             }
         }
@@ -784,6 +801,11 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
                 ctxEntry?.nodeId = mDatabase.newEntryId()
 
             if (entryInHistory) {
+                ctxHistoryBase?.let { historyBase ->
+                    ctxEntry?.let { historyEntry ->
+                        shareHistoryFields(historyBase, historyEntry)
+                    }
+                }
                 ctxEntry = ctxHistoryBase
                 return KdbContext.EntryHistory
             } else if (ctxEntry != null) {
@@ -966,6 +988,18 @@ class DatabaseInputKDBX(database: DatabaseKDBX)
         }
     }
 
+    /**
+     * Share the unchanged fields of a history snapshot with the previous snapshot
+     * and with the entry, the strings of the entry are read before its history
+     */
+    private fun shareHistoryFields(historyBase: EntryKDBX, historyEntry: EntryKDBX) {
+        val history = historyBase.history
+        if (history.size > 1) {
+            historyEntry.shareFieldsWith(history[history.size - 2])
+        }
+        historyEntry.shareFieldsWith(historyBase)
+    }
+
     @Throws(XmlPullParserException::class, IOException::class)
     private fun readProtectedString(xpp: XmlPullParser): ProtectedString {
         val buf = readProtectedBase64String(xpp)
@@ -48,6 +48,7 @@ import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX
 import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX.Companion.FILE_VERSION_40
 import com.kunzisoft.keepass.database.file.DatabaseHeaderKDBX.Companion.FILE_VERSION_41
 import com.kunzisoft.keepass.database.file.DatabaseKDBXXML
+import com.kunzisoft.keepass.stream.AsyncBlockOutputStream
 import com.kunzisoft.keepass.stream.HashedBlockOutputStream
 import com.kunzisoft.keepass.stream.HmacBlockOutputStream
 import com.kunzisoft.keepass.utils.UnsignedInt
@@ -76,12 +77,18 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
     private var header: DatabaseHeaderKDBX? = null
     private var hashOfHeader: ByteArray? = null
     private var headerHmac: ByteArray? = null
+    // Deduplicated index of each attachment, computed once the binaries are written in the header
+    private val binaryIndexesByKey by lazy {
+        mDatabaseKDBX.attachmentPool.getBinaryIndexesByKey()
+    }
 
     @Throws(DatabaseOutputException::class)
     override fun writeDatabase(outputStream: OutputStream,
                                assignMasterKey: () -> Unit) {
 
         try {
+            // Attachments still written in background after the load
+            mDatabaseKDBX.binaryCache.awaitAllWrites()
             header = outputHeader(outputStream, assignMasterKey)
 
             val osPlain: OutputStream = if (header!!.version.isBefore(FILE_VERSION_40)) {
@@ -96,9 +103,17 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
                 attachStreamEncryptor(header!!, HmacBlockOutputStream(outputStream, mDatabaseKDBX.hmacKey!!))
             }
 
+            // Encryption and compression in their own thread, in parallel with the XML
+            val osEncrypted = if (PIPELINE_ENABLED)
+                AsyncBlockOutputStream(osPlain, "KdbxEncrypt")
+            else
+                osPlain
             when(mDatabaseKDBX.compressionAlgorithm) {
-                CompressionAlgorithm.GZIP -> GZIPOutputStream(osPlain)
-                else -> osPlain
+                CompressionAlgorithm.GZIP -> if (PIPELINE_ENABLED)
+                    AsyncBlockOutputStream(GZIPOutputStream(osEncrypted), "KdbxCompress")
+                else
+                    GZIPOutputStream(osEncrypted)
+                else -> osEncrypted
             }.use { xmlOutputStream ->
                 if (!header!!.version.isBefore(FILE_VERSION_40)) {
                     outputInnerHeader(mDatabaseKDBX, header!!, xmlOutputStream)
@@ -127,12 +142,12 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
 
         val binaryCache = database.binaryCache
         database.attachmentPool.doForEachOrderedBinaryWithoutDuplication { _, binary ->
-            // Force decompression to add binary in header
-            binary.decompress(binaryCache)
             // Write type binary
             dataOutputStream.writeByte(DatabaseHeaderKDBX.PwDbInnerHeaderV4Fields.Binary)
-            // Write size
-            dataOutputStream.write4BytesUInt(UnsignedInt.fromKotlinLong(binary.getSize() + 1))
+            // Write size, the binary is decompressed while written without changing the stored data
+            dataOutputStream.write4BytesUInt(
+                UnsignedInt.fromKotlinLong(binary.getDecompressedSize(binaryCache) + 1)
+            )
             // Write protected flag
             var flag = DatabaseHeaderKDBX.KdbxBinaryFlags.None
             if (binary.isProtected) {
@@ -140,7 +155,7 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
             }
             dataOutputStream.writeByte(flag)
 
-            binary.getInputDataStream(binaryCache).use { inputStream ->
+            binary.getUnGzipInputDataStream(binaryCache).use { inputStream ->
                 inputStream.readAllBytes { buffer ->
                     dataOutputStream.write(buffer)
                 }
@@ -299,7 +314,10 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
             mDatabaseKDBX.kdfParameters = KdfFactory.aesKdf.defaultParameters
         }
 
-        mDatabaseKDBX.randomizeKdfParameters()
+        // Keep the KDF seed if the transformed key can be reused
+        if (!mDatabaseKDBX.canReuseTransformedKey()) {
+            mDatabaseKDBX.randomizeKdfParameters()
+        }
 
         if (header.version.isBefore(FILE_VERSION_40)) {
             header.innerRandomStream = CrsAlgorithm.Salsa20
@@ -598,7 +616,7 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
     private fun writeEntryBinaries(binaries: LinkedHashMap<String, Int>) {
         for ((label, poolId) in binaries) {
             // Retrieve the right index with the poolId, don't use ref because of header in DatabaseV4
-            mDatabaseKDBX.attachmentPool.getBinaryIndexFromKey(poolId)?.toString()?.let { indexString ->
+            binaryIndexesByKey[poolId]?.toString()?.let { indexString ->
                 xml.startTag(null, DatabaseKDBXXML.ElemBinary)
                 xml.startTag(null, DatabaseKDBXXML.ElemKey)
                 xml.text(safeXmlString(label))
@@ -778,5 +796,7 @@ class DatabaseOutputKDBX(private val mDatabaseKDBX: DatabaseKDBX)
 
     companion object {
         private val TAG = DatabaseOutputKDBX::class.java.name
+        // No gain to expect with a single core
+        private val PIPELINE_ENABLED = Runtime.getRuntime().availableProcessors() > 1
     }
 }
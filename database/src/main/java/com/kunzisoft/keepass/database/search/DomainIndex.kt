@@ -0,0 +1,243 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import com.kunzisoft.keepass.database.element.node.NodeId
+import com.kunzisoft.keepass.utils.buildURLFromDomain
+import java.security.SecureRandom
+import java.util.Locale
+
+/**
+ * Index of the entries by the hosts of their URLs and by their application ids,
+ * to retrieve the candidates of an autofill search without comparing the domain of each entry.
+ *
+ * As in [SearchIndex], only hashes salted with a random key are stored and
+ * the candidates must then be checked with [SearchHelper.searchInEntry].
+ * A host is indexed with each of its parent domains to answer the sub-domain comparison
+ * of [com.kunzisoft.keepass.utils.hostInTheSameDomainAs] with hash lookups.
+ */
+class DomainIndex<EntryId> {
+
+    private val hashKey = SecureRandom().nextLong()
+
+    private val postings = HashMap<Long, HashSet<NodeId<EntryId>>>()
+    private val entryKeys = HashMap<NodeId<EntryId>, LongArray>()
+    // Entries with a placeholder in a URL, the resolved value is only known during the search
+    private val alwaysCandidates = LinkedHashSet<NodeId<EntryId>>()
+
+    /**
+     * False while the index is filled for the first time, no candidates are returned
+     */
+    @Volatile
+    var isReady = false
+
+    /**
+     * Index or re-index an entry, with each URL or web domain given by [urlValues]
+     * and each application id given by [appIdValues]
+     */
+    @Synchronized
+    fun putEntry(entryId: NodeId<EntryId>,
+                 urlValues: (action: (String) -> Unit) -> Unit,
+                 appIdValues: (action: (CharArray) -> Unit) -> Unit) {
+        removeEntry(entryId)
+        val keys = HashSet<Long>()
+        var containsPlaceholder = false
+        try {
+            urlValues { url ->
+                if (url.isNotEmpty()) {
+                    if (url.contains(PLACEHOLDER_START))
+                        containsPlaceholder = true
+                    addUrlKeys(url, keys)
+                }
+            }
+            appIdValues { appId ->
+                addTrigramKeys(appId, keys)
+            }
+        } catch (_: Exception) {
+            // Value not readable, the entry is checked for each search
+            containsPlaceholder = true
+        }
+        if (containsPlaceholder) {
+            alwaysCandidates.add(entryId)
+        }
+        val keyArray = keys.toLongArray()
+        keyArray.forEach { key ->
+            postings.getOrPut(key) { HashSet() }.add(entryId)
+        }
+        entryKeys[entryId] = keyArray
+    }
+
+    @Synchronized
+    fun removeEntry(entryId: NodeId<EntryId>) {
+        alwaysCandidates.remove(entryId)
+        entryKeys.remove(entryId)?.forEach { key ->
+            postings[key]?.let { entries ->
+                entries.remove(entryId)
+                if (entries.isEmpty())
+                    postings.remove(key)
+            }
+        }
+    }
+
+    /**
+     * Retrieve the ids of the entries which may match the domain or application id of [searchQuery],
+     * or null if the query cannot be answered by the index and all the entries must be checked
+     */
+    @Synchronized
+    fun getCandidates(searchQuery: SearchQuery): Set<NodeId<EntryId>>? {
+        if (!isReady || !isIndexable(searchQuery))
+            return null
+        val searchParameters = searchQuery.searchParameters
+        val result = LinkedHashSet<NodeId<EntryId>>(alwaysCandidates)
+        if (searchParameters.searchInUrls) {
+            addPostings(key(TYPE_RAW, searchQuery.query.lowercase(Locale.ROOT)), result)
+            searchQuery.queryHost?.lowercase(Locale.ROOT)?.let { queryHost ->
+                addPostings(key(TYPE_HOST, queryHost), result)
+                if (!searchParameters.searchBySubDomain) {
+                    // Entries in a sub-domain of the query
+                    addPostings(key(TYPE_PARENT, queryHost), result)
+                    // Entries in a parent domain of the query
+                    forEachParentDomain(queryHost) { parentDomain ->
+                        addPostings(key(TYPE_HOST, parentDomain), result)
+                    }
+                }
+            }
+        }
+        if (searchParameters.searchInAppIds) {
+            var candidates: HashSet<NodeId<EntryId>>? = null
+            for (word in searchQuery.words) {
+                val wordKeys = HashSet<Long>()
+                addTrigramKeys(word.toCharArray(), wordKeys)
+                for (wordKey in wordKeys) {
+                    val entries = postings[wordKey] ?: emptySet()
+                    if (candidates == null) {
+                        candidates = HashSet(entries)
+                    } else {
+                        candidates.retainAll(entries)
+                    }
+                    if (candidates.isEmpty())
+                        break
+                }
+            }
+            candidates?.let { result.addAll(it) }
+        }
+        return result
+    }
+
+    @Synchronized
+    fun clear() {
+        isReady = false
+        postings.clear()
+        entryKeys.clear()
+        alwaysCandidates.clear()
+    }
+
+    /**
+     * Only a domain search in the URLs or the application ids can be retrieved,
+     * the domain of the query must be readable and an application id long enough to contain a trigram
+     */
+    private fun isIndexable(searchQuery: SearchQuery): Boolean {
+        val searchParameters = searchQuery.searchParameters
+        return searchQuery.query.isNotEmpty()
+                && searchParameters.searchByDomain
+                && !searchParameters.isRegex
+                && !searchParameters.searchInTitles
+                && !searchParameters.searchInUsernames
+                && !searchParameters.searchInPasswords
+                && !searchParameters.searchInRelyingParty
+                && !searchParameters.searchInNotes
+                && !searchParameters.searchInUUIDs
+                && !searchParameters.searchInOTP
+                && !searchParameters.searchInOther
+                && (searchParameters.searchInUrls || searchParameters.searchInAppIds)
+                && (!searchParameters.searchInUrls || searchQuery.queryHost != null)
+                && (!searchParameters.searchInAppIds
+                    || searchQuery.words.any { it.length >= TRIGRAM_LENGTH })
+    }
+
+    private fun addPostings(key: Long, result: MutableSet<NodeId<EntryId>>) {
+        postings[key]?.let { result.addAll(it) }
+    }
+
+    private fun addUrlKeys(url: String, keys: MutableSet<Long>) {
+        // Same comparison as the search, the raw value first then the host
+        keys.add(key(TYPE_RAW, url.lowercase(Locale.ROOT)))
+        val host = try {
+            url.buildURLFromDomain()?.host
+        } catch (_: Exception) {
+            null
+        } ?: return
+        val normalizedHost = host.lowercase(Locale.ROOT)
+        keys.add(key(TYPE_HOST, normalizedHost))
+        forEachParentDomain(normalizedHost) { parentDomain ->
+            keys.add(key(TYPE_PARENT, parentDomain))
+        }
+    }
+
+    private fun addTrigramKeys(value: CharArray, keys: MutableSet<Long>) {
+        if (value.size < TRIGRAM_LENGTH)
+            return
+        for (i in 0..value.size - TRIGRAM_LENGTH) {
+            keys.add(mix(TYPE_TRIGRAM
+                    or (normalize(value[i]).code.toLong() shl 32)
+                    or (normalize(value[i + 1]).code.toLong() shl 16)
+                    or normalize(value[i + 2]).code.toLong()))
+        }
+    }
+
+    private fun key(type: Long, value: String): Long {
+        return mix(type or (value.hashCode().toLong() and 0xFFFFFFFFL))
+    }
+
+    private fun mix(value: Long): Long {
+        // Finalizer of SplitMix64 to spread the salted value
+        var hash = hashKey xor value
+        hash = (hash xor (hash ushr 30)) * -0x40a7b892e31b1a47L
+        hash = (hash xor (hash ushr 27)) * -0x6b2fb644ecceee15L
+        return hash xor (hash ushr 31)
+    }
+
+    companion object {
+        private const val TRIGRAM_LENGTH = 3
+        private const val PLACEHOLDER_START = '{'
+
+        // Kind of value in the upper bits of the hashed key
+        private const val TYPE_RAW = 1L shl 56
+        private const val TYPE_HOST = 2L shl 56
+        private const val TYPE_PARENT = 3L shl 56
+        private const val TYPE_TRIGRAM = 4L shl 56
+
+        // Same case folding as Char.equals(other, ignoreCase = true)
+        private fun normalize(char: Char): Char {
+            return char.uppercaseChar().lowercaseChar()
+        }
+
+        /**
+         * Call [action] with each domain after a dot in [host], ie: "domain.org" and "org" for "sub.domain.org"
+         */
+        private fun forEachParentDomain(host: String, action: (String) -> Unit) {
+            var index = host.indexOf('.')
+            while (index >= 0) {
+                action.invoke(host.substring(index + 1))
+                index = host.indexOf('.', index + 1)
+            }
+        }
+    }
+}
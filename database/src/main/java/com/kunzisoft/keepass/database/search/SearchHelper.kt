@@ -33,8 +33,6 @@ import com.kunzisoft.keepass.model.PasskeyEntryFields.isRelyingParty
 import com.kunzisoft.keepass.otp.OtpEntryFields.isOTP
 import com.kunzisoft.keepass.otp.OtpEntryFields.isOTPURIField
 import com.kunzisoft.keepass.utils.UUIDUtils.asHexString
-import com.kunzisoft.keepass.utils.contains
-import com.kunzisoft.keepass.utils.inTheSameDomainAs
 
 class SearchHelper {
 
@@ -45,6 +43,8 @@ class SearchHelper {
                                            fromGroup: NodeId<*>? = null,
                                            max: Int): Group? {
 
+        // Compile the query only once for all the entries
+        val searchQuery = SearchQuery(searchParameters)
         val searchGroup = database.createGroup(virtual = true)
         searchGroup?.title = "\"" + searchParameters.searchQuery + "\""
 
@@ -58,33 +58,57 @@ class SearchHelper {
             database.rootGroup
         }
         if (groupConditions(database, startGroup, searchParameters, allowCustomSearchable, max)) {
-            startGroup?.doForEachChild(
-                object : NodeHandler<Entry>() {
-                    override fun operate(node: Entry): Boolean {
-                        if (incrementEntry >= max)
-                            return false
-                        if (database.entryIsTemplate(node) && !searchParameters.searchInTemplates)
-                            return false
-                        if (entryContainsString(database, node, searchParameters)) {
-                            searchGroup?.addChildEntry(node)
-                            incrementEntry++
-                        }
-                        // Stop searching when we have max entries
-                        return incrementEntry < max
-                    }
-                },
-                object : NodeHandler<Group>() {
-                    override fun operate(node: Group): Boolean {
-                        return groupConditions(database,
-                            node,
-                            searchParameters,
-                            allowCustomSearchable,
-                            max
-                        )
+            val candidates = database.getSearchCandidates(searchQuery)
+            if (startGroup != null && candidates != null && candidates.size <= max) {
+                // Only check the entries retrieved by the search index
+                val groupsSearched = HashMap<NodeId<*>, Boolean>()
+                for (candidate in candidates) {
+                    if (incrementEntry >= max)
+                        break
+                    if (database.entryIsTemplate(candidate) && !searchParameters.searchInTemplates)
+                        continue
+                    if (groupIsSearched(database, candidate.parent, startGroup, groupsSearched,
+                            searchParameters, allowCustomSearchable, max)
+                        && entryContainsString(database, candidate, searchQuery)) {
+                        searchGroup?.addChildEntry(candidate)
+                        incrementEntry++
                     }
-                },
-                false
-            )
+                }
+            } else {
+                // More candidates than the limit are only checked in the order of the tree,
+                // to keep the same first results as without index
+                val candidateIds = candidates?.mapTo(HashSet()) { it.nodeId }
+                // Matching entries are added by their database node, the wrappers can be reused
+                startGroup?.doForEachChildWithReusedWrappers(
+                    object : NodeHandler<Entry>() {
+                        override fun operate(node: Entry): Boolean {
+                            if (incrementEntry >= max)
+                                return false
+                            if (candidateIds != null && !candidateIds.contains(node.nodeId))
+                                return true
+                            if (database.entryIsTemplate(node) && !searchParameters.searchInTemplates)
+                                return false
+                            if (entryContainsString(database, node, searchQuery)) {
+                                searchGroup?.addChildEntry(node)
+                                incrementEntry++
+                            }
+                            // Stop searching when we have max entries
+                            return incrementEntry < max
+                        }
+                    },
+                    object : NodeHandler<Group>() {
+                        override fun operate(node: Group): Boolean {
+                            return groupConditions(database,
+                                node,
+                                searchParameters,
+                                allowCustomSearchable,
+                                max
+                            )
+                        }
+                    },
+                    false
+                )
+            }
         }
 
         searchGroup?.getNumberOfChildEntries()
@@ -112,13 +136,38 @@ class SearchHelper {
             true
     }
 
+    /**
+     * Check the group conditions from [group] up to [startGroup],
+     * as it would be done by walking the tree from [startGroup]
+     */
+    private fun groupIsSearched(database: Database,
+                                group: Group?,
+                                startGroup: Group,
+                                groupsSearched: MutableMap<NodeId<*>, Boolean>,
+                                searchParameters: SearchParameters,
+                                allowCustomSearchable: Boolean,
+                                max: Int): Boolean {
+        if (group == null)
+            return false
+        if (group.nodeId == startGroup.nodeId)
+            return true
+        groupsSearched[group.nodeId]?.let {
+            return it
+        }
+        val searched = groupConditions(database, group, searchParameters, allowCustomSearchable, max)
+                && groupIsSearched(database, group.parent, startGroup, groupsSearched,
+                    searchParameters, allowCustomSearchable, max)
+        groupsSearched[group.nodeId] = searched
+        return searched
+    }
+
     private fun entryContainsString(database: Database,
                                     entry: Entry,
-                                    searchParameters: SearchParameters): Boolean {
+                                    searchQuery: SearchQuery): Boolean {
         // To search in field references
         database.startManageEntry(entry)
         // Search all strings in the entry
-        val searchFound = searchInEntry(entry, searchParameters)
+        val searchFound = searchInEntry(entry, searchQuery)
         database.stopManageEntry(entry)
 
         return searchFound
@@ -133,6 +182,17 @@ class SearchHelper {
             entry: Entry,
             searchParameters: SearchParameters
         ): Boolean {
+            return searchInEntry(entry, SearchQuery(searchParameters))
+        }
+
+        /**
+         * Return true if the compiled search query is found in available parameters
+         */
+        fun searchInEntry(
+            entry: Entry,
+            searchQuery: SearchQuery
+        ): Boolean {
+            val searchParameters = searchQuery.searchParameters
             // Search in Tags
             if (searchParameters.searchInTags) {
                 if (!entry.tags.containsAny(searchParameters.tagsToSearch))
@@ -140,7 +200,7 @@ class SearchHelper {
             }
 
             // Show all if the search string is empty
-            if (searchParameters.searchQuery.isEmpty())
+            if (searchQuery.query.isEmpty())
                 return searchParameters.allowEmptyQuery
 
             // Exclude entry expired
@@ -151,41 +211,36 @@ class SearchHelper {
 
             // Search all strings in the KDBX entry
             if (searchParameters.searchInTitles) {
-                if (checkSearchQuery(entry.title, searchParameters))
+                if (searchQuery.matches(entry.title))
                     return true
             }
             if (searchParameters.searchInUsernames) {
-                if (checkSearchQuery(entry.username, searchParameters))
+                if (searchQuery.matches(entry.username))
                     return true
             }
             if (searchParameters.searchInPasswords) {
-                if (checkSearchQuery(entry.password, searchParameters))
+                if (searchQuery.matches(entry.password))
                     return true
             }
             if (searchParameters.searchInAppIds) {
                 if (entry.getExtraFields().any { field ->
                         field.isAppId()
-                        && checkSearchQuery(field.protectedValue.charArrayValue, searchParameters)
+                        && searchQuery.matches(field.protectedValue.charArrayValue)
                     })
                     return true
             }
             if (searchParameters.searchInUrls) {
-                if (checkSearchQuery(entry.url, searchParameters) { stringToCheck, word ->
-                    specialWebDomainComparison(searchParameters, stringToCheck, word)
-                }) {
+                if (searchQuery.matchesUrl(entry.url)) {
                     return true
                 } else if (entry.getExtraFields().any { field ->
                         field.isWebDomain()
-                        && checkSearchQuery(field.protectedValue.toString(), searchParameters) { stringToCheck, word ->
-                            specialWebDomainComparison(searchParameters, stringToCheck, word)
-                        }
+                        && searchQuery.matchesUrl(field.protectedValue.toString())
                     }) {
                     return true
                 }
             }
             if (searchParameters.searchInRelyingParty) {
-                val relyingParty = searchParameters.searchQuery
-                val credentialIds = searchParameters.credentialIds
+                val relyingParty = searchQuery.query
                 val containsRelyingParty = entry.getExtraFields().any { field ->
                         field.isRelyingParty()
                                 && field.protectedValue.toString()
@@ -193,35 +248,27 @@ class SearchHelper {
                     }
                 // Check empty to allow any credential if not defined
                 val containsCredentialId =
-                    if (credentialIds.isEmpty())
+                    if (searchQuery.credentialIds.isEmpty())
                         true
                     else entry.getExtraFields().any { field ->
-                        field.isCredentialId() && credentialIds.any { credentialId ->
-                           checkSearchQuery(
-                               stringToCheck =  field.protectedValue.charArrayValue,
-                               searchParameters = SearchParameters().apply {
-                                   searchQuery = credentialId
-                                   caseSensitive = false
-                                   isRegex = false
-                               }
-                           )
-                        }
+                        field.isCredentialId()
+                                && searchQuery.matchesCredentialId(field.protectedValue.charArrayValue)
                     }
                 return containsRelyingParty && containsCredentialId
             }
             if (searchParameters.searchInNotes) {
-                if (checkSearchQuery(entry.notes, searchParameters))
+                if (searchQuery.matches(entry.notes))
                     return true
             }
             if (searchParameters.searchInUUIDs) {
                 val hexString = entry.nodeId.id.asHexString() ?: ""
-                if (checkSearchQuery(hexString, searchParameters))
+                if (searchQuery.matches(hexString))
                     return true
             }
             if (searchParameters.searchInOTP) {
                 if (entry.getExtraFields().any { field ->
                     field.isOTPURIField()
-                    && checkSearchQuery(field.protectedValue.charArrayValue, searchParameters)
+                    && searchQuery.matches(field.protectedValue.charArrayValue)
                 })
                     return true
             }
@@ -232,72 +279,11 @@ class SearchHelper {
                     && !field.isWebDomain()
                     && !field.isOTP()
                     && !field.isPasskey()
-                    && checkSearchQuery(field.protectedValue.charArrayValue, searchParameters)
+                    && searchQuery.matches(field.protectedValue.charArrayValue)
                 })
                     return true
             }
             return false
         }
-
-        private fun specialWebDomainComparison(
-            searchParameters: SearchParameters,
-            stringToCheck: String,
-            word: String
-        ): Boolean? {
-            return if (searchParameters.searchByDomain) {
-                try {
-                    stringToCheck.inTheSameDomainAs(
-                        value = word,
-                        sameSubDomain = searchParameters.searchBySubDomain
-                    )
-                } catch (_: Exception) {
-                    false
-                }
-            } else null
-        }
-
-        private fun checkSearchQuery(
-            stringToCheck: String,
-            searchParameters: SearchParameters,
-            specialComparison: ((check: String, word: String) -> Boolean?)? = null
-        ): Boolean {
-            return checkSearchQuery(stringToCheck.toCharArray(), searchParameters) { check, word ->
-                specialComparison?.invoke(String(check), word)
-            }
-        }
-
-        private fun checkSearchQuery(
-            stringToCheck: CharArray,
-            searchParameters: SearchParameters,
-            specialComparison: ((check: CharArray, word: String) -> Boolean?)? = null
-        ): Boolean {
-            /*
-            // TODO Search settings
-            var removeAccents = true <- Too much time, to study
-            */
-            if (stringToCheck.isEmpty())
-                return false
-            return if (searchParameters.isRegex) {
-                val regex = if (searchParameters.caseSensitive) {
-                    searchParameters.searchQuery
-                        .toRegex(RegexOption.DOT_MATCHES_ALL)
-                } else {
-                    searchParameters.searchQuery
-                        .toRegex(setOf(RegexOption.DOT_MATCHES_ALL, RegexOption.IGNORE_CASE))
-                }
-                regex.matches(String(stringToCheck))
-            } else {
-                specialComparison?.invoke(stringToCheck, searchParameters.searchQuery)
-                    ?: run {
-                        // Search with space separator #175
-                        var searchFound = true
-                        searchParameters.searchQuery.split(" ").forEach { word ->
-                            searchFound = searchFound
-                                    && stringToCheck.contains(word, !searchParameters.caseSensitive)
-                        }
-                        searchFound
-                    }
-            }
-        }
     }
 }
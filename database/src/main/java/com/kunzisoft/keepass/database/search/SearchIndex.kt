@@ -0,0 +1,188 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import com.kunzisoft.keepass.database.element.node.NodeId
+import java.security.SecureRandom
+
+/**
+ * Inverted index of trigrams to retrieve the entries which may contain a search query.
+ *
+ * Postings are only keyed by a trigram hash salted with a random key generated for each index,
+ * no value of the entries is stored. As different trigrams can share the same hash,
+ * the index only returns candidates which must then be checked with [SearchHelper.searchInEntry].
+ */
+class SearchIndex<EntryId> {
+
+    private val hashKey = SecureRandom().nextLong()
+
+    private val postings = HashMap<Int, HashSet<NodeId<EntryId>>>()
+    private val entryTrigrams = HashMap<NodeId<EntryId>, IntArray>()
+    // Entries containing field references, the resolved value is only known during the search
+    private val alwaysCandidates = LinkedHashSet<NodeId<EntryId>>()
+
+    /**
+     * False while the index is filled for the first time, no candidates are returned
+     */
+    @Volatile
+    var isReady = false
+
+    /**
+     * Index or re-index an entry, with each searchable value given by [searchableValues]
+     */
+    @Synchronized
+    fun putEntry(entryId: NodeId<EntryId>,
+                 searchableValues: (action: (CharArray) -> Unit) -> Unit) {
+        removeEntry(entryId)
+        val trigrams = HashSet<Int>()
+        var containsReference = false
+        try {
+            searchableValues { value ->
+                if (!containsReference && containsReference(value))
+                    containsReference = true
+                addTrigrams(value, trigrams)
+            }
+        } catch (_: Exception) {
+            // Value not readable, the entry is checked for each search
+            containsReference = true
+        }
+        if (containsReference) {
+            alwaysCandidates.add(entryId)
+        }
+        val trigramArray = trigrams.toIntArray()
+        trigramArray.forEach { trigram ->
+            postings.getOrPut(trigram) { HashSet() }.add(entryId)
+        }
+        entryTrigrams[entryId] = trigramArray
+    }
+
+    @Synchronized
+    fun removeEntry(entryId: NodeId<EntryId>) {
+        alwaysCandidates.remove(entryId)
+        entryTrigrams.remove(entryId)?.forEach { trigram ->
+            postings[trigram]?.let { entries ->
+                entries.remove(entryId)
+                if (entries.isEmpty())
+                    postings.remove(trigram)
+            }
+        }
+    }
+
+    /**
+     * Retrieve the ids of the entries which may match [searchQuery],
+     * or null if the query cannot be answered by the index and all the entries must be checked
+     */
+    @Synchronized
+    fun getCandidates(searchQuery: SearchQuery): Set<NodeId<EntryId>>? {
+        if (!isReady || !isIndexable(searchQuery))
+            return null
+        var candidates: HashSet<NodeId<EntryId>>? = null
+        for (word in searchQuery.words) {
+            val wordTrigrams = HashSet<Int>()
+            addTrigrams(word.toCharArray(), wordTrigrams)
+            for (trigram in wordTrigrams) {
+                val entries = postings[trigram] ?: emptySet()
+                if (candidates == null) {
+                    candidates = HashSet(entries)
+                } else {
+                    candidates.retainAll(entries)
+                }
+                if (candidates.isEmpty())
+                    break
+            }
+        }
+        val result = LinkedHashSet<NodeId<EntryId>>(alwaysCandidates)
+        candidates?.let { result.addAll(it) }
+        return result
+    }
+
+    @Synchronized
+    fun clear() {
+        isReady = false
+        postings.clear()
+        entryTrigrams.clear()
+        alwaysCandidates.clear()
+    }
+
+    /**
+     * Only a query of words in the indexed fields can be retrieved,
+     * at least one word must be long enough to contain a trigram
+     */
+    private fun isIndexable(searchQuery: SearchQuery): Boolean {
+        val searchParameters = searchQuery.searchParameters
+        return searchQuery.query.isNotEmpty()
+                && !searchParameters.isRegex
+                && !searchParameters.searchByDomain
+                && !searchParameters.searchInPasswords
+                && !searchParameters.searchInUUIDs
+                && !searchParameters.searchInRelyingParty
+                && searchQuery.words.any { it.length >= TRIGRAM_LENGTH }
+    }
+
+    private fun addTrigrams(value: CharArray, trigrams: MutableSet<Int>) {
+        if (value.size < TRIGRAM_LENGTH)
+            return
+        for (i in 0..value.size - TRIGRAM_LENGTH) {
+            trigrams.add(trigramHash(
+                normalize(value[i]),
+                normalize(value[i + 1]),
+                normalize(value[i + 2])
+            ))
+        }
+    }
+
+    private fun trigramHash(c0: Char, c1: Char, c2: Char): Int {
+        // Finalizer of SplitMix64 to spread the salted trigram
+        var hash = hashKey xor ((c0.code.toLong() shl 32)
+                or (c1.code.toLong() shl 16)
+                or c2.code.toLong())
+        hash = (hash xor (hash ushr 30)) * -0x40a7b892e31b1a47L
+        hash = (hash xor (hash ushr 27)) * -0x6b2fb644ecceee15L
+        hash = hash xor (hash ushr 31)
+        return hash.toInt()
+    }
+
+    companion object {
+        private const val TRIGRAM_LENGTH = 3
+        private const val REFERENCE_START = "{REF:"
+
+        // Same case folding as Char.equals(other, ignoreCase = true)
+        private fun normalize(char: Char): Char {
+            return char.uppercaseChar().lowercaseChar()
+        }
+
+        private fun containsReference(value: CharArray): Boolean {
+            if (value.size < REFERENCE_START.length)
+                return false
+            for (i in 0..value.size - REFERENCE_START.length) {
+                var match = true
+                for (j in REFERENCE_START.indices) {
+                    if (!value[i + j].equals(REFERENCE_START[j], ignoreCase = true)) {
+                        match = false
+                        break
+                    }
+                }
+                if (match)
+                    return true
+            }
+            return false
+        }
+    }
+}
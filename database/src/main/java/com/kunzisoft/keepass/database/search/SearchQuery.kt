@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import com.kunzisoft.keepass.utils.buildURLFromDomain
+import com.kunzisoft.keepass.utils.contains
+import com.kunzisoft.keepass.utils.hostInTheSameDomainAs
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * Compiled form of [SearchParameters], built once per search
+ * and reused for each field of each entry.
+ * Not thread safe, a query must be used by a single search at a time.
+ */
+class SearchQuery(val searchParameters: SearchParameters) {
+
+    val query: String = searchParameters.searchQuery
+    private val ignoreCase = !searchParameters.caseSensitive
+
+    // Search with space separator #175, the case is ignored during the comparison
+    val words: Array<String> = query.split(" ")
+        .filter { it.isNotEmpty() }
+        .toTypedArray()
+
+    private val matcher: Matcher? = if (searchParameters.isRegex) {
+        val flags = if (searchParameters.caseSensitive)
+            Pattern.DOTALL
+        else
+            Pattern.DOTALL or Pattern.CASE_INSENSITIVE or Pattern.UNICODE_CASE
+        Pattern.compile(query, flags).matcher("")
+    } else null
+
+    // Host of the query, only computed once for the domain comparison
+    private val byDomain = searchParameters.searchByDomain
+    private val bySubDomain = searchParameters.searchBySubDomain
+    val queryHost: String? = if (byDomain) {
+        try {
+            query.buildURLFromDomain()?.host
+        } catch (_: Exception) {
+            null
+        }
+    } else null
+
+    val credentialIds: Array<String> = searchParameters.credentialIds.toTypedArray()
+
+    // Reusable wrapper to give protected char arrays to the regex engine without copy
+    private val charArraySequence = CharArraySequence()
+
+    /**
+     * Return true if the query is found in [stringToCheck]
+     */
+    fun matches(stringToCheck: CharSequence): Boolean {
+        if (stringToCheck.isEmpty())
+            return false
+        matcher?.let {
+            return it.reset(stringToCheck).matches()
+        }
+        return containsAllWords(stringToCheck)
+    }
+
+    fun matches(stringToCheck: CharArray): Boolean {
+        if (stringToCheck.isEmpty())
+            return false
+        return try {
+            matches(charArraySequence.wrap(stringToCheck))
+        } finally {
+            charArraySequence.wrap(EMPTY)
+            matcher?.reset("")
+        }
+    }
+
+    /**
+     * Return true if [urlToCheck] matches the query,
+     * with the domain comparison if requested in search parameters
+     */
+    fun matchesUrl(urlToCheck: String): Boolean {
+        if (urlToCheck.isEmpty())
+            return false
+        if (matcher == null && byDomain) {
+            if (urlToCheck.equals(query, ignoreCase = true))
+                return true
+            return try {
+                urlToCheck.buildURLFromDomain()?.host
+                    .hostInTheSameDomainAs(queryHost, bySubDomain)
+            } catch (_: Exception) {
+                false
+            }
+        }
+        return matches(urlToCheck)
+    }
+
+    /**
+     * Return true if [stringToCheck] contains one of the credential ids
+     */
+    fun matchesCredentialId(stringToCheck: CharArray): Boolean {
+        if (stringToCheck.isEmpty())
+            return false
+        return credentialIds.any { credentialId ->
+            stringToCheck.contains(credentialId, ignoreCase = true)
+        }
+    }
+
+    private fun containsAllWords(stringToCheck: CharSequence): Boolean {
+        for (word in words) {
+            if (!stringToCheck.contains(word, ignoreCase))
+                return false
+        }
+        return true
+    }
+
+    /**
+     * Mutable view on a char array, to not create a String for each field checked
+     */
+    private class CharArraySequence : CharSequence {
+        private var chars: CharArray = EMPTY
+
+        fun wrap(chars: CharArray): CharArraySequence {
+            this.chars = chars
+            return this
+        }
+
+        override val length: Int
+            get() = chars.size
+
+        override fun get(index: Int): Char {
+            return chars[index]
+        }
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence {
+            return String(chars, startIndex, endIndex - startIndex)
+        }
+
+        override fun toString(): String {
+            return String(chars)
+        }
+    }
+
+    companion object {
+        private val EMPTY = CharArray(0)
+    }
+}
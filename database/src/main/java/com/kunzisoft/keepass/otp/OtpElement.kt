@@ -169,17 +169,11 @@ data class OtpElement(var otpModel: OtpModel = OtpModel()) {
             throw IllegalArgumentException()
     }
 
+    /**
+     * Token of the current period, computed once and shared by [OtpTokenCache]
+     */
     val token: CharArray
-        get() {
-            val secretBytes = secret ?: return charArrayOf()
-            return when (type) {
-                OtpType.HOTP -> TokenCalculator.getHotpToken(secretBytes, counter, digits, algorithm)
-                OtpType.TOTP -> when (tokenType) {
-                    OtpTokenType.STEAM -> TokenCalculator.getTotpSteamToken(secretBytes, period, digits, algorithm)
-                    else -> TokenCalculator.getTotpRfc6238Token(secretBytes, period, digits, algorithm)
-                }
-            }
-        }
+        get() = OtpTokenCache.getToken(otpModel)
 
     /**
      * Token with space each 3 digits
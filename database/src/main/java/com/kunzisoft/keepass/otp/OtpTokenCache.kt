@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.otp
+
+import com.kunzisoft.keepass.model.OtpModel
+import com.kunzisoft.keepass.utils.clear
+
+/**
+ * Tokens already computed for the current period of each OTP,
+ * shared by the views, the keyboard and the autofill which display the same token.
+ *
+ * A token is keyed by the OTP parameters and the time step (or the counter for a HOTP),
+ * so it is computed at most once per period. The cache is bounded and must be cleared
+ * when the database is closed to wipe the secrets.
+ */
+object OtpTokenCache {
+
+    private const val MAX_TOKENS = 64
+
+    private val tokens = object : LinkedHashMap<TokenKey, CharArray>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<TokenKey, CharArray>?): Boolean {
+            if (size > MAX_TOKENS) {
+                eldest?.let {
+                    it.key.clear()
+                    it.value.clear()
+                }
+                return true
+            }
+            return false
+        }
+    }
+
+    /**
+     * Retrieve the token of [otpModel] at [time] in seconds, a new array is returned for each call
+     */
+    fun getToken(otpModel: OtpModel,
+                 time: Long = System.currentTimeMillis() / 1000): CharArray {
+        val secret = otpModel.secret ?: return charArrayOf()
+        val moment = when (otpModel.type) {
+            OtpType.HOTP -> otpModel.counter
+            OtpType.TOTP -> time / otpModel.period
+        }
+        val key = TokenKey(otpModel, secret, moment)
+        synchronized(this) {
+            tokens[key]?.let { return it.copyOf() }
+        }
+        val token = when (otpModel.type) {
+            OtpType.HOTP -> TokenCalculator.getHotpToken(
+                secret, otpModel.counter, otpModel.digits, otpModel.algorithm
+            )
+            OtpType.TOTP -> when (otpModel.tokenType) {
+                OtpTokenType.STEAM -> TokenCalculator.getTotpSteamToken(
+                    secret, otpModel.period, time, otpModel.digits, otpModel.algorithm
+                )
+                else -> TokenCalculator.formatTokenString(
+                    TokenCalculator.getTotpRfc6238Token(
+                        secret, otpModel.period, time, otpModel.digits, otpModel.algorithm
+                    ), otpModel.digits
+                )
+            }
+        }
+        synchronized(this) {
+            key.secret = secret.copyOf()
+            tokens.put(key, token.copyOf())?.clear()
+        }
+        return token
+    }
+
+    @Synchronized
+    fun clear() {
+        tokens.forEach {
+            it.key.clear()
+            it.value.clear()
+        }
+        tokens.clear()
+    }
+
+    /**
+     * Parameters which define a token, the secret is only copied when the token is stored
+     */
+    private class TokenKey(otpModel: OtpModel,
+                           var secret: ByteArray,
+                           private val moment: Long) {
+        private val type = otpModel.type
+        private val tokenType = if (type == OtpType.TOTP) otpModel.tokenType else null
+        private val period = if (type == OtpType.TOTP) otpModel.period else 0
+        private val digits = otpModel.digits
+        private val algorithm = otpModel.algorithm
+        private val hashCode = (((((type.hashCode() * 31
+                + (tokenType?.hashCode() ?: 0)) * 31
+                + period) * 31
+                + digits) * 31
+                + algorithm.hashCode()) * 31
+                + moment.hashCode()) * 31 + secret.contentHashCode()
+
+        fun clear() {
+            secret.clear()
+        }
+
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other !is TokenKey) return false
+            return type == other.type
+                    && tokenType == other.tokenType
+                    && period == other.period
+                    && digits == other.digits
+                    && algorithm == other.algorithm
+                    && moment == other.moment
+                    && secret.contentEquals(other.secret)
+        }
+
+        override fun hashCode(): Int {
+            return hashCode
+        }
+    }
+}
@@ -23,7 +23,7 @@ package com.kunzisoft.keepass.otp
 import java.nio.ByteBuffer
 import java.security.InvalidKeyException
 import java.security.NoSuchAlgorithmException
-import java.text.NumberFormat
+import java.util.EnumMap
 import java.util.Locale
 import javax.crypto.Mac
 import javax.crypto.spec.SecretKeySpec
@@ -42,6 +42,13 @@ object TokenCalculator {
         'R', 'T', 'V', 'W', 'X', 'Y'
     )
 
+    // Mac instances reused by each thread, only initialized with the key for each token
+    private val MACS = object : ThreadLocal<EnumMap<HashAlgorithm, Mac>>() {
+        override fun initialValue(): EnumMap<HashAlgorithm, Mac> {
+            return EnumMap(HashAlgorithm::class.java)
+        }
+    }
+
     @Throws(NoSuchAlgorithmException::class, InvalidKeyException::class)
     private fun generateHash(
         algorithm: HashAlgorithm,
@@ -50,7 +57,8 @@ object TokenCalculator {
     ): ByteArray {
         val algo = "Hmac$algorithm"
 
-        val mac = Mac.getInstance(algo)
+        val macs = MACS.get()!!
+        val mac = macs[algorithm] ?: Mac.getInstance(algo).also { macs[algorithm] = it }
         mac.init(SecretKeySpec(key, algo))
 
         return mac.doFinal(data)
@@ -92,7 +100,23 @@ object TokenCalculator {
         digits: Int,
         algorithm: HashAlgorithm
     ): CharArray {
-        var fullToken = getTotpToken(secret, period, System.currentTimeMillis() / 1000, algorithm)
+        return getTotpSteamToken(
+            secret,
+            period,
+            System.currentTimeMillis() / 1000,
+            digits,
+            algorithm
+        )
+    }
+
+    fun getTotpSteamToken(
+        secret: ByteArray?,
+        period: Int,
+        time: Long,
+        digits: Int,
+        algorithm: HashAlgorithm
+    ): CharArray {
+        var fullToken = getTotpToken(secret, period, time, algorithm)
 
         val token = CharArray(digits)
         for (i in 0..<digits) {
@@ -134,12 +158,23 @@ object TokenCalculator {
         return r
     }
 
+    /**
+     * Decimal [token] padded with zeros up to [digits]
+     */
     fun formatTokenString(token: Int, digits: Int): CharArray {
-        val numberFormat = NumberFormat.getInstance(Locale.ENGLISH)
-        numberFormat.minimumIntegerDigits = digits
-        numberFormat.isGroupingUsed = false
-
-        return numberFormat.format(token.toLong()).toCharArray()
+        var value = token.toLong()
+        var length = 1
+        var power = 10L
+        while (power <= value) {
+            length++
+            power *= 10
+        }
+        val formattedToken = CharArray(maxOf(length, digits)) { '0' }
+        for (i in formattedToken.size - 1 downTo formattedToken.size - length) {
+            formattedToken[i] = '0' + (value % 10).toInt()
+            value /= 10
+        }
+        return formattedToken
     }
 
     enum class HashAlgorithm {
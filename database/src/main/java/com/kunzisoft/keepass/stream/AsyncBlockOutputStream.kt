@@ -0,0 +1,163 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.stream
+
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.io.OutputStream
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * Give the written bytes by blocks to a background thread which writes them in [baseStream],
+ * so the work of [baseStream] (compression, encryption) is done in parallel with the caller.
+ *
+ * The bytes are written in the same order, the output is identical to a direct write.
+ * The number of blocks waiting is bounded, the caller waits for the thread if needed.
+ * The first error of the thread is thrown at the next write or at the close,
+ * the stream must be closed to wait for the end of the writes and stop the thread.
+ */
+class AsyncBlockOutputStream(private val baseStream: OutputStream,
+                             threadName: String) : OutputStream() {
+
+    // Blocks ready to be filled, and blocks filled waiting to be written
+    private val freeBlocks = ArrayBlockingQueue<Block>(PENDING_BLOCKS)
+    private val filledBlocks = ArrayBlockingQueue<Block>(PENDING_BLOCKS)
+    private var block: Block
+    private var closed = false
+
+    @Volatile
+    private var writeError: Exception? = null
+    private val writeThread: Thread
+
+    init {
+        repeat(PENDING_BLOCKS) {
+            freeBlocks.add(Block())
+        }
+        block = freeBlocks.take()
+        writeThread = Thread({ writeBlocks() }, threadName).apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    @Throws(IOException::class)
+    override fun write(byte: Int) {
+        if (block.length == BLOCK_SIZE)
+            sendBlock()
+        block.data[block.length++] = byte.toByte()
+    }
+
+    @Throws(IOException::class)
+    override fun write(buffer: ByteArray, offset: Int, length: Int) {
+        var currentOffset = offset
+        var remaining = length
+        while (remaining > 0) {
+            if (block.length == BLOCK_SIZE)
+                sendBlock()
+            val copy = (BLOCK_SIZE - block.length).coerceAtMost(remaining)
+            System.arraycopy(buffer, currentOffset, block.data, block.length, copy)
+            block.length += copy
+            currentOffset += copy
+            remaining -= copy
+        }
+    }
+
+    /**
+     * Only give the current block to the thread, the base stream is flushed at the close
+     */
+    @Throws(IOException::class)
+    override fun flush() {
+        if (block.length > 0)
+            sendBlock()
+    }
+
+    @Throws(IOException::class)
+    private fun sendBlock() {
+        throwWriteError()
+        try {
+            filledBlocks.put(block)
+            block = freeBlocks.take()
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException("Interrupted while writing block")
+        }
+        block.length = 0
+    }
+
+    private fun writeBlocks() {
+        try {
+            while (true) {
+                val filledBlock = filledBlocks.take()
+                if (filledBlock === END_OF_STREAM)
+                    break
+                // After an error, the blocks are only released to not block the caller
+                if (writeError == null) {
+                    try {
+                        baseStream.write(filledBlock.data, 0, filledBlock.length)
+                    } catch (e: Exception) {
+                        writeError = e
+                    }
+                }
+                freeBlocks.put(filledBlock)
+            }
+        } catch (e: InterruptedException) {
+            if (writeError == null)
+                writeError = e
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun throwWriteError() {
+        writeError?.let {
+            throw it as? IOException ?: IOException("Unable to write block", it)
+        }
+    }
+
+    @Throws(IOException::class)
+    override fun close() {
+        if (closed)
+            return
+        closed = true
+        try {
+            try {
+                if (block.length > 0)
+                    filledBlocks.put(block)
+                filledBlocks.put(END_OF_STREAM)
+                writeThread.join()
+            } catch (e: InterruptedException) {
+                writeThread.interrupt()
+                throw InterruptedIOException("Interrupted while writing block")
+            }
+            throwWriteError()
+        } finally {
+            baseStream.close()
+        }
+    }
+
+    private class Block(size: Int = BLOCK_SIZE) {
+        val data = ByteArray(size)
+        var length = 0
+    }
+
+    companion object {
+        private const val BLOCK_SIZE = 64 * 1024
+        private const val PENDING_BLOCKS = 4
+        private val END_OF_STREAM = Block(0)
+    }
+}
@@ -20,31 +20,63 @@
 package com.kunzisoft.keepass.stream
 
 import com.kunzisoft.keepass.database.crypto.HmacBlock
-import com.kunzisoft.keepass.utils.UnsignedLong
 import com.kunzisoft.keepass.utils.bytes4ToUInt
-import com.kunzisoft.keepass.utils.clear
-import com.kunzisoft.keepass.utils.readBytesLength
-import com.kunzisoft.keepass.utils.uLongTo8Bytes
+import java.io.EOFException
 import java.io.IOException
 import java.io.InputStream
-import javax.crypto.Mac
+import java.io.InterruptedIOException
+import java.security.MessageDigest
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
 
-class HmacBlockInputStream(private val baseStream: InputStream, private val verify: Boolean, private val key: ByteArray) : InputStream() {
+/**
+ * Read the HMAC blocks of a KDBX 4 stream, each block is verified before its data is given.
+ *
+ * Block buffers are reused and only grow to the size of the largest block.
+ * With [readAhead], the next blocks are read and verified by a background thread
+ * while the current one is consumed, the stream must then be closed to stop the thread.
+ */
+class HmacBlockInputStream(private val baseStream: InputStream,
+                           private val verify: Boolean,
+                           key: ByteArray,
+                           readAhead: Boolean = false) : InputStream() {
 
-    private var buffer: ByteArray = ByteArray(0)
+    private val blockCalculator = HmacBlock.BlockCalculator(key)
+    private val storedHmac = ByteArray(32)
+    private val blockSizeBytes = ByteArray(4)
+    private var blockIndex = 0L
+
+    private var block = Block()
     private var bufferPos = 0
-    private var blockIndex = UnsignedLong(0L)
     private var endOfStream = false
+    private var blockError: IOException? = null
+
+    @Volatile
+    private var closed = false
+    private var readAheadThread: Thread? = null
+    // Blocks ready to be filled, and blocks verified waiting to be consumed
+    private val freeBlocks = ArrayBlockingQueue<Block>(READ_AHEAD_BLOCKS)
+    private val readBlocks = ArrayBlockingQueue<Block>(READ_AHEAD_BLOCKS)
+
+    init {
+        if (readAhead) {
+            repeat(READ_AHEAD_BLOCKS) {
+                freeBlocks.add(Block())
+            }
+            readAheadThread = Thread({ readAhead() }, "HmacBlockReadAhead").apply {
+                isDaemon = true
+                start()
+            }
+        }
+    }
 
     @Throws(IOException::class)
     override fun read(): Int {
-        if (endOfStream) return -1
-
-        if (bufferPos == buffer.size) {
-            if (!readSafeBlock()) return -1
+        if (bufferPos == block.length) {
+            if (!nextBlock()) return -1
         }
 
-        val output = (buffer[bufferPos]).toInt() and 0xFF
+        val output = (block.data[bufferPos]).toInt() and 0xFF
         bufferPos++
 
         return output
@@ -55,8 +87,8 @@ class HmacBlockInputStream(private val baseStream: InputStream, private val veri
         var offset = byteOffset
         var remaining = byteCount
         while (remaining > 0) {
-            if (bufferPos == buffer.size) {
-                if (!readSafeBlock()) {
+            if (bufferPos == block.length) {
+                if (!nextBlock()) {
                     val read = byteCount - remaining
                     return if (read <= 0) {
                         -1
@@ -66,8 +98,8 @@ class HmacBlockInputStream(private val baseStream: InputStream, private val veri
                 }
             }
 
-            val copy = (buffer.size - bufferPos).coerceAtMost(remaining)
-            System.arraycopy(buffer, bufferPos, outBuffer, offset, copy)
+            val copy = (block.length - bufferPos).coerceAtMost(remaining)
+            System.arraycopy(block.data, bufferPos, outBuffer, offset, copy)
             offset += copy
             bufferPos += copy
 
@@ -82,53 +114,97 @@ class HmacBlockInputStream(private val baseStream: InputStream, private val veri
         return read(outBuffer, 0, outBuffer.size)
     }
 
+    /**
+     * Make the next verified block current, return false at the end of the stream
+     */
     @Throws(IOException::class)
-    private fun readSafeBlock(): Boolean {
+    private fun nextBlock(): Boolean {
         if (endOfStream) return false
+        blockError?.let { throw it }
+        bufferPos = 0
+        if (readAheadThread == null) {
+            try {
+                readSafeBlock(block)
+            } catch (e: IOException) {
+                blockError = e
+                throw e
+            }
+        } else {
+            freeBlocks.offer(block)
+            block = try {
+                readBlocks.take()
+            } catch (e: InterruptedException) {
+                throw InterruptedIOException("Interrupted while reading block")
+            }
+            block.error?.let {
+                blockError = it
+                throw it
+            }
+        }
+        if (block.length == 0) {
+            endOfStream = true
+            return false
+        }
+        return true
+    }
 
-        val storedHmac = baseStream.readBytesLength(32)
-        if (storedHmac.size != 32) {
-            throw IOException("File corrupted")
+    /**
+     * Fill the free blocks in the background until the end of the stream or the first error
+     */
+    private fun readAhead() {
+        try {
+            while (!closed) {
+                val nextBlock = freeBlocks.poll(READ_AHEAD_TIMEOUT, TimeUnit.MILLISECONDS) ?: continue
+                try {
+                    readSafeBlock(nextBlock)
+                } catch (e: IOException) {
+                    nextBlock.error = e
+                }
+                readBlocks.put(nextBlock)
+                if (nextBlock.error != null || nextBlock.length == 0)
+                    break
+            }
+        } catch (_: InterruptedException) {
+            // Stream closed
         }
+    }
 
-        val pbBlockSize = baseStream.readBytesLength(4)
-        if (pbBlockSize.size != 4) {
+    @Throws(IOException::class)
+    private fun readSafeBlock(block: Block) {
+        block.error = null
+        block.length = 0
+        readFully(storedHmac, storedHmac.size)
+        readFully(blockSizeBytes, blockSizeBytes.size)
+        val blockSize = bytes4ToUInt(blockSizeBytes).toKotlinLong()
+        if (blockSize > Int.MAX_VALUE) {
             throw IOException("File corrupted")
         }
-        val blockSize = bytes4ToUInt(pbBlockSize)
-        bufferPos = 0
-
-        buffer = baseStream.readBytesLength(blockSize.toKotlinInt())
+        val length = blockSize.toInt()
+        if (block.data.size < length) {
+            block.data = ByteArray(length)
+        }
+        readFully(block.data, length)
+        block.length = length
 
         if (verify) {
-            val pbBlockIndex = uLongTo8Bytes(blockIndex)
-
-            val blockKey = HmacBlock.getHmacKey64(key, pbBlockIndex)
-            val hmac: Mac = HmacBlock.getHmacSha256(blockKey)
-            hmac.update(pbBlockIndex)
-            hmac.update(pbBlockSize)
-
-            if (buffer.isNotEmpty()) {
-                hmac.update(buffer)
-            }
-
-            val cmpHmac: ByteArray = hmac.doFinal()
-            blockKey.clear()
-
-            if (!cmpHmac.contentEquals(storedHmac)) {
+            val cmpHmac = blockCalculator.compute(blockIndex, blockSizeBytes, block.data, 0, length)
+            if (!MessageDigest.isEqual(cmpHmac, storedHmac)) {
                 throw IOException("Invalid Hmac")
             }
-
         }
 
-        blockIndex.plusOne()
+        blockIndex++
+    }
 
-        if (blockSize.toKotlinLong() == 0L) {
-            endOfStream = true
-            return false
+    @Throws(IOException::class)
+    private fun readFully(buffer: ByteArray, length: Int) {
+        var offset = 0
+        while (offset < length) {
+            val read = baseStream.read(buffer, offset, length - offset)
+            if (read < 0)
+                throw EOFException("File corrupted")
+            offset += read
         }
-
-        return true
     }
 
     override fun markSupported(): Boolean {
@@ -137,16 +213,52 @@ class HmacBlockInputStream(private val baseStream: InputStream, private val veri
 
     @Throws(IOException::class)
     override fun close() {
+        closed = true
+        readAheadThread?.let { thread ->
+            thread.interrupt()
+            try {
+                thread.join(READ_AHEAD_TIMEOUT)
+            } catch (_: InterruptedException) {
+                Thread.currentThread().interrupt()
+            }
+        }
+        readAheadThread = null
         baseStream.close()
     }
 
+    /**
+     * Skip in the verified blocks, the skipped data is verified but not copied
+     */
     @Throws(IOException::class)
     override fun skip(byteCount: Long): Long {
-        return 0
+        if (byteCount <= 0)
+            return 0
+        var remaining = byteCount
+        while (remaining > 0) {
+            if (bufferPos == block.length) {
+                if (!nextBlock())
+                    break
+            }
+            val skip = (block.length - bufferPos).toLong().coerceAtMost(remaining).toInt()
+            bufferPos += skip
+            remaining -= skip
+        }
+        return byteCount - remaining
     }
 
     @Throws(IOException::class)
     override fun available(): Int {
-        return buffer.size - bufferPos
+        return block.length - bufferPos
+    }
+
+    private class Block {
+        var data = ByteArray(0)
+        var length = 0
+        var error: IOException? = null
+    }
+
+    companion object {
+        private const val READ_AHEAD_BLOCKS = 3
+        private const val READ_AHEAD_TIMEOUT = 500L
     }
 }
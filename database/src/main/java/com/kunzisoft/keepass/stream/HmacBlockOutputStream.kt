@@ -20,21 +20,19 @@
 package com.kunzisoft.keepass.stream
 
 import com.kunzisoft.keepass.utils.UnsignedInt
-import com.kunzisoft.keepass.utils.UnsignedLong
 import com.kunzisoft.keepass.utils.uIntTo4Bytes
-import com.kunzisoft.keepass.utils.uLongTo8Bytes
 import com.kunzisoft.keepass.database.crypto.HmacBlock
 import java.io.IOException
 import java.io.OutputStream
-import javax.crypto.Mac
 
 class HmacBlockOutputStream(private val baseStream: OutputStream,
-                            private val key: ByteArray)
+                            key: ByteArray)
     : OutputStream() {
 
+    private val blockCalculator = HmacBlock.BlockCalculator(key)
     private val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
     private var bufferPos = 0
-    private var blockIndex = UnsignedLong(0L)
+    private var blockIndex = 0L
 
     @Throws(IOException::class)
     override fun close() {
@@ -79,25 +77,15 @@ class HmacBlockOutputStream(private val baseStream: OutputStream,
 
     @Throws(IOException::class)
     override fun write(oneByte: Int) {
-        val outByte = ByteArray(1)
+        val outByte = byteArrayOf(oneByte.toByte())
         write(outByte, 0, 1)
     }
 
     @Throws(IOException::class)
     private fun writeSafeBlock() {
-        val bufBlockIndex = uLongTo8Bytes(blockIndex)
         val blockSizeBuf = uIntTo4Bytes(UnsignedInt(bufferPos))
 
-        val blockKey = HmacBlock.getHmacKey64(key, bufBlockIndex)
-        val hmac: Mac = HmacBlock.getHmacSha256(blockKey)
-        hmac.update(bufBlockIndex)
-        hmac.update(blockSizeBuf)
-
-        if (bufferPos > 0) {
-            hmac.update(buffer, 0, bufferPos)
-        }
-
-        val blockHmac: ByteArray = hmac.doFinal()
+        val blockHmac = blockCalculator.compute(blockIndex, blockSizeBuf, buffer, 0, bufferPos)
         baseStream.write(blockHmac)
         baseStream.write(blockSizeBuf)
 
@@ -105,7 +93,7 @@ class HmacBlockOutputStream(private val baseStream: OutputStream,
             baseStream.write(buffer, 0, bufferPos)
         }
 
-        blockIndex.plusOne()
+        blockIndex++
         bufferPos = 0
     }
 }
@@ -20,6 +20,7 @@
 package com.kunzisoft.keepass.tasks
 
 import android.os.Bundle
+import com.kunzisoft.encrypt.argon2.Argon2Transformer
 import com.kunzisoft.keepass.database.element.Database
 import kotlin.math.max
 import kotlin.math.min
@@ -40,8 +41,13 @@ open class BenchmarkKdfRunnable(
         
         // Use a small number of rounds if current rounds are too high for a quick benchmark
         val testRounds = if (currentRounds > 0) currentRounds else engine.defaultKeyRounds
-        val time = measureTimeMillis {
-            engine.transform(masterKey, parameters)
+        val time = try {
+            measureTimeMillis {
+                engine.transform(masterKey, parameters)
+            }
+        } finally {
+            // Not kept for the next transformation, the benchmark can run with no database open
+            Argon2Transformer.releaseMemory()
         }
 
         if (time > 0) {
@@ -22,4 +22,5 @@ package com.kunzisoft.keepass.tasks
 interface ProgressTaskUpdater {
     fun retrievingDatabaseKey()
     fun decryptingDatabase()
+    fun encryptingDatabase()
 }
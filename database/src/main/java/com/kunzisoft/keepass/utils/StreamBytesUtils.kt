@@ -22,6 +22,8 @@ package com.kunzisoft.keepass.utils
 import com.kunzisoft.keepass.database.element.DateInstant
 import org.joda.time.DateTime
 import org.joda.time.Instant
+import java.io.File
+import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
@@ -51,6 +53,34 @@ fun InputStream.readAllBytes(bufferSize: Int = DEFAULT_BUFFER_SIZE,
     }
 }
 
+/**
+ * Copy the whole content of the file in [outputStream],
+ * through the file channels if the stream is backed by a file descriptor
+ */
+@Throws(IOException::class)
+fun File.transferTo(outputStream: OutputStream) {
+    this.inputStream().use { inputStream ->
+        if (outputStream is FileOutputStream) {
+            val inputChannel = inputStream.channel
+            val outputChannel = outputStream.channel
+            val size = inputChannel.size()
+            var position = 0L
+            while (position < size) {
+                position += inputChannel.transferTo(position, size - position, outputChannel)
+            }
+        } else {
+            val buffer = ByteArray(COPY_BUFFER_SIZE)
+            var read = inputStream.read(buffer)
+            while (read != -1) {
+                outputStream.write(buffer, 0, read)
+                read = inputStream.read(buffer)
+            }
+        }
+    }
+}
+
+private const val COPY_BUFFER_SIZE = 64 * 1024
+
 /**
  * Read number of bytes defined by [length] and invoke [readBytes] each time the buffer is full or no more data to read.
  */
@@ -68,8 +68,15 @@ fun String.buildURLFromDomain(): URL? {
 }
 
 fun URL.inTheSameDomainAs(url: URL?, sameSubDomain: Boolean = false): Boolean {
-    val hostA = this.host
-    val hostB = url?.host
+    return this.host.hostInTheSameDomainAs(url?.host, sameSubDomain)
+}
+
+/**
+ * Compare two already extracted hosts, useful to avoid rebuilding the same URL for each comparison
+ */
+fun String?.hostInTheSameDomainAs(host: String?, sameSubDomain: Boolean = false): Boolean {
+    val hostA = this
+    val hostB = host
     if (hostA == null)
         return false
     if (hostB == null)
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.tests.stream
+
+import com.kunzisoft.keepass.stream.HmacBlockInputStream
+import com.kunzisoft.keepass.stream.HmacBlockOutputStream
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+import kotlin.random.Random
+
+class HmacBlockTest {
+
+    private val key = Random.nextBytes(64)
+
+    private fun encode(data: ByteArray): ByteArray {
+        val outputStream = ByteArrayOutputStream()
+        HmacBlockOutputStream(outputStream, key).use { it.write(data) }
+        return outputStream.toByteArray()
+    }
+
+    private fun decode(inputStream: InputStream): ByteArray {
+        val decoded = ByteArrayOutputStream()
+        inputStream.use { stream ->
+            val buffer = ByteArray(1000)
+            var read: Int
+            while (stream.read(buffer).also { read = it } != -1) {
+                decoded.write(buffer, 0, read)
+            }
+        }
+        return decoded.toByteArray()
+    }
+
+    @Test
+    fun testReadWrite() {
+        for (size in listOf(0, 1, DEFAULT_BUFFER_SIZE, 3 * DEFAULT_BUFFER_SIZE + 17)) {
+            val data = Random.nextBytes(size)
+            val encoded = encode(data)
+            assertArrayEquals(data, decode(HmacBlockInputStream(
+                ByteArrayInputStream(encoded), true, key)))
+            assertArrayEquals(data, decode(HmacBlockInputStream(
+                ByteArrayInputStream(encoded), true, key, true)))
+        }
+    }
+
+    @Test
+    fun testWriteByte() {
+        val outputStream = ByteArrayOutputStream()
+        HmacBlockOutputStream(outputStream, key).use { it.write(0x42) }
+        val inputStream = HmacBlockInputStream(
+            ByteArrayInputStream(outputStream.toByteArray()), true, key)
+        assertEquals(0x42, inputStream.read())
+        assertEquals(-1, inputStream.read())
+    }
+
+    @Test
+    fun testSkip() {
+        val data = Random.nextBytes(3 * DEFAULT_BUFFER_SIZE)
+        HmacBlockInputStream(ByteArrayInputStream(encode(data)), true, key, true).use { inputStream ->
+            val position = DEFAULT_BUFFER_SIZE + 100L
+            assertEquals(position, inputStream.skip(position))
+            assertEquals(data[position.toInt()].toInt() and 0xFF, inputStream.read())
+            assertEquals(data.size - position - 1, inputStream.skip(data.size.toLong()))
+            assertEquals(-1, inputStream.read())
+        }
+    }
+
+    @Test
+    fun testInvalidHmac() {
+        val data = Random.nextBytes(2 * DEFAULT_BUFFER_SIZE)
+        val encoded = encode(data)
+        // Corrupt the data of the second block
+        encoded[2 * (32 + 4) + DEFAULT_BUFFER_SIZE + 10] =
+            (encoded[2 * (32 + 4) + DEFAULT_BUFFER_SIZE + 10] + 1).toByte()
+        for (readAhead in listOf(false, true)) {
+            HmacBlockInputStream(ByteArrayInputStream(encoded), true, key, readAhead).use { inputStream ->
+                // The first block is valid
+                assertEquals(DEFAULT_BUFFER_SIZE.toLong(), inputStream.skip(DEFAULT_BUFFER_SIZE.toLong()))
+                try {
+                    inputStream.read()
+                    fail("Corrupted block read")
+                } catch (e: IOException) {
+                    assertEquals("Invalid Hmac", e.message)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testWriteUnalignedParts() {
+        val data = Random.nextBytes(4 * DEFAULT_BUFFER_SIZE + 5)
+        val outputStream = ByteArrayOutputStream()
+        HmacBlockOutputStream(outputStream, key).use { blockOutputStream ->
+            var offset = 0
+            while (offset < data.size) {
+                val length = Random.nextInt(1, 20_000).coerceAtMost(data.size - offset)
+                blockOutputStream.write(data, offset, length)
+                offset += length
+            }
+        }
+        for (readAhead in listOf(false, true)) {
+            assertArrayEquals(data, decode(HmacBlockInputStream(
+                ByteArrayInputStream(outputStream.toByteArray()), true, key, readAhead)))
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element
+
+import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
+import com.kunzisoft.keepass.database.search.SearchParameters
+import com.kunzisoft.keepass.database.search.SearchQuery
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.thread
+import kotlin.concurrent.write
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [34])
+class DatabaseConcurrencyTest {
+
+    private fun buildDatabase(): Database {
+        return Database().apply {
+            createData("Stress", "Root", null)
+        }
+    }
+
+    private fun searchParameters(): SearchParameters {
+        return SearchParameters().apply {
+            searchQuery = ENTRY_TITLE
+        }
+    }
+
+    @Test
+    fun testModificationsWithConcurrentLookups() {
+        val database = buildDatabase()
+        val root = database.rootGroup!!
+        val errors = ConcurrentLinkedQueue<Throwable>()
+        val start = CountDownLatch(1)
+        val writersDone = AtomicBoolean(false)
+
+        val writers = (0 until WRITERS).map { writer ->
+            thread {
+                start.await()
+                try {
+                    val entries = mutableListOf<Entry>()
+                    repeat(ENTRIES_BY_WRITER) { i ->
+                        database.writeTree {
+                            database.createEntry()?.let { entry ->
+                                entry.title = "$ENTRY_TITLE $writer-$i"
+                                database.addEntryTo(entry, root)
+                                entries.add(entry)
+                            }
+                        }
+                        // Remove one entry of four
+                        if (i % 4 == 3) {
+                            database.writeTree {
+                                database.removeEntryFrom(entries.removeAt(0), root)
+                            }
+                        }
+                    }
+                } catch (e: Throwable) {
+                    errors.add(e)
+                }
+            }
+        }
+        val readers = (0 until READERS).map { reader ->
+            thread {
+                start.await()
+                try {
+                    while (!writersDone.get()) {
+                        if (reader % 2 == 0) {
+                            // Lookup of the user interface or the autofill
+                            database.createVirtualGroupFromSearch(searchParameters())
+                                ?.getChildEntries()
+                                ?.forEach { it.title }
+                        } else {
+                            // Walk of the tree as done by a save
+                            database.readTree {
+                                val count = root.getChildEntries().size
+                                root.getChildEntries().forEach { it.title }
+                                assertEquals(count, root.getChildEntries().size)
+                            }
+                        }
+                    }
+                } catch (e: Throwable) {
+                    errors.add(e)
+                }
+            }
+        }
+
+        start.countDown()
+        writers.forEach { it.join() }
+        writersDone.set(true)
+        readers.forEach { it.join() }
+
+        assertTrue(errors.joinToString { it.toString() }, errors.isEmpty())
+        val expected = WRITERS * (ENTRIES_BY_WRITER - ENTRIES_BY_WRITER / 4)
+        assertEquals(expected, root.getChildEntries().size)
+        assertEquals(expected,
+            database.createVirtualGroupFromSearch(searchParameters())?.getChildEntries()?.size)
+    }
+
+    @Test
+    fun testAttachmentRemovalWithConcurrentReaders() {
+        val database = buildDatabase()
+        val root = database.rootGroup!!
+        val errors = ConcurrentLinkedQueue<Throwable>()
+        val start = CountDownLatch(1)
+        val writersDone = AtomicBoolean(false)
+
+        val writers = (0 until WRITERS).map { writer ->
+            thread {
+                start.await()
+                try {
+                    val entries = mutableListOf<Entry>()
+                    repeat(ENTRIES_BY_WRITER) { i ->
+                        database.writeTree {
+                            database.createEntry()?.let { entry ->
+                                val entryInfo = entry.getEntryInfo(database, true)
+                                entryInfo.title = "$ENTRY_TITLE $writer-$i"
+                                database.buildNewBinaryAttachment()?.let { binary ->
+                                    entryInfo.attachments.add(Attachment("$writer-$i", binary))
+                                }
+                                entry.setEntryInfo(database, entryInfo)
+                                database.addEntryTo(entry, root)
+                                entries.add(entry)
+                            }
+                        }
+                        // Remove the attachment of one entry of four, as done by an entry edit
+                        if (i % 4 == 3) {
+                            database.writeTree {
+                                val entry = entries.removeAt(0)
+                                val entryInfo = entry.getEntryInfo(database, true)
+                                val attachments = entryInfo.attachments.toList()
+                                entryInfo.attachments.clear()
+                                entry.setEntryInfo(database, entryInfo)
+                                database.removeAttachmentsIfNotUsed(attachments)
+                            }
+                        }
+                    }
+                } catch (e: Throwable) {
+                    errors.add(e)
+                }
+            }
+        }
+        val readers = (0 until READERS).map {
+            thread {
+                start.await()
+                try {
+                    while (!writersDone.get()) {
+                        // Each attachment of the tree must be in the pool while it is streamed
+                        database.readTree {
+                            root.getChildEntries().forEach { entry ->
+                                entry.getAttachments(database.attachmentPool).forEach { attachment ->
+                                    assertNotNull(database.attachmentPool.getBinary(attachment.binaryData))
+                                }
+                            }
+                        }
+                    }
+                } catch (e: Throwable) {
+                    errors.add(e)
+                }
+            }
+        }
+
+        start.countDown()
+        writers.forEach { it.join() }
+        writersDone.set(true)
+        readers.forEach { it.join() }
+
+        assertTrue(errors.joinToString { it.toString() }, errors.isEmpty())
+        var binaries = 0
+        database.attachmentPool.doForEachBinary { _, _ -> binaries++ }
+        assertEquals(WRITERS * (ENTRIES_BY_WRITER - ENTRIES_BY_WRITER / 4), binaries)
+    }
+
+    @Test
+    fun testModificationsDuringIndexFill() {
+        val databaseKDBX = DatabaseKDBX("Stress", "Root")
+        val root = databaseKDBX.rootGroup!!
+        val entries = (0 until INDEXED_ENTRIES).map { i ->
+            databaseKDBX.createEntry().apply {
+                title = "$ENTRY_TITLE $i"
+                databaseKDBX.addEntryTo(this, root)
+            }
+        }
+        val treeLock = ReentrantReadWriteLock()
+        val errors = ConcurrentLinkedQueue<Throwable>()
+        val firstChunkIndexed = CountDownLatch(1)
+        val writerDone = CountDownLatch(1)
+        val chunks = AtomicInteger(0)
+        val indexDone = AtomicBoolean(false)
+        val indexTask = databaseKDBX.createSearchIndex { chunk ->
+            treeLock.read(chunk)
+            if (chunks.getAndIncrement() == 0) {
+                firstChunkIndexed.countDown()
+                // The writer cannot get the lock if it is kept for the whole fill
+                writerDone.await(10, TimeUnit.SECONDS)
+            }
+        }
+        val indexer = thread {
+            try {
+                indexTask.run()
+            } catch (e: Throwable) {
+                errors.add(e)
+            } finally {
+                indexDone.set(true)
+            }
+        }
+        val addedEntries = mutableListOf<EntryKDBX>()
+        val writtenDuringFill = AtomicBoolean(false)
+        val writer = thread {
+            try {
+                firstChunkIndexed.await()
+                treeLock.write {
+                    // Entries not indexed yet and entries already indexed
+                    entries.filterIndexed { i, _ -> i % 10 == 0 }.forEach { entry ->
+                        databaseKDBX.removeEntryFrom(entry, root)
+                    }
+                    repeat(ENTRIES_BY_WRITER) { i ->
+                        addedEntries.add(databaseKDBX.createEntry().apply {
+                            title = "$ENTRY_TITLE added $i"
+                            databaseKDBX.addEntryTo(this, root)
+                        })
+                    }
+                }
+                writtenDuringFill.set(!indexDone.get())
+            } catch (e: Throwable) {
+                errors.add(e)
+            } finally {
+                writerDone.countDown()
+            }
+        }
+        val reader = thread {
+            try {
+                while (!indexDone.get()) {
+                    treeLock.read {
+                        databaseKDBX.getSearchCandidates(SearchQuery(searchParameters()))
+                            ?.forEach { databaseKDBX.getEntryById(it)?.title }
+                    }
+                }
+            } catch (e: Throwable) {
+                errors.add(e)
+            }
+        }
+        writer.join()
+        indexer.join()
+        reader.join()
+
+        assertTrue(errors.joinToString { it.toString() }, errors.isEmpty())
+        assertTrue(writtenDuringFill.get())
+        assertTrue(chunks.get() > 2)
+        val expected = (entries.filterIndexed { i, _ -> i % 10 != 0 } + addedEntries)
+            .map { it.nodeId }.toSet()
+        assertEquals(expected,
+            databaseKDBX.getSearchCandidates(SearchQuery(searchParameters()))?.toSet())
+    }
+
+    companion object {
+        private const val ENTRY_TITLE = "stress"
+        private const val WRITERS = 2
+        private const val READERS = 4
+        private const val ENTRIES_BY_WRITER = 200
+        private const val INDEXED_ENTRIES = 1000
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element
+
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
+import com.kunzisoft.keepass.database.element.group.GroupKDBX
+import com.kunzisoft.keepass.database.element.node.NodeHandler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.IdentityHashMap
+
+class GroupTraversalTest {
+
+    private fun buildTree(root: GroupKDBX, depth: Int, groupsByLevel: Int, entriesByGroup: Int) {
+        repeat(entriesByGroup) {
+            root.addChildEntry(EntryKDBX())
+        }
+        if (depth > 0) {
+            repeat(groupsByLevel) {
+                val group = GroupKDBX()
+                root.addChildGroup(group)
+                buildTree(group, depth - 1, groupsByLevel, entriesByGroup)
+            }
+        }
+    }
+
+    // Previous recursive traversal, used as reference of the visit order
+    private fun visitRecursively(group: GroupKDBX, visit: MutableList<Any>) {
+        group.getChildEntries().forEach { visit.add(it.nodeId) }
+        group.getChildGroups().forEach {
+            visit.add(it.nodeId)
+            visitRecursively(it, visit)
+        }
+    }
+
+    private fun visit(group: Group, reuseWrappers: Boolean, visit: MutableList<Any>,
+                      wrappers: MutableMap<Any, Boolean>) {
+        val entryHandler = object : NodeHandler<Entry>() {
+            override fun operate(node: Entry): Boolean {
+                visit.add(node.nodeId)
+                wrappers[node] = true
+                return true
+            }
+        }
+        val groupHandler = object : NodeHandler<Group>() {
+            override fun operate(node: Group): Boolean {
+                visit.add(node.nodeId)
+                wrappers[node] = true
+                return true
+            }
+        }
+        if (reuseWrappers)
+            group.doForEachChildWithReusedWrappers(entryHandler, groupHandler)
+        else
+            group.doForEachChild(entryHandler, groupHandler)
+    }
+
+    @Test
+    fun testVisitOrder() {
+        val root = GroupKDBX()
+        buildTree(root, 3, 3, 2)
+        val expected = mutableListOf<Any>()
+        visitRecursively(root, expected)
+
+        val visited = mutableListOf<Any>()
+        val wrappers = IdentityHashMap<Any, Boolean>()
+        visit(Group(root), false, visited, wrappers)
+        assertEquals(expected, visited)
+        assertEquals(expected.size, wrappers.size)
+
+        val visitedWithReusedWrappers = mutableListOf<Any>()
+        val reusedWrappers = IdentityHashMap<Any, Boolean>()
+        visit(Group(root), true, visitedWithReusedWrappers, reusedWrappers)
+        assertEquals(expected, visitedWithReusedWrappers)
+        // A single entry wrapper and a single group wrapper
+        assertEquals(2, reusedWrappers.size)
+    }
+
+    @Test
+    fun testStopIteration() {
+        val root = GroupKDBX()
+        buildTree(root, 2, 2, 1)
+        val firstGroup = root.getChildGroups()[0]
+        val visited = mutableListOf<Any>()
+        // Refused child group, its children are not visited but the traversal continues
+        val result = root.doForEachChild(
+            object : NodeHandler<EntryKDBX>() {
+                override fun operate(node: EntryKDBX): Boolean {
+                    visited.add(node.nodeId)
+                    return true
+                }
+            },
+            object : NodeHandler<GroupKDBX>() {
+                override fun operate(node: GroupKDBX): Boolean {
+                    return node != firstGroup
+                }
+            },
+            false
+        )
+        val expected = mutableListOf<Any>()
+        root.getChildEntries().forEach { expected.add(it.nodeId) }
+        val secondGroup = root.getChildGroups()[1]
+        secondGroup.getChildEntries().forEach { expected.add(it.nodeId) }
+        secondGroup.getChildGroups().forEach { group ->
+            group.getChildEntries().forEach { expected.add(it.nodeId) }
+        }
+        assertEquals(expected, visited)
+        assertTrue(result)
+
+        // Stopped by a direct child group
+        assertFalse(root.doForEachChild(null, object : NodeHandler<GroupKDBX>() {
+            override fun operate(node: GroupKDBX): Boolean {
+                return node != firstGroup
+            }
+        }))
+    }
+
+    @Test
+    fun testDeepTree() {
+        // Deeper than a recursive traversal would allow
+        val root = GroupKDBX()
+        var parent = root
+        repeat(100_000) {
+            val group = GroupKDBX()
+            parent.addChildGroup(group)
+            parent = group
+        }
+        var numberOfGroups = 0
+        Group(root).doForEachChildWithReusedWrappers(null, object : NodeHandler<Group>() {
+            override fun operate(node: Group): Boolean {
+                numberOfGroups++
+                return true
+            }
+        })
+        assertEquals(100_000, numberOfGroups)
+    }
+}
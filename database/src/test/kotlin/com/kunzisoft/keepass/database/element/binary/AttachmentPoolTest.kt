@@ -0,0 +1,98 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.binary
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AttachmentPoolTest {
+
+    private val binaryCache = BinaryCache()
+
+    private fun AttachmentPool.putBytes(key: Int, data: ByteArray): BinaryData {
+        return put(key) { uniqueBinaryId ->
+            binaryCache.getBinaryData(uniqueBinaryId, true)
+        }.binary.also { binaryData ->
+            binaryData.getOutputDataStream(binaryCache).use { it.write(data) }
+        }
+    }
+
+    @Test
+    fun testIndexesWithoutDuplication() {
+        val pool = AttachmentPool()
+        pool.putBytes(0, "first".toByteArray())
+        pool.putBytes(1, "second".toByteArray())
+        pool.putBytes(2, "first".toByteArray())
+        pool.putBytes(3, ByteArray(0))
+        pool.putBytes(4, ByteArray(0))
+
+        val indexes = pool.getBinaryIndexesByKey()
+        assertEquals(0, indexes[0])
+        assertEquals(1, indexes[1])
+        assertEquals(0, indexes[2])
+        // Empty binaries are not deduplicated
+        assertEquals(2, indexes[3])
+        assertEquals(3, indexes[4])
+        assertEquals(1, pool.getBinaryIndexFromKey(1))
+        assertNull(pool.getBinaryIndexFromKey(5))
+    }
+
+    @Test
+    fun testDuplicate() {
+        val pool = AttachmentPool()
+        val first = pool.putBytes(0, "first".toByteArray())
+        val second = pool.putBytes(1, "second".toByteArray())
+        val copy = pool.putBytes(2, "first".toByteArray())
+        assertTrue(pool.isBinaryDuplicate(first))
+        assertTrue(pool.isBinaryDuplicate(copy))
+        assertFalse(pool.isBinaryDuplicate(second))
+    }
+
+    @Test
+    fun testDuplicateAfterWriteAndRemove() {
+        val pool = AttachmentPool()
+        val first = pool.putBytes(0, "first".toByteArray())
+        val second = pool.putBytes(1, "second".toByteArray())
+        assertFalse(pool.isBinaryDuplicate(first))
+        // Content written again after the last check
+        second.getOutputDataStream(binaryCache).use { it.write("first".toByteArray()) }
+        assertTrue(pool.isBinaryDuplicate(first))
+        assertTrue(pool.isBinaryDuplicate(second))
+        pool.remove(1)
+        assertFalse(pool.isBinaryDuplicate(first))
+    }
+
+    @Test
+    fun testPutAndRemoveByBinary() {
+        val pool = AttachmentPool()
+        val first = pool.putBytes(0, "first".toByteArray())
+        val second = pool.putBytes(1, "second".toByteArray())
+        // Already in the pool, the key is retrieved
+        assertEquals(1, pool.put(second))
+        pool.remove(first)
+        assertNull(pool[0])
+        assertEquals(second, pool[1])
+        // The same key is used again
+        assertEquals(0, pool.put(first))
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.binary
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.SequenceInputStream
+import kotlin.random.Random
+
+class BinaryWritePipelineTest {
+
+    private val binaryCache = BinaryCache()
+
+    @Test
+    fun testWriteInOrder() {
+        val sizes = listOf(0, 10, 200 * 1024, 1, 70 * 1024)
+        val contents = sizes.map { Random.nextBytes(it) }
+        val trailer = "XML".toByteArray()
+        // Binaries followed by other data in the same stream
+        val inputStream = SequenceInputStream(
+            ByteArrayInputStream(contents.fold(ByteArray(0)) { acc, bytes -> acc + bytes }),
+            ByteArrayInputStream(trailer))
+
+        val pipeline = BinaryWritePipeline(binaryCache, threads = 2, maxChunks = 2)
+        val binaries = contents.mapIndexed { index, content ->
+            binaryCache.getBinaryData(index.toString(), true).also { binaryData ->
+                pipeline.write(binaryData, content.size, inputStream)
+            }
+        }
+        // The rest of the stream can be read before the binaries are written
+        assertArrayEquals(trailer, inputStream.readBytes())
+        pipeline.await()
+        pipeline.shutdown()
+
+        binaries.forEachIndexed { index, binaryData ->
+            assertEquals(contents[index].size.toLong(), binaryData.getSize())
+            assertArrayEquals(contents[index],
+                binaryData.getInputDataStream(binaryCache).use { it.readBytes() })
+        }
+    }
+
+    @Test
+    fun testReadWaitsForBackgroundWrite() {
+        val content = Random.nextBytes(300 * 1024)
+        val pipeline = BinaryWritePipeline(binaryCache, threads = 1, maxChunks = 8)
+        val binaryData = binaryCache.getBinaryData("background", true)
+        pipeline.write(binaryData, content.size, ByteArrayInputStream(content))
+        pipeline.finishInBackground()
+        pipeline.shutdown()
+        assertArrayEquals(content,
+            binaryData.getInputDataStream(binaryCache).use { it.readBytes() })
+        assertEquals(content.size.toLong(), binaryData.getSize())
+    }
+
+    @Test
+    fun testSizeAndDigestWaitForBackgroundWrite() {
+        val content = Random.nextBytes(500 * 1024)
+        val pipeline = BinaryWritePipeline(binaryCache, threads = 1, maxChunks = 8)
+        val binaryData = binaryCache.getBinaryData("digest", true)
+        val reference = binaryCache.getBinaryData("reference", true).apply {
+            getOutputDataStream(binaryCache).use { it.write(content) }
+        }
+        pipeline.write(binaryData, content.size, ByteArrayInputStream(content))
+        pipeline.finishInBackground()
+        pipeline.shutdown()
+        // Read before the content is read back, the write may still be in progress
+        assertEquals(content.size.toLong(), binaryData.getSize())
+        assertEquals(reference.contentKey(), binaryData.contentKey())
+    }
+}
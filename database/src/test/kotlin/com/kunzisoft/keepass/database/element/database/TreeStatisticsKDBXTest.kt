@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.database
+
+import com.kunzisoft.keepass.database.element.Attachment
+import com.kunzisoft.keepass.database.element.CustomDataItem
+import com.kunzisoft.keepass.database.element.Tags
+import com.kunzisoft.keepass.database.element.binary.AttachmentPool
+import com.kunzisoft.keepass.database.element.binary.BinaryData
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
+import com.kunzisoft.keepass.database.element.group.GroupKDBX
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TreeStatisticsKDBXTest {
+
+    @Test
+    fun testEmptyNodes() {
+        val statistics = TreeStatisticsKDBX(AttachmentPool())
+        statistics.visitGroup(GroupKDBX())
+        statistics.visitEntry(EntryKDBX())
+        assertFalse(statistics.containsGroupWithTags)
+        assertFalse(statistics.containsEntryWithPasswordQualityEstimationDisabled)
+        assertFalse(statistics.containsNodeCustomData)
+        assertTrue(statistics.linkedBinaries.isEmpty())
+    }
+
+    @Test
+    fun testCollectedInformation() {
+        val statistics = TreeStatisticsKDBX(AttachmentPool())
+        statistics.visitGroup(GroupKDBX().apply {
+            tags = Tags("group")
+        })
+        statistics.visitEntry(EntryKDBX().apply {
+            tags = Tags("entry")
+            qualityCheck = false
+        })
+        statistics.visitEntry(EntryKDBX().apply {
+            customData.put(CustomDataItem("key", "value"))
+        })
+        assertTrue(statistics.containsGroupWithTags)
+        assertTrue(statistics.containsEntryWithPasswordQualityEstimationDisabled)
+        assertTrue(statistics.containsNodeCustomData)
+    }
+
+    @Test
+    fun testRemoveUnlinkedAttachments() {
+        val database = DatabaseKDBX("Database", "Root")
+        val linkedBinary = database.buildNewBinaryAttachment(true, false, false)
+        val unlinkedBinary = database.buildNewBinaryAttachment(true, false, false)
+        database.createEntry().apply {
+            putAttachment(Attachment("linked", linkedBinary), database.attachmentPool)
+            database.addEntryTo(this, database.rootGroup)
+        }
+        assertTrue(database.getTreeStatistics().linkedBinaries.contains(linkedBinary))
+
+        database.removeUnlinkedAttachments(listOf(linkedBinary, unlinkedBinary), false)
+        val binaries = mutableListOf<BinaryData>()
+        database.attachmentPool.doForEachBinary { _, binary -> binaries.add(binary) }
+        assertEquals(listOf(linkedBinary), binaries)
+    }
+
+    @Test
+    fun testLinkedBinaryWrittenAfterTheWalk() {
+        val database = DatabaseKDBX("Database", "Root")
+        val linkedBinary = database.buildNewBinaryAttachment(true, false, false)
+        database.createEntry().apply {
+            putAttachment(Attachment("linked", linkedBinary), database.attachmentPool)
+            database.addEntryTo(this, database.rootGroup)
+        }
+        linkedBinary.getOutputDataStream(database.binaryCache).use { outputStream ->
+            outputStream.write("first part".toByteArray())
+            val linkedBinaries = database.getTreeStatistics().linkedBinaries
+            // Content still written in background after the walk
+            outputStream.write("second part".toByteArray())
+            assertTrue(linkedBinaries.contains(linkedBinary))
+        }
+
+        database.removeUnlinkedAttachments(listOf(linkedBinary), false)
+        assertTrue(database.attachmentPool.getBinary(linkedBinary) === linkedBinary)
+    }
+}
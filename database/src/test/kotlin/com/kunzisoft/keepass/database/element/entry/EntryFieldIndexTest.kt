@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.entry
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class EntryFieldIndexTest {
+
+    @Test
+    fun testReferenceDecodedWithLookupInAnotherThread() {
+        val titleIndex = EntryFieldIndex(EntryKDBX.STR_TITLE)
+        val usernameIndex = EntryFieldIndex(EntryKDBX.STR_USERNAME)
+        val target = EntryKDBX().apply {
+            title = "Target"
+            username = "target.user"
+        }
+        val reference = EntryKDBX().apply {
+            title = "{REF:U@I:46C9B1FFBD4ABC4BBB260C6190BAD20C}"
+        }
+        val entries = listOf(reference, target)
+        var found: EntryKDBX? = null
+        val lookup = thread {
+            found = titleIndex.find("Target".toCharArray(), entries) { entryWithReference ->
+                // The reference is resolved by another thread searching in both indexes
+                var resolved = charArrayOf()
+                thread {
+                    usernameIndex.find("target.user".toCharArray(), entries) { charArrayOf() }
+                    titleIndex.find("Other".toCharArray(), entries) { charArrayOf() }
+                    resolved = entryWithReference.username.toCharArray()
+                }.join()
+                resolved
+            }
+        }
+        lookup.join(TimeUnit.SECONDS.toMillis(10))
+        assertFalse("Lookup blocked", lookup.isAlive)
+        assertSame(target, found)
+    }
+
+    @Test
+    fun testReferenceDecodedOnceUntilModification() {
+        val titleIndex = EntryFieldIndex(EntryKDBX.STR_TITLE)
+        val target = EntryKDBX().apply {
+            title = "Target"
+        }
+        val references = (0 until 10).map {
+            EntryKDBX().apply {
+                title = "{REF:T@I:46C9B1FFBD4ABC4BBB260C6190BAD20C}"
+            }
+        }
+        val entries = references + target
+        var decodes = 0
+        val decode: (EntryKDBX) -> CharArray = {
+            decodes++
+            "Shared".toCharArray()
+        }
+        repeat(3) {
+            assertSame(target, titleIndex.find("Target".toCharArray(), entries, decode))
+        }
+        assertEquals(references.size, decodes)
+        assertSame(references[0], titleIndex.find("shared".toCharArray(), entries, decode))
+        assertEquals(references.size, decodes)
+        // The target of the references can be modified
+        titleIndex.updateEntry(target)
+        assertSame(references[0], titleIndex.find("Shared".toCharArray(), entries, decode))
+        assertEquals(references.size + 1, decodes)
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.entry
+
+import com.kunzisoft.keepass.database.element.Attachment
+import com.kunzisoft.keepass.database.element.DateInstant
+import com.kunzisoft.keepass.database.element.binary.AttachmentPool
+import com.kunzisoft.keepass.database.element.binary.BinaryCache
+import com.kunzisoft.keepass.database.element.security.ProtectedString
+import org.joda.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class EntryHistoryPruningTest {
+
+    private val attachmentPool = AttachmentPool()
+
+    private fun newEntry(title: String, time: Long): EntryKDBX {
+        return EntryKDBX().apply {
+            putField(EntryKDBX.STR_TITLE, ProtectedString(false, title))
+            lastModificationTime = DateInstant(Instant(time))
+        }
+    }
+
+    private fun EntryKDBX.historyTitles(): List<String> {
+        return history.map { it.title }
+    }
+
+    @Test
+    fun testRemoveOldestByItems() {
+        val entry = newEntry("current", 100)
+        // Not added in chronological order
+        entry.addEntryToHistory(newEntry("b", 20))
+        entry.addEntryToHistory(newEntry("a", 10))
+        entry.addEntryToHistory(newEntry("d", 40))
+        entry.addEntryToHistory(newEntry("c", 30))
+
+        val removed = entry.removeOldestEntriesFromHistory(2, -1, attachmentPool)
+        assertEquals(listOf("a", "b"), removed.map { it.title })
+        assertEquals(listOf("d", "c"), entry.historyTitles())
+    }
+
+    @Test
+    fun testRemoveOldestBySize() {
+        val entry = newEntry("current", 100)
+        entry.addEntryToHistory(newEntry("a", 10))
+        entry.addEntryToHistory(newEntry("b", 20))
+        entry.addEntryToHistory(newEntry("c", 30))
+        val itemSize = entry.history[0].getSize(attachmentPool)
+
+        val removed = entry.removeOldestEntriesFromHistory(-1, itemSize * 2, attachmentPool)
+        assertEquals(listOf("a"), removed.map { it.title })
+        assertEquals(listOf("b", "c"), entry.historyTitles())
+
+        assertEquals(listOf<EntryKDBX>(),
+            entry.removeOldestEntriesFromHistory(-1, -1, attachmentPool))
+        entry.removeOldestEntriesFromHistory(0, -1, attachmentPool)
+        assertEquals(listOf<String>(), entry.historyTitles())
+    }
+
+    @Test
+    fun testSizeUpdatedWhenModified() {
+        val entry = newEntry("current", 100)
+        val size = entry.getSize(attachmentPool)
+        entry.putField(EntryKDBX.STR_NOTES, ProtectedString(false, "notes"))
+        assertEquals(size + EntryKDBX.STR_NOTES.length + "notes".length,
+            entry.getSize(attachmentPool))
+        entry.overrideURL = "url"
+        assertEquals(size + EntryKDBX.STR_NOTES.length + "notes".length + "url".length,
+            entry.getSize(attachmentPool))
+    }
+
+    @Test
+    fun testSizeUpdatedWhenModifiedInPlace() {
+        val entry = newEntry("current", 100)
+        val size = entry.getSize(attachmentPool)
+        entry.tags.put("tag")
+        val sizeWithTags = entry.getSize(attachmentPool)
+        assertEquals(size + "tag".length, sizeWithTags)
+        entry.autoType.add("key", "value")
+        assertEquals(sizeWithTags + "key".length + "value".length,
+            entry.getSize(attachmentPool))
+    }
+
+    @Test
+    fun testSizeWithAttachmentWrittenLater() {
+        val binaryCache = BinaryCache()
+        val entry = newEntry("current", 100)
+        val size = entry.getSize(attachmentPool)
+        val binaryData = binaryCache.getBinaryData("attachment", true)
+        entry.putAttachment(Attachment("file", binaryData), attachmentPool)
+        assertEquals(size + "file".length, entry.getSize(attachmentPool))
+        binaryData.getOutputDataStream(binaryCache).use { it.write(ByteArray(42)) }
+        assertEquals(size + "file".length + 42, entry.getSize(attachmentPool))
+        entry.binaries.clear()
+        assertEquals(size, entry.getSize(attachmentPool))
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.entry
+
+import com.kunzisoft.keepass.database.element.security.ProtectedString
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class EntryHistorySharingTest {
+
+    private fun newEntry(password: String): EntryKDBX {
+        return EntryKDBX().apply {
+            putField(EntryKDBX.STR_TITLE, ProtectedString(false, "Title"))
+            putField(EntryKDBX.STR_USERNAME, ProtectedString(false, "User"))
+            putField(EntryKDBX.STR_PASSWORD, ProtectedString(true, password))
+        }
+    }
+
+    @Test
+    fun testCopyIsWrittenOnlyWhenModified() {
+        val entry = newEntry("password")
+        val snapshot = EntryKDBX().apply { updateWith(entry, copyHistory = false) }
+        assertSame(entry.getFieldValue(EntryKDBX.STR_PASSWORD),
+            snapshot.getFieldValue(EntryKDBX.STR_PASSWORD))
+
+        entry.putField(EntryKDBX.STR_PASSWORD, ProtectedString(true, "new password"))
+        assertEquals("new password", entry.getFieldValue(EntryKDBX.STR_PASSWORD).toString())
+        assertEquals("password", snapshot.getFieldValue(EntryKDBX.STR_PASSWORD).toString())
+        // Unchanged values are still shared
+        assertSame(entry.getFieldValue(EntryKDBX.STR_TITLE),
+            snapshot.getFieldValue(EntryKDBX.STR_TITLE))
+
+        snapshot.removeField(EntryKDBX.STR_USERNAME)
+        assertEquals("User", entry.getFieldValue(EntryKDBX.STR_USERNAME).toString())
+    }
+
+    @Test
+    fun testShareEqualFields() {
+        val entry = newEntry("new password")
+        val historyEntry = newEntry("password")
+        historyEntry.shareFieldsWith(entry)
+
+        assertSame(entry.getFieldValue(EntryKDBX.STR_TITLE),
+            historyEntry.getFieldValue(EntryKDBX.STR_TITLE))
+        assertSame(entry.getFieldValue(EntryKDBX.STR_USERNAME),
+            historyEntry.getFieldValue(EntryKDBX.STR_USERNAME))
+        assertNotSame(entry.getFieldValue(EntryKDBX.STR_PASSWORD),
+            historyEntry.getFieldValue(EntryKDBX.STR_PASSWORD))
+        assertEquals("password", historyEntry.getFieldValue(EntryKDBX.STR_PASSWORD).toString())
+        // Order of the fields is kept
+        assertEquals(entry.getFields().map { it.name }, historyEntry.getFields().map { it.name })
+    }
+
+    @Test
+    fun testShareIdenticalFields() {
+        val entry = newEntry("password")
+        val historyEntry = newEntry("password")
+        historyEntry.shareFieldsWith(entry)
+
+        historyEntry.putField(EntryKDBX.STR_URL, ProtectedString(false, "https://example.com"))
+        assertEquals(null, entry.getFieldValue(EntryKDBX.STR_URL))
+        assertEquals(3, entry.getFields().size)
+        assertEquals(4, historyEntry.getFields().size)
+    }
+}
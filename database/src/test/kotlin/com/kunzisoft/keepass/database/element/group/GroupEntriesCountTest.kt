@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.element.group
+
+import com.kunzisoft.keepass.database.element.DateInstant
+import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
+import com.kunzisoft.keepass.database.element.entry.EntryKDBX
+import com.kunzisoft.keepass.database.merge.DatabaseKDBXMerger
+import org.joda.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class GroupEntriesCountTest {
+
+    private fun addGroup(parent: GroupKDBX): GroupKDBX {
+        return GroupKDBX().also {
+            parent.addChildGroup(it)
+            it.parent = parent
+        }
+    }
+
+    private fun addEntry(parent: GroupKDBX): EntryKDBX {
+        return EntryKDBX().also {
+            parent.addChildEntry(it)
+            it.parent = parent
+        }
+    }
+
+    @Test
+    fun testCountAfterChanges() {
+        val root = GroupKDBX()
+        val first = addGroup(root)
+        val second = addGroup(root)
+        val subGroup = addGroup(first)
+        addEntry(root)
+        addEntry(first)
+        val entry = addEntry(subGroup)
+        assertEquals(3, root.getRecursiveNumberOfEntries(true))
+        assertEquals(2, first.getRecursiveNumberOfEntries(true))
+
+        addEntry(subGroup)
+        assertEquals(4, root.getRecursiveNumberOfEntries(true))
+
+        // Move the sub group
+        first.removeChildGroup(subGroup)
+        second.addChildGroup(subGroup)
+        subGroup.parent = second
+        assertEquals(1, first.getRecursiveNumberOfEntries(true))
+        assertEquals(2, second.getRecursiveNumberOfEntries(true))
+        assertEquals(4, root.getRecursiveNumberOfEntries(true))
+
+        subGroup.removeChildEntry(entry)
+        assertEquals(3, root.getRecursiveNumberOfEntries(true))
+        // Excluded tree
+        assertEquals(2, root.getRecursiveNumberOfEntries(true, second))
+    }
+
+    @Test
+    fun testCountWithExpiredNodes() {
+        val root = GroupKDBX()
+        val group = addGroup(root)
+        addEntry(group)
+        val entry = addEntry(group)
+        assertEquals(2, root.getRecursiveNumberOfEntries(false))
+
+        entry.expires = true
+        entry.expiryTime = DateInstant(Instant.now().minus(1000L))
+        group.updateChildEntry(entry)
+        assertEquals(1, root.getRecursiveNumberOfEntries(false))
+        assertEquals(2, root.getRecursiveNumberOfEntries(true))
+
+        // Expires soon, counted until its expiry time
+        entry.expiryTime = DateInstant(Instant.now().plus(200L))
+        group.updateChildEntry(entry)
+        assertEquals(2, root.getRecursiveNumberOfEntries(false))
+        Thread.sleep(400L)
+        assertEquals(1, root.getRecursiveNumberOfEntries(false))
+
+        group.expires = true
+        group.expiryTime = DateInstant(Instant.now().minus(1000L))
+        root.updateChildGroup(group)
+        assertEquals(0, root.getRecursiveNumberOfEntries(false))
+    }
+
+    @Test
+    fun testCountAfterMerge() {
+        val database = DatabaseKDBX("Database", "Root")
+        val root = database.rootGroup!!
+        val group = database.createGroup().also { database.addGroupTo(it, root) }
+        val entry = database.createEntry().also { database.addEntryTo(it, group) }
+        database.createEntry().also { database.addEntryTo(it, group) }
+        assertEquals(2, root.getRecursiveNumberOfEntries(false))
+
+        // Same nodes in another database, with the entry expired later
+        val databaseToMerge = DatabaseKDBX("Database", "Root")
+        val rootToMerge = databaseToMerge.rootGroup!!
+        val groupToMerge = databaseToMerge.createGroup().also {
+            it.nodeId = group.nodeId
+            it.lastModificationTime = group.lastModificationTime
+            databaseToMerge.addGroupTo(it, rootToMerge)
+        }
+        databaseToMerge.createEntry().also {
+            it.nodeId = entry.nodeId
+            it.expires = true
+            it.expiryTime = DateInstant(Instant.now().minus(1000L))
+            it.lastModificationTime = DateInstant(Instant.now().plus(1000L))
+            databaseToMerge.addEntryTo(it, groupToMerge)
+        }
+        databaseToMerge.createEntry().also { databaseToMerge.addEntryTo(it, rootToMerge) }
+
+        DatabaseKDBXMerger(database).merge(databaseToMerge)
+        database.clearEntriesCounts()
+        assertEquals(2, root.getRecursiveNumberOfEntries(false))
+        assertEquals(3, root.getRecursiveNumberOfEntries(true))
+        assertEquals(1, group.getRecursiveNumberOfEntries(false))
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
+import com.kunzisoft.keepass.database.element.node.NodeIdUUID
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.UUID
+
+class DomainIndexTest {
+
+    private val mailId = NodeIdUUID(UUID.randomUUID())
+    private val bankId = NodeIdUUID(UUID.randomUUID())
+    private val appId = NodeIdUUID(UUID.randomUUID())
+    private val referenceId = NodeIdUUID(UUID.randomUUID())
+
+    private fun buildIndex(): DomainIndex<UUID> {
+        return DomainIndex<UUID>().apply {
+            putEntry(mailId, { action ->
+                action("https://mail.example.com/inbox")
+            }, {})
+            putEntry(bankId, { action ->
+                action("bank.org")
+                action("https://login.bank.org")
+            }, {})
+            putEntry(appId, {}, { action ->
+                action("com.example.app".toCharArray())
+            })
+            putEntry(referenceId, { action ->
+                action("{REF:A@I:46C9B1FFBD4ABC4BBB260C6190BAD20C}")
+            }, {})
+            isReady = true
+        }
+    }
+
+    private fun query(query: String, block: SearchParameters.() -> Unit = {}): SearchQuery {
+        return SearchQuery(SearchParameters().apply {
+            searchQuery = query
+            searchInTitles = false
+            searchInUsernames = false
+            searchInPasswords = false
+            searchInAppIds = false
+            searchInUrls = true
+            searchByDomain = true
+            searchInNotes = false
+            searchInOTP = false
+            searchInOther = false
+            searchInUUIDs = false
+            block()
+        })
+    }
+
+    @Test
+    fun testDomainCandidates() {
+        val index = buildIndex()
+        // Sub-domain of the query
+        assertEquals(setOf(referenceId, mailId), index.getCandidates(query("example.com")))
+        // Parent domain of the query
+        assertEquals(setOf(referenceId, bankId), index.getCandidates(query("www.bank.org")))
+        assertEquals(setOf(referenceId), index.getCandidates(query("other.com")))
+        // Exactly the same sub-domain
+        assertEquals(setOf(referenceId, bankId),
+            index.getCandidates(query("login.bank.org") { searchBySubDomain = true }))
+        assertEquals(setOf(referenceId),
+            index.getCandidates(query("example.com") { searchBySubDomain = true }))
+    }
+
+    @Test
+    fun testAppIdCandidates() {
+        val index = buildIndex()
+        val candidates = index.getCandidates(query("COM.EXAMPLE.APP") {
+            searchInUrls = false
+            searchInAppIds = true
+        })
+        assertEquals(setOf(referenceId, appId), candidates)
+    }
+
+    @Test
+    fun testUpdateAndRemove() {
+        val index = buildIndex()
+        index.putEntry(bankId, { action ->
+            action("https://example.com")
+        }, {})
+        assertEquals(setOf(referenceId, mailId, bankId), index.getCandidates(query("example.com")))
+        assertEquals(setOf(referenceId), index.getCandidates(query("bank.org")))
+        index.removeEntry(mailId)
+        index.removeEntry(referenceId)
+        assertEquals(setOf(bankId), index.getCandidates(query("example.com")))
+    }
+
+    @Test
+    fun testNotIndexableQueries() {
+        val index = buildIndex()
+        assertNull(index.getCandidates(query("example.com") { searchByDomain = false }))
+        assertNull(index.getCandidates(query("example.com") { searchInTitles = true }))
+        assertNull(index.getCandidates(query("example.com") { isRegex = true }))
+        assertNull(index.getCandidates(query("ap") {
+            searchInUrls = false
+            searchInAppIds = true
+        }))
+        index.clear()
+        assertNull(index.getCandidates(query("example.com")))
+    }
+
+    @Test
+    fun testCandidatesInEntryOrder() {
+        val database = DatabaseKDBX("Database", "Root")
+        val root = database.rootGroup!!
+        val entries = (0 until 64).map { i ->
+            database.createEntry().apply {
+                url = "https://site$i.example.com"
+                database.addEntryTo(this, root)
+            }
+        }
+        database.createDomainIndex().run()
+        val candidates = database.getSearchCandidates(query("example.com"))
+        assertEquals(entries.map { it.nodeId }, candidates?.toList())
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import com.kunzisoft.keepass.database.element.database.DatabaseKDBX
+import com.kunzisoft.keepass.database.element.node.NodeIdUUID
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.UUID
+
+class SearchIndexTest {
+
+    private val mailId = NodeIdUUID(UUID.randomUUID())
+    private val bankId = NodeIdUUID(UUID.randomUUID())
+    private val referenceId = NodeIdUUID(UUID.randomUUID())
+
+    private fun buildIndex(): SearchIndex<UUID> {
+        return SearchIndex<UUID>().apply {
+            putEntry(mailId) { action ->
+                action("Personal Mail".toCharArray())
+                action("john.doe".toCharArray())
+            }
+            putEntry(bankId) { action ->
+                action("Bank".toCharArray())
+                action("https://bank.example.com".toCharArray())
+            }
+            putEntry(referenceId) { action ->
+                action("{REF:T@I:46C9B1FFBD4ABC4BBB260C6190BAD20C}".toCharArray())
+            }
+            isReady = true
+        }
+    }
+
+    private fun query(query: String, block: SearchParameters.() -> Unit = {}): SearchQuery {
+        return SearchQuery(SearchParameters().apply {
+            searchQuery = query
+            block()
+        })
+    }
+
+    @Test
+    fun testCandidates() {
+        val index = buildIndex()
+        val candidates = index.getCandidates(query("MAIL doe"))!!
+        assertTrue(candidates.contains(mailId))
+        assertFalse(candidates.contains(bankId))
+        // Field references are only resolved during the search
+        assertTrue(candidates.contains(referenceId))
+
+        val bankCandidates = index.getCandidates(query("example"))!!
+        assertEquals(setOf(bankId, referenceId), bankCandidates)
+    }
+
+    @Test
+    fun testUpdateAndRemove() {
+        val index = buildIndex()
+        index.putEntry(bankId) { action ->
+            action("Other mail".toCharArray())
+        }
+        assertTrue(index.getCandidates(query("mail"))!!.contains(bankId))
+        assertFalse(index.getCandidates(query("example"))!!.contains(bankId))
+        index.removeEntry(mailId)
+        index.removeEntry(referenceId)
+        assertEquals(setOf(bankId), index.getCandidates(query("mail")))
+    }
+
+    @Test
+    fun testNotIndexableQueries() {
+        val index = buildIndex()
+        assertNull(index.getCandidates(query("ma")))
+        assertNull(index.getCandidates(query("mail") { isRegex = true }))
+        assertNull(index.getCandidates(query("mail") { searchInPasswords = true }))
+        assertNull(index.getCandidates(query("bank.example.com") { searchByDomain = true }))
+        index.clear()
+        assertNull(index.getCandidates(query("mail")))
+    }
+
+    @Test
+    fun testCandidatesInEntryOrder() {
+        val database = DatabaseKDBX("Database", "Root")
+        val root = database.rootGroup!!
+        val entries = (0 until 64).map { i ->
+            database.createEntry().apply {
+                title = "Account $i"
+                database.addEntryTo(this, root)
+            }
+        }
+        database.createSearchIndex().run()
+        // An updated entry keeps its position
+        entries[3].title = "Account updated"
+        database.updateEntry(entries[3])
+        val candidates = database.getSearchCandidates(query("account"))
+        assertEquals(entries.map { it.nodeId }, candidates?.toList())
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ *  KeePassDX is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  KeePassDX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with KeePassDX.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.database.search
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SearchQueryTest {
+
+    private fun buildQuery(query: String, block: SearchParameters.() -> Unit = {}): SearchQuery {
+        return SearchQuery(SearchParameters().apply {
+            searchQuery = query
+            block()
+        })
+    }
+
+    @Test
+    fun testWords() {
+        val searchQuery = buildQuery("Mail  PERSO")
+        assertTrue(searchQuery.matches("Perso mail account"))
+        assertTrue(searchQuery.matches("Perso mail account".toCharArray()))
+        assertFalse(searchQuery.matches("Work mail account"))
+        assertFalse(searchQuery.matches(""))
+        assertFalse(searchQuery.matches(charArrayOf()))
+    }
+
+    @Test
+    fun testWordsKeptAsTyped() {
+        // Lowercase of the dotted capital I is longer than the character
+        val searchQuery = buildQuery("İstanbul")
+        assertTrue(searchQuery.matches("Trip to İstanbul"))
+        assertTrue(searchQuery.matches("Trip to İSTANBUL".toCharArray()))
+    }
+
+    @Test
+    fun testCaseSensitive() {
+        val searchQuery = buildQuery("Mail") { caseSensitive = true }
+        assertTrue(searchQuery.matches("Mail account"))
+        assertFalse(searchQuery.matches("mail account".toCharArray()))
+    }
+
+    @Test
+    fun testRegex() {
+        val searchQuery = buildQuery("^ma.l\\d+$") { isRegex = true }
+        assertTrue(searchQuery.matches("Mail42"))
+        assertTrue(searchQuery.matches("mail42".toCharArray()))
+        assertFalse(searchQuery.matches("mail42 "))
+        // The same compiled query can be reused
+        assertTrue(searchQuery.matches("MAIL1".toCharArray()))
+        val sensitiveQuery = buildQuery("^ma.l$") {
+            isRegex = true
+            caseSensitive = true
+        }
+        assertFalse(sensitiveQuery.matches("Mail"))
+        assertTrue(sensitiveQuery.matches("mail"))
+    }
+
+    @Test
+    fun testDomain() {
+        val searchQuery = buildQuery("domain.org") { searchByDomain = true }
+        assertTrue(searchQuery.matchesUrl("https://www.domain.org/login"))
+        assertTrue(searchQuery.matchesUrl("DOMAIN.ORG"))
+        assertFalse(searchQuery.matchesUrl("https://example.com/domain.org"))
+        val subDomainQuery = buildQuery("domain.org") {
+            searchByDomain = true
+            searchBySubDomain = true
+        }
+        assertTrue(subDomainQuery.matchesUrl("https://domain.org/login"))
+        assertFalse(subDomainQuery.matchesUrl("https://www.domain.org"))
+        // Without domain comparison, the URL is checked as a simple string
+        assertTrue(buildQuery("example.com/domain").matchesUrl("https://example.com/domain.org"))
+    }
+
+    @Test
+    fun testCredentialIds() {
+        val searchQuery = buildQuery("relying.party") {
+            credentialIds = listOf("AbCd")
+        }
+        assertTrue(searchQuery.matchesCredentialId("xxabcdxx".toCharArray()))
+        assertFalse(searchQuery.matchesCredentialId("xxabxx".toCharArray()))
+        assertFalse(searchQuery.matchesCredentialId(charArrayOf()))
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.otp
+
+import com.kunzisoft.keepass.model.OtpModel
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+class OtpTokenCacheTest {
+
+    private val rfc6238Secret = "12345678901234567890".toByteArray()
+
+    private fun totpModel(): OtpModel {
+        return OtpModel().apply {
+            type = OtpType.TOTP
+            tokenType = OtpTokenType.RFC6238
+            secret = rfc6238Secret.copyOf()
+            period = 30
+            digits = 8
+            algorithm = TokenCalculator.HashAlgorithm.SHA1
+        }
+    }
+
+    @After
+    fun clearCache() {
+        OtpTokenCache.clear()
+    }
+
+    @Test
+    fun testTotpToken() {
+        // Test vectors from RFC 6238
+        val otpModel = totpModel()
+        assertArrayEquals("94287082".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+        assertArrayEquals("07081804".toCharArray(), OtpTokenCache.getToken(otpModel, 1111111109))
+        // Same time step, token retrieved from the cache
+        assertArrayEquals("94287082".toCharArray(), OtpTokenCache.getToken(otpModel, 45))
+        assertArrayEquals("14050471".toCharArray(), OtpTokenCache.getToken(otpModel, 1111111111))
+    }
+
+    @Test
+    fun testTokenNotSharedBetweenParameters() {
+        val otpModel = totpModel()
+        assertArrayEquals("94287082".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+        otpModel.digits = 6
+        assertArrayEquals("287082".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+        otpModel.type = OtpType.HOTP
+        otpModel.counter = 0
+        assertArrayEquals("755224".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+        otpModel.counter = 1
+        assertArrayEquals("287082".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+    }
+
+    @Test
+    fun testReturnedTokenIsACopy() {
+        val otpModel = totpModel()
+        OtpTokenCache.getToken(otpModel, 59).fill('0')
+        assertArrayEquals("94287082".toCharArray(), OtpTokenCache.getToken(otpModel, 59))
+    }
+}
@@ -60,6 +60,8 @@ class TokenCalculatorTest {
         assertArrayEquals("000123".toCharArray(), TokenCalculator.formatTokenString(123, 6))
         assertArrayEquals("123456".toCharArray(), TokenCalculator.formatTokenString(123456, 6))
         assertArrayEquals("00000".toCharArray(), TokenCalculator.formatTokenString(0, 5))
+        assertArrayEquals("1234567".toCharArray(), TokenCalculator.formatTokenString(1234567, 6))
+        assertArrayEquals("0000001000".toCharArray(), TokenCalculator.formatTokenString(1000, 10))
     }
 
     @Test
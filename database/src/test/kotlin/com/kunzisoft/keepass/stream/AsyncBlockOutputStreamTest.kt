@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Jeremy Jamet / Kunzisoft.
+ *
+ * This file is part of KeePassDX.
+ *
+ * KeePassDX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeePassDX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeePassDX. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.kunzisoft.keepass.stream
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.Random
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+class AsyncBlockOutputStreamTest {
+
+    private val random = Random(42)
+
+    private fun writeByParts(outputStream: OutputStream, data: ByteArray) {
+        var offset = 0
+        while (offset < data.size) {
+            if (random.nextInt(10) == 0) {
+                outputStream.write(data[offset].toInt())
+                offset++
+            } else {
+                val length = random.nextInt(100_000).coerceAtMost(data.size - offset)
+                outputStream.write(data, offset, length)
+                offset += length
+            }
+        }
+    }
+
+    @Test
+    fun testSameOutputAsDirectWrite() {
+        val data = ByteArray(1_000_000).also { random.nextBytes(it) }
+
+        val output = ByteArrayOutputStream()
+        AsyncBlockOutputStream(output, "Write").use { writeByParts(it, data) }
+
+        assertArrayEquals(data, output.toByteArray())
+    }
+
+    @Test
+    fun testCompressionPipeline() {
+        // Compressible data over several blocks
+        val data = ByteArray(1_000_000) { (it % 251 + random.nextInt(4)).toByte() }
+
+        val output = ByteArrayOutputStream()
+        AsyncBlockOutputStream(
+            GZIPOutputStream(AsyncBlockOutputStream(output, "Encrypt")),
+            "Compress"
+        ).use { writeByParts(it, data) }
+
+        val decompressed = GZIPInputStream(ByteArrayInputStream(output.toByteArray())).readBytes()
+        assertArrayEquals(data, decompressed)
+    }
+
+    @Test
+    fun testWriteErrorIsThrown() {
+        val failingStream = object : OutputStream() {
+            override fun write(b: Int) {
+                throw IOException("Write failed")
+            }
+        }
+        try {
+            AsyncBlockOutputStream(failingStream, "Failing").use {
+                it.write(ByteArray(1_000_000))
+            }
+            fail("The write error must be thrown")
+        } catch (_: IOException) {
+            // Expected
+        }
+    }
+}
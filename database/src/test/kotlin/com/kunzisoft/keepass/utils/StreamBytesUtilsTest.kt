@@ -24,6 +24,8 @@ import org.junit.Assert.assertEquals
 import org.junit.Test
 import java.io.ByteArrayInputStream
 import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.Random
 
 class StreamBytesUtilsTest {
 
@@ -84,4 +86,24 @@ class StreamBytesUtilsTest {
         
         assertArrayEquals(expectedBytes.toByteArray(), bytes)
     }
+
+    @Test
+    fun testFileTransferTo() {
+        val input = ByteArray(200_000).also { Random(7).nextBytes(it) }
+        val sourceFile = File.createTempFile("source", ".tmp")
+        val targetFile = File.createTempFile("target", ".tmp")
+        try {
+            sourceFile.writeBytes(input)
+            // Through the file channels
+            targetFile.outputStream().use { sourceFile.transferTo(it) }
+            assertArrayEquals(input, targetFile.readBytes())
+            // Through the buffer
+            val outputStream = ByteArrayOutputStream()
+            sourceFile.transferTo(outputStream)
+            assertArrayEquals(input, outputStream.toByteArray())
+        } finally {
+            sourceFile.delete()
+            targetFile.delete()
+        }
+    }
 }